@@ -54,7 +54,7 @@ CREATE TABLE `products` (
   `Name` varchar(15) NOT NULL,
   `Category` varchar(15) NOT NULL,
   `Qty` int(20) NOT NULL,
-  `Price` float NOT NULL
+  `Price` decimal(10,2) NOT NULL
 ) ENGINE=InnoDB DEFAULT CHARSET=ascii COLLATE=ascii_general_ci;
 
 --
@@ -68,30 +68,279 @@ INSERT INTO `products` (`ItemId`, `Name`, `Category`, `Qty`, `Price`) VALUES
 
 -- --------------------------------------------------------
 
+--
+-- Table structure for table `promotions`
+--
+-- `type` is one of PERCENT, MULTI_BUY, PRICE_OVERRIDE.
+-- A rule targets a single item (`itemId` > 0) or a whole `category`.
+--
+
+CREATE TABLE `promotions` (
+  `promotionId` int(20) NOT NULL,
+  `name` varchar(50) NOT NULL,
+  `type` varchar(20) NOT NULL,
+  `itemId` int(8) NOT NULL DEFAULT 0,
+  `category` varchar(15) DEFAULT NULL,
+  `percentOff` int(3) NOT NULL DEFAULT 0,
+  `buyQty` int(8) NOT NULL DEFAULT 0,
+  `payQty` int(8) NOT NULL DEFAULT 0,
+  `overridePrice` decimal(10,2) NOT NULL DEFAULT 0.00,
+  `active` tinyint(1) NOT NULL DEFAULT 1
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `reorder_suggestions`
+--
+-- Computed nightly from `sales_daily_items`. `velocity` is the forecast
+-- units sold per day; `asOf` is the last day of sales used.
+--
+
+CREATE TABLE `reorder_suggestions` (
+  `itemId` int(8) NOT NULL,
+  `velocity` decimal(10,3) NOT NULL DEFAULT 0.000,
+  `reorderPoint` int(11) NOT NULL DEFAULT 0,
+  `orderUpTo` int(11) NOT NULL DEFAULT 0,
+  `suggestedQty` int(11) NOT NULL DEFAULT 0,
+  `asOf` date NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
 --
 -- Table structure for table `saleitems`
 --
+-- `name` and `category` are the product's at the time of sale, so receipts
+-- reprint as printed after a product is renamed or deleted; lines saved
+-- before they were added have NULLs and fall back to `products`.
+--
 
 CREATE TABLE `saleitems` (
   `salesId` int(20) NOT NULL,
-  `itemId` varchar(20) NOT NULL,
-  `quantity` varchar(20) NOT NULL,
-  `price` varchar(20) NOT NULL
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+  `itemId` int(8) NOT NULL,
+  `quantity` int(20) NOT NULL,
+  `price` decimal(12,2) NOT NULL,
+  `taxRate` int(6) NOT NULL DEFAULT 0,
+  `tax` decimal(12,2) NOT NULL DEFAULT 0.00,
+  `saleDate` timestamp NOT NULL DEFAULT current_timestamp(),
+  `name` varchar(15) DEFAULT NULL,
+  `category` varchar(15) DEFAULT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci
+PARTITION BY RANGE (UNIX_TIMESTAMP(`saleDate`))
+(
+ PARTITION p202401 VALUES LESS THAN (UNIX_TIMESTAMP('2024-02-01 00:00:00')),
+ PARTITION p202402 VALUES LESS THAN (UNIX_TIMESTAMP('2024-03-01 00:00:00')),
+ PARTITION p202403 VALUES LESS THAN (UNIX_TIMESTAMP('2024-04-01 00:00:00')),
+ PARTITION p202404 VALUES LESS THAN (UNIX_TIMESTAMP('2024-05-01 00:00:00')),
+ PARTITION p202405 VALUES LESS THAN (UNIX_TIMESTAMP('2024-06-01 00:00:00')),
+ PARTITION p202406 VALUES LESS THAN (UNIX_TIMESTAMP('2024-07-01 00:00:00')),
+ PARTITION p202407 VALUES LESS THAN (UNIX_TIMESTAMP('2024-08-01 00:00:00')),
+ PARTITION p202408 VALUES LESS THAN (UNIX_TIMESTAMP('2024-09-01 00:00:00')),
+ PARTITION p202409 VALUES LESS THAN (UNIX_TIMESTAMP('2024-10-01 00:00:00')),
+ PARTITION p202410 VALUES LESS THAN (UNIX_TIMESTAMP('2024-11-01 00:00:00')),
+ PARTITION p202411 VALUES LESS THAN (UNIX_TIMESTAMP('2024-12-01 00:00:00')),
+ PARTITION p202412 VALUES LESS THAN (UNIX_TIMESTAMP('2025-01-01 00:00:00')),
+ PARTITION p202501 VALUES LESS THAN (UNIX_TIMESTAMP('2025-02-01 00:00:00')),
+ PARTITION p202502 VALUES LESS THAN (UNIX_TIMESTAMP('2025-03-01 00:00:00')),
+ PARTITION p202503 VALUES LESS THAN (UNIX_TIMESTAMP('2025-04-01 00:00:00')),
+ PARTITION p202504 VALUES LESS THAN (UNIX_TIMESTAMP('2025-05-01 00:00:00')),
+ PARTITION p202505 VALUES LESS THAN (UNIX_TIMESTAMP('2025-06-01 00:00:00')),
+ PARTITION p202506 VALUES LESS THAN (UNIX_TIMESTAMP('2025-07-01 00:00:00')),
+ PARTITION p202507 VALUES LESS THAN (UNIX_TIMESTAMP('2025-08-01 00:00:00')),
+ PARTITION p202508 VALUES LESS THAN (UNIX_TIMESTAMP('2025-09-01 00:00:00')),
+ PARTITION p202509 VALUES LESS THAN (UNIX_TIMESTAMP('2025-10-01 00:00:00')),
+ PARTITION p202510 VALUES LESS THAN (UNIX_TIMESTAMP('2025-11-01 00:00:00')),
+ PARTITION p202511 VALUES LESS THAN (UNIX_TIMESTAMP('2025-12-01 00:00:00')),
+ PARTITION p202512 VALUES LESS THAN (UNIX_TIMESTAMP('2026-01-01 00:00:00')),
+ PARTITION p202601 VALUES LESS THAN (UNIX_TIMESTAMP('2026-02-01 00:00:00')),
+ PARTITION p202602 VALUES LESS THAN (UNIX_TIMESTAMP('2026-03-01 00:00:00')),
+ PARTITION p202603 VALUES LESS THAN (UNIX_TIMESTAMP('2026-04-01 00:00:00')),
+ PARTITION p202604 VALUES LESS THAN (UNIX_TIMESTAMP('2026-05-01 00:00:00')),
+ PARTITION p202605 VALUES LESS THAN (UNIX_TIMESTAMP('2026-06-01 00:00:00')),
+ PARTITION p202606 VALUES LESS THAN (UNIX_TIMESTAMP('2026-07-01 00:00:00')),
+ PARTITION p202607 VALUES LESS THAN (UNIX_TIMESTAMP('2026-08-01 00:00:00')),
+ PARTITION p202608 VALUES LESS THAN (UNIX_TIMESTAMP('2026-09-01 00:00:00')),
+ PARTITION p202609 VALUES LESS THAN (UNIX_TIMESTAMP('2026-10-01 00:00:00')),
+ PARTITION p202610 VALUES LESS THAN (UNIX_TIMESTAMP('2026-11-01 00:00:00')),
+ PARTITION p202611 VALUES LESS THAN (UNIX_TIMESTAMP('2026-12-01 00:00:00')),
+ PARTITION p202612 VALUES LESS THAN (UNIX_TIMESTAMP('2027-01-01 00:00:00')),
+ PARTITION pfuture VALUES LESS THAN MAXVALUE
+);
 
 -- --------------------------------------------------------
 
 --
 -- Table structure for table `sales`
 --
+-- `sales` and `saleitems` are partitioned by month of `saleDate`; a line
+-- carries the date of its sale. New months are split off `pfuture` at
+-- startup and old months are purged by dropping their partitions, which
+-- is why the primary keys include `saleDate` and there is no foreign key.
+--
 
 CREATE TABLE `sales` (
   `salesId` int(20) NOT NULL,
-  `total` float NOT NULL,
-  `payment` float NOT NULL,
-  `balance` float NOT NULL
+  `total` decimal(12,2) NOT NULL,
+  `tax` decimal(12,2) NOT NULL DEFAULT 0.00,
+  `payment` decimal(12,2) NOT NULL,
+  `balance` decimal(12,2) NOT NULL,
+  `receiptVersion` smallint(6) NOT NULL DEFAULT 1,
+  `saleDate` timestamp NOT NULL DEFAULT current_timestamp()
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci
+PARTITION BY RANGE (UNIX_TIMESTAMP(`saleDate`))
+(
+ PARTITION p202401 VALUES LESS THAN (UNIX_TIMESTAMP('2024-02-01 00:00:00')),
+ PARTITION p202402 VALUES LESS THAN (UNIX_TIMESTAMP('2024-03-01 00:00:00')),
+ PARTITION p202403 VALUES LESS THAN (UNIX_TIMESTAMP('2024-04-01 00:00:00')),
+ PARTITION p202404 VALUES LESS THAN (UNIX_TIMESTAMP('2024-05-01 00:00:00')),
+ PARTITION p202405 VALUES LESS THAN (UNIX_TIMESTAMP('2024-06-01 00:00:00')),
+ PARTITION p202406 VALUES LESS THAN (UNIX_TIMESTAMP('2024-07-01 00:00:00')),
+ PARTITION p202407 VALUES LESS THAN (UNIX_TIMESTAMP('2024-08-01 00:00:00')),
+ PARTITION p202408 VALUES LESS THAN (UNIX_TIMESTAMP('2024-09-01 00:00:00')),
+ PARTITION p202409 VALUES LESS THAN (UNIX_TIMESTAMP('2024-10-01 00:00:00')),
+ PARTITION p202410 VALUES LESS THAN (UNIX_TIMESTAMP('2024-11-01 00:00:00')),
+ PARTITION p202411 VALUES LESS THAN (UNIX_TIMESTAMP('2024-12-01 00:00:00')),
+ PARTITION p202412 VALUES LESS THAN (UNIX_TIMESTAMP('2025-01-01 00:00:00')),
+ PARTITION p202501 VALUES LESS THAN (UNIX_TIMESTAMP('2025-02-01 00:00:00')),
+ PARTITION p202502 VALUES LESS THAN (UNIX_TIMESTAMP('2025-03-01 00:00:00')),
+ PARTITION p202503 VALUES LESS THAN (UNIX_TIMESTAMP('2025-04-01 00:00:00')),
+ PARTITION p202504 VALUES LESS THAN (UNIX_TIMESTAMP('2025-05-01 00:00:00')),
+ PARTITION p202505 VALUES LESS THAN (UNIX_TIMESTAMP('2025-06-01 00:00:00')),
+ PARTITION p202506 VALUES LESS THAN (UNIX_TIMESTAMP('2025-07-01 00:00:00')),
+ PARTITION p202507 VALUES LESS THAN (UNIX_TIMESTAMP('2025-08-01 00:00:00')),
+ PARTITION p202508 VALUES LESS THAN (UNIX_TIMESTAMP('2025-09-01 00:00:00')),
+ PARTITION p202509 VALUES LESS THAN (UNIX_TIMESTAMP('2025-10-01 00:00:00')),
+ PARTITION p202510 VALUES LESS THAN (UNIX_TIMESTAMP('2025-11-01 00:00:00')),
+ PARTITION p202511 VALUES LESS THAN (UNIX_TIMESTAMP('2025-12-01 00:00:00')),
+ PARTITION p202512 VALUES LESS THAN (UNIX_TIMESTAMP('2026-01-01 00:00:00')),
+ PARTITION p202601 VALUES LESS THAN (UNIX_TIMESTAMP('2026-02-01 00:00:00')),
+ PARTITION p202602 VALUES LESS THAN (UNIX_TIMESTAMP('2026-03-01 00:00:00')),
+ PARTITION p202603 VALUES LESS THAN (UNIX_TIMESTAMP('2026-04-01 00:00:00')),
+ PARTITION p202604 VALUES LESS THAN (UNIX_TIMESTAMP('2026-05-01 00:00:00')),
+ PARTITION p202605 VALUES LESS THAN (UNIX_TIMESTAMP('2026-06-01 00:00:00')),
+ PARTITION p202606 VALUES LESS THAN (UNIX_TIMESTAMP('2026-07-01 00:00:00')),
+ PARTITION p202607 VALUES LESS THAN (UNIX_TIMESTAMP('2026-08-01 00:00:00')),
+ PARTITION p202608 VALUES LESS THAN (UNIX_TIMESTAMP('2026-09-01 00:00:00')),
+ PARTITION p202609 VALUES LESS THAN (UNIX_TIMESTAMP('2026-10-01 00:00:00')),
+ PARTITION p202610 VALUES LESS THAN (UNIX_TIMESTAMP('2026-11-01 00:00:00')),
+ PARTITION p202611 VALUES LESS THAN (UNIX_TIMESTAMP('2026-12-01 00:00:00')),
+ PARTITION p202612 VALUES LESS THAN (UNIX_TIMESTAMP('2027-01-01 00:00:00')),
+ PARTITION pfuture VALUES LESS THAN MAXVALUE
+);
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `sales_daily`
+--
+-- Daily rollups, added to in each sale's transaction. `revenue` is after
+-- discounts and before tax. Rebuild a range with ReportService.rebuildRollups.
+--
+
+CREATE TABLE `sales_daily` (
+  `saleDay` date NOT NULL,
+  `transactions` int(11) NOT NULL DEFAULT 0,
+  `units` bigint(20) NOT NULL DEFAULT 0,
+  `revenue` decimal(14,2) NOT NULL DEFAULT 0.00,
+  `tax` decimal(14,2) NOT NULL DEFAULT 0.00
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `sales_daily_categories`
+--
+
+CREATE TABLE `sales_daily_categories` (
+  `saleDay` date NOT NULL,
+  `category` varchar(15) NOT NULL,
+  `transactions` int(11) NOT NULL DEFAULT 0,
+  `units` bigint(20) NOT NULL DEFAULT 0,
+  `revenue` decimal(14,2) NOT NULL DEFAULT 0.00,
+  `tax` decimal(14,2) NOT NULL DEFAULT 0.00
+) ENGINE=InnoDB DEFAULT CHARSET=ascii COLLATE=ascii_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `sales_daily_items`
+--
+
+CREATE TABLE `sales_daily_items` (
+  `saleDay` date NOT NULL,
+  `itemId` int(8) NOT NULL,
+  `transactions` int(11) NOT NULL DEFAULT 0,
+  `units` bigint(20) NOT NULL DEFAULT 0,
+  `revenue` decimal(14,2) NOT NULL DEFAULT 0.00,
+  `tax` decimal(14,2) NOT NULL DEFAULT 0.00
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `stock_movements`
+--
+-- Append-only ledger of every change to `products`.`Qty`. `type` is one
+-- of SALE, RECEIPT, ADJUSTMENT, RETURN; `quantity` is signed and
+-- `reference` is the salesId for sales and returns.
+--
+
+CREATE TABLE `stock_movements` (
+  `movementId` bigint(20) NOT NULL,
+  `itemId` int(8) NOT NULL,
+  `type` varchar(12) NOT NULL,
+  `quantity` int(11) NOT NULL,
+  `reference` int(20) NOT NULL DEFAULT 0,
+  `movedAt` datetime NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+--
+-- Dumping data for table `stock_movements`
+--
+
+INSERT INTO `stock_movements` (`movementId`, `itemId`, `type`, `quantity`, `reference`, `movedAt`) VALUES
+(1, 1, 'ADJUSTMENT', 120, 0, '2024-01-01 00:00:00'),
+(2, 2, 'ADJUSTMENT', 235, 0, '2024-01-01 00:00:00'),
+(3, 3, 'ADJUSTMENT', 100, 0, '2024-01-01 00:00:00');
+
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `stock_snapshots`
+--
+-- Stock of each item up to `lastMovementId`, written by the nightly
+-- snapshot run for the items that moved since the previous run.
+--
+
+CREATE TABLE `stock_snapshots` (
+  `itemId` int(8) NOT NULL,
+  `lastMovementId` bigint(20) NOT NULL,
+  `takenAt` datetime NOT NULL,
+  `qty` int(11) NOT NULL
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
 
+-- --------------------------------------------------------
+
+--
+-- Table structure for table `taxrates`
+--
+-- `rate` is a percentage. The row with category '*' is the default rate.
+--
+
+CREATE TABLE `taxrates` (
+  `category` varchar(15) NOT NULL,
+  `rate` decimal(5,2) NOT NULL,
+  `updated` timestamp NOT NULL DEFAULT current_timestamp() ON UPDATE current_timestamp()
+) ENGINE=InnoDB DEFAULT CHARSET=ascii COLLATE=ascii_general_ci;
+
+--
+-- Dumping data for table `taxrates`
+--
+
+INSERT INTO `taxrates` (`category`, `rate`) VALUES
+('*', 0.00);
+
 --
 -- Indexes for dumped tables
 --
@@ -108,21 +357,72 @@ ALTER TABLE `accounts`
 ALTER TABLE `products`
   ADD PRIMARY KEY (`ItemId`);
 
+--
+-- Indexes for table `promotions`
+--
+ALTER TABLE `promotions`
+  ADD PRIMARY KEY (`promotionId`),
+  ADD KEY `active` (`active`);
+
+--
+-- Indexes for table `reorder_suggestions`
+--
+ALTER TABLE `reorder_suggestions`
+  ADD PRIMARY KEY (`itemId`),
+  ADD KEY `asOf` (`asOf`);
+
 --
 -- Indexes for table `saleitems`
 --
 ALTER TABLE `saleitems`
-  ADD PRIMARY KEY (`itemId`),
-  ADD UNIQUE KEY `saleId` (`salesId`),
-  ADD UNIQUE KEY `salesId` (`salesId`),
-  ADD UNIQUE KEY `salesId_2` (`salesId`),
-  ADD UNIQUE KEY `salesId_3` (`salesId`);
+  ADD PRIMARY KEY (`salesId`,`itemId`,`saleDate`),
+  ADD KEY `saleDate` (`saleDate`);
 
 --
 -- Indexes for table `sales`
 --
 ALTER TABLE `sales`
-  ADD PRIMARY KEY (`salesId`);
+  ADD PRIMARY KEY (`salesId`,`saleDate`),
+  ADD KEY `saleDate` (`saleDate`);
+
+--
+-- Indexes for table `sales_daily`
+--
+ALTER TABLE `sales_daily`
+  ADD PRIMARY KEY (`saleDay`);
+
+--
+-- Indexes for table `sales_daily_categories`
+--
+ALTER TABLE `sales_daily_categories`
+  ADD PRIMARY KEY (`saleDay`,`category`);
+
+--
+-- Indexes for table `sales_daily_items`
+--
+ALTER TABLE `sales_daily_items`
+  ADD PRIMARY KEY (`saleDay`,`itemId`);
+
+--
+-- Indexes for table `stock_movements`
+--
+ALTER TABLE `stock_movements`
+  ADD PRIMARY KEY (`movementId`),
+  ADD KEY `itemId` (`itemId`,`movementId`),
+  ADD KEY `movedAt` (`movedAt`);
+
+--
+-- Indexes for table `stock_snapshots`
+--
+ALTER TABLE `stock_snapshots`
+  ADD PRIMARY KEY (`itemId`,`lastMovementId`),
+  ADD KEY `takenAt` (`takenAt`);
+
+--
+-- Indexes for table `taxrates`
+--
+ALTER TABLE `taxrates`
+  ADD PRIMARY KEY (`category`);
 
 --
 -- AUTO_INCREMENT for dumped tables
@@ -134,6 +434,12 @@ ALTER TABLE `sales`
 ALTER TABLE `accounts`
   MODIFY `userid` int(20) NOT NULL AUTO_INCREMENT, AUTO_INCREMENT=4;
 
+--
+-- AUTO_INCREMENT for table `promotions`
+--
+ALTER TABLE `promotions`
+  MODIFY `promotionId` int(20) NOT NULL AUTO_INCREMENT;
+
 --
 -- AUTO_INCREMENT for table `sales`
 --
@@ -141,14 +447,11 @@ ALTER TABLE `sales`
   MODIFY `salesId` int(20) NOT NULL AUTO_INCREMENT;
 
 --
--- Constraints for dumped tables
+-- AUTO_INCREMENT for table `stock_movements`
 --
+ALTER TABLE `stock_movements`
+  MODIFY `movementId` bigint(20) NOT NULL AUTO_INCREMENT, AUTO_INCREMENT=4;
 
---
--- Constraints for table `saleitems`
---
-ALTER TABLE `saleitems`
-  ADD CONSTRAINT `saleitems_ibfk_1` FOREIGN KEY (`salesId`) REFERENCES `sales` (`salesid`);
 COMMIT;
 
 /*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;
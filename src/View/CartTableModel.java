@@ -0,0 +1,53 @@
+package View;
+
+import javax.swing.table.AbstractTableModel;
+import model.Cart;
+import model.CartLine;
+import utils.Money;
+
+/**
+ * Read-only table model that presents a Cart in the invoice table.
+ * The cart is the source of truth; the table only renders its lines.
+ */
+public class CartTableModel extends AbstractTableModel {
+
+    private static final String[] COLUMNS = {"ItemID", "Name", "Category", "Qty", "Price"};
+
+    private final Cart cart;
+
+    public CartTableModel(Cart cart) {
+        this.cart = cart;
+    }
+
+    public Cart getCart() {
+        return cart;
+    }
+
+    @Override
+    public int getRowCount() {
+        return cart.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        CartLine line = cart.getLine(rowIndex);
+        return switch (columnIndex) {
+            case 0 -> String.valueOf(line.getItemId());
+            case 1 -> line.getName();
+            case 2 -> line.getCategory();
+            case 3 -> String.valueOf(line.getQuantity());
+            case 4 -> Money.format(line.getNetTotal());
+            default -> null;
+        };
+    }
+}
@@ -1,8 +1,14 @@
 package View;
 
+import controller.CashierController;
 import controller.LoginController;
+import model.Cart;
+import model.CartLine;
+import model.Sale;
+import model.SaleItem;
+import utils.Money;
+import utils.ReceiptCode;
 import utils.DatabaseConnector;
-import services.InvoiceService;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.sql.Connection;
@@ -12,29 +18,31 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import javax.swing.JOptionPane;
 import javax.swing.Timer;
 import javax.swing.table.DefaultTableModel;
 
 public class CashierView extends javax.swing.JFrame {
 
-//    private CashierController controller;
-//
-//    public void setController(CashierController controller) {
-//        this.controller = controller;
-//    }
-    private double total = 0.0; //encapsulated field
-    private final DefaultTableModel dataModelInvoice;
+    private final CashierController controller;
+
+    private final Cart cart = new Cart(); //encapsulated field
+    private final CartTableModel dataModelInvoice;
 
     /**
      * Creates new form Cashier
      */
     public CashierView() {
         initComponents();
-        dataModelInvoice = new DefaultTableModel(new String[]{"ItemID", "Name", "Category", "Qty", "Price"}, 0);
+        this.controller = new CashierController(this);
+        dataModelInvoice = new CartTableModel(cart);
         tblInv.setModel(dataModelInvoice);
+        controller.loadPromotions();
+        controller.refreshTaxRates();
+        cart.setPricer(controller.getPricingService());
+        cart.setTaxPolicy(controller.getTaxService());
+        //barcode scanners type the code and press Enter
+        txtSearch.addActionListener(evt -> performSearch());
 
         startClock();
     }
@@ -608,6 +616,8 @@ public class CashierView extends javax.swing.JFrame {
     private void performSearch() {
         if (txtSearch.getText().equals("")) {
             JOptionPane.showMessageDialog(this, "Search Box is Empty!");
+        } else if (ReceiptCode.isReceiptCode(txtSearch.getText().trim())) {
+            showReceipt(txtSearch.getText());
         } else {
             try {
                 Class.forName("com.mysql.cj.jdbc.Driver");
@@ -628,7 +638,7 @@ public class CashierView extends javax.swing.JFrame {
                             String name = rs.getString("Name");
                             String category = rs.getString("Category");
                             String qty = rs.getString("Qty");
-                            String price = rs.getString("Price");
+                            String price = Money.format(Money.fromDecimal(rs.getBigDecimal("Price")));
 
                             String tbData[] = {id, name, category, qty, price};
                             tblModel.addRow(tbData);
@@ -641,15 +651,32 @@ public class CashierView extends javax.swing.JFrame {
         }
     }//GEN-LAST:event_btnSearchActionPerformed
 
-    //validation for check item already in invoice
-    private boolean isItemInInvoice(String itemID) {
-        for (int i = 0; i < tblInv.getRowCount(); i++) {
-            String existingItemID = (String) tblInv.getValueAt(i, 0);
-            if (itemID.equals(existingItemID)) {
-                return true;
-            }
+    /**
+     * Shows the sale behind a scanned receipt barcode and offers a reprint.
+     */
+    private void showReceipt(String code) {
+        Sale sale = controller.findSaleByReceipt(code);
+        if (sale == null) {
+            return;
         }
-        return false;
+        StringBuilder details = new StringBuilder("Sale #" + sale.getSalesId() + "\n\n");
+        for (SaleItem item : sale.getItems()) {
+            details.append(item.getItemId()).append("  ").append(item.getName())
+                    .append("  x").append(item.getQuantity())
+                    .append("  ").append(Money.format(item.getPrice())).append("\n");
+        }
+        details.append("\nTax : ").append(Money.format(sale.getTax()))
+                .append("\nTotal : ").append(Money.format(sale.getTotal()))
+                .append("\nPayment : ").append(Money.format(sale.getPayment()))
+                .append("\nBalance : ").append(Money.format(sale.getBalance()));
+
+        Object[] options = {"Reprint", "Close"};
+        int choice = JOptionPane.showOptionDialog(this, details.toString(), "Receipt " + code.trim(),
+                JOptionPane.DEFAULT_OPTION, JOptionPane.INFORMATION_MESSAGE, null, options, options[1]);
+        if (choice == 0) {
+            controller.reprintInvoice(sale.getSalesId());
+        }
+        txtSearch.setText("");
     }
 
     private void btnAddActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnAddActionPerformed
@@ -657,31 +684,26 @@ public class CashierView extends javax.swing.JFrame {
 
         if (selectedRow != -1) {
             try {
-                String itemID = (String) tblPro.getValueAt(selectedRow, 0);
+                int itemID = Integer.parseInt((String) tblPro.getValueAt(selectedRow, 0));
                 String name = (String) tblPro.getValueAt(selectedRow, 1);
                 String category = (String) tblPro.getValueAt(selectedRow, 2);
-                String qtyString = (String) tblPro.getValueAt(selectedRow, 3);
-                double price = Double.parseDouble((String) tblPro.getValueAt(selectedRow, 4));
+                long price = Money.parse((String) tblPro.getValueAt(selectedRow, 4));
 
                 int qtyToAdd = (int) spnQty.getValue();
-                int qtyFromTable = Integer.parseInt(qtyString);
-
-                if (qtyToAdd <= qtyFromTable) {
-                    if (isItemInInvoice(itemID)) {
-                        JOptionPane.showMessageDialog(this, "The Selecting Item is Already Added!");
-                    } else {
 
-                        int newQty = qtyFromTable - qtyToAdd;
-                        double newprice = (double) (price * qtyToAdd);
-                        tblPro.setValueAt(String.valueOf(newQty), selectedRow, 3);
-                        dataModelInvoice.addRow(new Object[]{itemID, name, category, String.valueOf(qtyToAdd), newprice});
-
-                        total += (price * qtyToAdd);
-                        txtTot.setText(String.valueOf(total));
+                //hold the stock across all tills, not just what this table shows
+                if (qtyToAdd > 0 && controller.reserveStock(cart, itemID, qtyToAdd)) {
+                    //same item added again -> merge into the existing invoice line
+                    showAvailable(selectedRow, itemID);
+                    boolean merged = cart.contains(itemID);
+                    cart.add(itemID, name, category, qtyToAdd, price);
 
+                    if (merged) {
+                        dataModelInvoice.fireTableDataChanged();
+                    } else {
+                        dataModelInvoice.fireTableRowsInserted(cart.size() - 1, cart.size() - 1);
                     }
-                } else {
-                    JOptionPane.showMessageDialog(this, "Quantity to add exceeds the available quantity in stock.");
+                    showTotal();
                 }
             } catch (NumberFormatException e) {
                 JOptionPane.showMessageDialog(this, "Invalid Quantity Format!");
@@ -706,7 +728,7 @@ public class CashierView extends javax.swing.JFrame {
                         String name = rs.getString("name");
                         String category = rs.getString("category");
                         String qty = rs.getString("qty");
-                        String price = rs.getString("price");
+                        String price = Money.format(Money.fromDecimal(rs.getBigDecimal("price")));
                         String tbData[] = {id, name, category, qty, price};
                         DefaultTableModel tblModel = (DefaultTableModel) tblPro.getModel();
                         tblModel.addRow(tbData);
@@ -724,11 +746,11 @@ public class CashierView extends javax.swing.JFrame {
     private void btnRemoveActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRemoveActionPerformed
         int selectedRow = tblInv.getSelectedRow();
         if (selectedRow != -1) {
-            double price = (double) tblInv.getValueAt(selectedRow, 4);
-            dataModelInvoice.removeRow(selectedRow);
-
-            total -= price;//total=total-price
-            txtTot.setText(String.valueOf(total));
+            int row = tblInv.convertRowIndexToModel(selectedRow);
+            CartLine removed = cart.removeAt(row);
+            controller.releaseStock(cart, removed.getItemId());
+            dataModelInvoice.fireTableRowsDeleted(row, row);
+            showTotal();
         } else {
             JOptionPane.showMessageDialog(this, "Please Select A Product!");
         }
@@ -740,24 +762,17 @@ public class CashierView extends javax.swing.JFrame {
         } else if (txtPay.getText().equals("")) {
             JOptionPane.showMessageDialog(this, "Please Add the Payment!");
         } else {
-            double totalchk = Double.parseDouble(txtTot.getText());
-            double paychk = Double.parseDouble(txtPay.getText());
-            if (paychk < totalchk) {
-                JOptionPane.showMessageDialog(this, "Payment Can't Be Less Value Than Total!\nPlease Enter Higher Value Than Total!");
-            } else {
-                if (txtPay.getText().equals("")) {
-                    JOptionPane.showMessageDialog(this, "Payment Field is Empty!\nPlease Enter The Payment Value!");
+            try {
+                long totalAmount = cart.getTotal();
+                long paymentAmount = Money.parse(txtPay.getText());
+                if (paymentAmount < totalAmount) {
+                    JOptionPane.showMessageDialog(this, "Payment Can't Be Less Value Than Total!\nPlease Enter Higher Value Than Total!");
                 } else {
-                    try {
-                        double totalAmount = Double.parseDouble(txtTot.getText());
-                        double paymentAmount = Double.parseDouble(txtPay.getText());
-                        double balance = totalAmount - paymentAmount;
-
-                        txtBal.setText(String.valueOf(balance));
-                    } catch (NumberFormatException e) {
-                        JOptionPane.showMessageDialog(this, "Please Enter Valid Numeric Values!");
-                    }
+                    long balance = totalAmount - paymentAmount;
+                    txtBal.setText(Money.format(balance));
                 }
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(this, "Please Enter Valid Numeric Values!");
             }
         }
     }//GEN-LAST:event_btnCalActionPerformed
@@ -765,79 +780,19 @@ public class CashierView extends javax.swing.JFrame {
     private void btnPayActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPayActionPerformed
         if (txtBal.getText().equals("")) {
             JOptionPane.showMessageDialog(this, "Before Make Payment,\nCalculate the Balance!");
-        } else {
-
+        } else if (!cart.isEmpty()) {
             try {
-                //run invoice generate method
-                InvoiceService.generateInvoice(tblInv, txtTot, txtPay, txtBal);
-            } catch (Exception ex) {
-                Logger.getLogger(CashierView.class.getName()).log(Level.SEVERE, null, ex);
-            }
-
-            if (dataModelInvoice.getRowCount() > 0) {
-                try (Connection conn = DatabaseConnector.connect()) {
-                    conn.setAutoCommit(false);
-
-                    String insertSalesSQL = "INSERT INTO sales (total, payment, balance) VALUES (?, ?, ?)";
-                    try (PreparedStatement insertSalesStatement = conn.prepareStatement(insertSalesSQL, Statement.RETURN_GENERATED_KEYS)) {
-
-                        double totalSaleAmount = 0.0;
-
-                        for (int i = 0; i < dataModelInvoice.getRowCount(); i++) {
-                            double price = (double) dataModelInvoice.getValueAt(i, 4);
-                            totalSaleAmount += price;
-                        }
-
-                        double paymentAmount = Double.parseDouble(txtPay.getText());
-                        double balance = totalSaleAmount - paymentAmount;
-
-                        insertSalesStatement.setDouble(1, totalSaleAmount);
-                        insertSalesStatement.setDouble(2, paymentAmount);
-                        insertSalesStatement.setDouble(3, balance);
-
-                        insertSalesStatement.executeUpdate();
-
-                        try (ResultSet generatedKeys = insertSalesStatement.getGeneratedKeys()) {
-                            int salesID = -1;
-                            if (generatedKeys.next()) {
-                                salesID = generatedKeys.getInt(1);
-                            }
-
-                            String insertSaleItemsSQL = "INSERT INTO saleItems (saleID, itemID, quantity, price) VALUES (?, ?, ?, ?)";
-                            try (PreparedStatement insertSaleItemsStatement = conn.prepareStatement(insertSaleItemsSQL)) {
-
-                                for (int i = 0; i < dataModelInvoice.getRowCount(); i++) {
-                                    String itemID = (String) dataModelInvoice.getValueAt(i, 0);
-                                    int quantity = Integer.parseInt((String) dataModelInvoice.getValueAt(i, 3));
-                                    double price = (double) dataModelInvoice.getValueAt(i, 4);
+                long paymentAmount = Money.parse(txtPay.getText());
 
-                                    insertSaleItemsStatement.setInt(1, salesID);
-                                    insertSaleItemsStatement.setString(2, itemID);
-                                    insertSaleItemsStatement.setInt(3, quantity);
-                                    insertSaleItemsStatement.setDouble(4, price);
-
-                                    insertSaleItemsStatement.executeUpdate();
-
-                                    String updateProductsSQL = "UPDATE products SET qty = qty - ? WHERE itemid = ?";
-                                    try (PreparedStatement updateProductsStatement = conn.prepareStatement(updateProductsSQL)) {
-                                        updateProductsStatement.setInt(1, quantity);
-                                        updateProductsStatement.setString(2, itemID);
-                                        updateProductsStatement.executeUpdate();
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    conn.commit();
-
-                    JOptionPane.showMessageDialog(this, "Payment successful!");
-
-                } catch (SQLException | NumberFormatException e) {
-                    JOptionPane.showMessageDialog(this, "Payment unsuccessful! Please check the fields.");
-                }
-            } else {
-                JOptionPane.showMessageDialog(this, "No items in the invoice table. Please add products first!");
+                //the sale is saved and its receipt prepared in the background
+                setCheckoutInProgress(true);
+                showStatus("Processing payment...");
+                controller.checkout(cart, paymentAmount);
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(this, "Payment unsuccessful! Please check the fields.");
             }
+        } else {
+            JOptionPane.showMessageDialog(this, "No items in the invoice table. Please add products first!");
         }
     }//GEN-LAST:event_btnPayActionPerformed
 
@@ -856,9 +811,60 @@ public class CashierView extends javax.swing.JFrame {
         }
     }//GEN-LAST:event_txtPayKeyPressed
 
+    //show the running cart total, kept in cents
+    private void showTotal() {
+        txtTot.setText(cart.isEmpty() ? "" : Money.format(cart.getTotal()));
+    }
+
+    /**
+     * Shows a non-blocking status message in the footer.
+     */
+    public void showStatus(String message) {
+        lblFooter.setText(message);
+    }
+
+    //show the stock left for other invoices in the products table
+    private void showAvailable(int row, int itemID) {
+        int available = controller.getAvailableStock(itemID);
+        if (available >= 0) {
+            tblPro.setValueAt(String.valueOf(available), row, 3);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        controller.releaseAllStock(cart);
+        controller.close();
+        super.dispose();
+    }
+
+    /**
+     * Called by the controller once a checkout is over; sale is null if it
+     * was not saved.
+     */
+    public void checkoutFinished(Sale sale) {
+        setCheckoutInProgress(false);
+        if (sale != null) {
+            clearInvoice();
+            showStatus("Payment successful! Printing receipt #" + sale.getSalesId() + "...");
+        } else {
+            showStatus("Payment not completed.");
+        }
+    }
+
+    //the invoice must not change while it is being saved
+    private void setCheckoutInProgress(boolean inProgress) {
+        btnPay.setEnabled(!inProgress);
+        btnAdd.setEnabled(!inProgress);
+        btnRemove.setEnabled(!inProgress);
+        btnClearInv.setEnabled(!inProgress);
+    }
+
     private void clearInvoice() {
-        DefaultTableModel model = (DefaultTableModel) tblInv.getModel();
-        model.setRowCount(0);
+        controller.releaseAllStock(cart);
+        cart.clear();
+        controller.refreshTaxRates();
+        dataModelInvoice.fireTableDataChanged();
         txtTot.setText("");
         txtPay.setText("");
         txtBal.setText("");
@@ -0,0 +1,95 @@
+package View;
+
+import controller.ManagerController;
+import java.awt.BorderLayout;
+import java.awt.Frame;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+import services.LowStockTracker;
+
+/**
+ * Panel of the products at or below their reorder threshold, most urgent
+ * first. Updated as alerts arrive from the low-stock tracker rather than on
+ * a timer.
+ */
+public class LowStockDialog extends JDialog {
+
+    private final ManagerController controller;
+    private final JLabel lblAlert = new JLabel(" ");
+    private final LowStockTableModel model = new LowStockTableModel();
+
+    public LowStockDialog(Frame owner, ManagerController controller) {
+        super(owner, "Low Stock", false);
+        this.controller = controller;
+
+        lblAlert.setBorder(BorderFactory.createEmptyBorder(6, 6, 6, 6));
+        JTable table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        getContentPane().add(lblAlert, BorderLayout.NORTH);
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+        setSize(460, 420);
+        setLocationRelativeTo(owner);
+        refresh();
+    }
+
+    /**
+     * Shows the latest alert and the updated list.
+     */
+    public void lowStockChanged(LowStockTracker.Item item, boolean low) {
+        lblAlert.setText(String.format(low ? "Low stock: %s (#%d) down to %d, reorder at %d"
+                : "Restocked: %s (#%d) now %d, reorder at %d",
+                item.getName(), item.getItemId(), item.getQuantity(), item.getThreshold()));
+        refresh();
+    }
+
+    public void refresh() {
+        model.setItems(controller.getLowStock());
+    }
+
+    private static final class LowStockTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"ItemID", "Name", "Quantity", "Reorder At"};
+
+        private List<LowStockTracker.Item> items = new ArrayList<>();
+
+        private void setItems(List<LowStockTracker.Item> items) {
+            this.items = items;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return items.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            LowStockTracker.Item item = items.get(rowIndex);
+            switch (columnIndex) {
+                case 0:
+                    return item.getItemId();
+                case 1:
+                    return item.getName();
+                case 2:
+                    return item.getQuantity();
+                default:
+                    return item.getThreshold();
+            }
+        }
+    }
+}
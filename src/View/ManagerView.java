@@ -4,12 +4,20 @@ import controller.AccountCreateController;
 import controller.LoginController;
 import controller.ManagerController;
 import model.Product;
+import model.ReorderSuggestion;
+import services.LowStockTracker;
+import services.SalesColumnStore;
+import utils.Money;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JPopupMenu;
 import javax.swing.Timer;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableModel;
@@ -17,6 +25,7 @@ import javax.swing.table.TableModel;
 public class ManagerView extends javax.swing.JFrame {
 
     private ManagerController controller;
+    private LowStockDialog lowStockDialog;
     
     public ManagerView() {
         initComponents();
@@ -25,6 +34,116 @@ public class ManagerView extends javax.swing.JFrame {
         startClock();
         //load products
         controller.loadProducts();
+        //right-click the product table for stock, shelf labels and sales reports
+        JPopupMenu tableMenu = new JPopupMenu();
+        JMenuItem receiveStock = new JMenuItem("Receive Stock...");
+        receiveStock.addActionListener(evt -> receiveStock());
+        tableMenu.add(receiveStock);
+        JMenuItem reconcileStock = new JMenuItem("Reconcile Stock");
+        reconcileStock.addActionListener(evt -> controller.reconcileStock());
+        tableMenu.add(reconcileStock);
+        JMenuItem printLabels = new JMenuItem("Print Shelf Labels");
+        printLabels.addActionListener(evt -> printShelfLabels());
+        tableMenu.add(printLabels);
+        JMenuItem exportSales = new JMenuItem("Export Monthly Sales Report");
+        exportSales.addActionListener(evt -> exportSalesReport());
+        tableMenu.add(exportSales);
+        JMenuItem todaysSales = new JMenuItem("Today's Sales By Category");
+        todaysSales.addActionListener(evt -> controller.showTodaysSales());
+        tableMenu.add(todaysSales);
+        JMenuItem salesBreakdown = new JMenuItem("Sales Breakdown...");
+        salesBreakdown.addActionListener(evt -> showSalesBreakdown());
+        tableMenu.add(salesBreakdown);
+        JMenuItem topSellers = new JMenuItem("Top Sellers");
+        topSellers.addActionListener(evt -> new TopSellersDialog(this, controller).setVisible(true));
+        tableMenu.add(topSellers);
+        JMenuItem reorderPoints = new JMenuItem("Recompute Reorder Points");
+        reorderPoints.addActionListener(evt -> controller.recomputeReorderPoints());
+        tableMenu.add(reorderPoints);
+        JMenuItem lowStock = new JMenuItem("Low Stock");
+        lowStock.addActionListener(evt -> showLowStock());
+        tableMenu.add(lowStock);
+        tblPro.setComponentPopupMenu(tableMenu);
+    }
+
+    private void exportSalesReport() {
+        String month = JOptionPane.showInputDialog(this, "Month (yyyy-MM):", java.time.YearMonth.now().toString());
+        if (month != null) {
+            controller.exportSalesReport(month);
+        }
+    }
+
+    private void showSalesBreakdown() {
+        Object dimension = JOptionPane.showInputDialog(this, "Break the last 30 days down by:", "Sales Breakdown",
+                JOptionPane.QUESTION_MESSAGE, null, SalesColumnStore.Dimension.values(), SalesColumnStore.Dimension.CATEGORY);
+        if (dimension != null) {
+            controller.showSalesBreakdown((SalesColumnStore.Dimension) dimension);
+        }
+    }
+
+    private void showLowStock() {
+        controller.loadLowStock();
+        if (lowStockDialog == null) {
+            lowStockDialog = new LowStockDialog(this, controller);
+        } else {
+            lowStockDialog.refresh();
+        }
+        lowStockDialog.setVisible(true);
+    }
+
+    /**
+     * Called by the controller when a product falls to or rises above its
+     * reorder threshold. A new low-stock alert brings up the low stock
+     * panel without taking the focus.
+     */
+    public void lowStockChanged(LowStockTracker.Item item, boolean low) {
+        if (lowStockDialog == null && !low) {
+            return;
+        }
+        if (lowStockDialog == null) {
+            lowStockDialog = new LowStockDialog(this, controller);
+        }
+        lowStockDialog.lowStockChanged(item, low);
+        if (low && !lowStockDialog.isVisible()) {
+            lowStockDialog.setAutoRequestFocus(false);
+            lowStockDialog.setVisible(true);
+            lowStockDialog.setAutoRequestFocus(true);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        controller.close();
+        if (lowStockDialog != null) {
+            lowStockDialog.dispose();
+        }
+        super.dispose();
+    }
+
+    private void receiveStock() {
+        int selectedRow = tblPro.getSelectedRow();
+        if (selectedRow < 0) {
+            JOptionPane.showMessageDialog(this, "Please Select a Product First!");
+            return;
+        }
+        int itemId = Integer.parseInt(tblPro.getValueAt(selectedRow, 0).toString());
+        String quantity = JOptionPane.showInputDialog(this, "Quantity received for " + tblPro.getValueAt(selectedRow, 1) + ":");
+        if (quantity != null) {
+            controller.receiveStock(itemId, quantity);
+        }
+    }
+
+    private void printShelfLabels() {
+        int[] selectedRows = tblPro.getSelectedRows();
+        if (selectedRows.length == 0) {
+            JOptionPane.showMessageDialog(this, "Please Select Products First!");
+            return;
+        }
+        List<Integer> itemIds = new ArrayList<>(selectedRows.length);
+        for (int row : selectedRows) {
+            itemIds.add(Integer.parseInt(tblPro.getValueAt(row, 0).toString()));
+        }
+        controller.printShelfLabels(itemIds);
     }
 
     /**
@@ -397,11 +516,11 @@ public class ManagerView extends javax.swing.JFrame {
 
             },
             new String [] {
-                "ItemID", "Name", "Category", "Quantity", "Price($)"
+                "ItemID", "Name", "Category", "Quantity", "Price($)", "Reorder"
             }
         ) {
             boolean[] canEdit = new boolean [] {
-                false, false, false, false, false
+                false, false, false, false, false, false
             };
 
             public boolean isCellEditable(int rowIndex, int columnIndex) {
@@ -575,10 +694,11 @@ public class ManagerView extends javax.swing.JFrame {
     }
 
     /**
-     * Helper method to display products in the table.
+     * Helper method to display products in the table, with the reorder
+     * suggestion of each product next to its quantity.
      * Called by ManagerController.
      */
-    public void displayProducts(List<Product> products) {
+    public void displayProducts(List<Product> products, Map<Integer, ReorderSuggestion> suggestions) {
         DefaultTableModel tblModel = (DefaultTableModel) tblPro.getModel();
         tblModel.setRowCount(0);
         
@@ -588,12 +708,23 @@ public class ManagerView extends javax.swing.JFrame {
                 product.getName(),
                 product.getCategory(),
                 String.valueOf(product.getQuantity()),
-                String.valueOf(product.getPrice())
+                Money.format(product.getPrice()),
+                formatSuggestion(suggestions.get(product.getItemId()))
             };
             tblModel.addRow(row);
         }
     }
 
+    private String formatSuggestion(ReorderSuggestion suggestion) {
+        if (suggestion == null) {
+            return "";
+        }
+        if (suggestion.getSuggestedQty() > 0) {
+            return "Order " + suggestion.getSuggestedQty();
+        }
+        return "ROP " + suggestion.getReorderPoint();
+    }
+
     private void btnSearchActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSearchActionPerformed
         if (txtSearch.getText().equals("")) {
             JOptionPane.showMessageDialog(this, "Search Text Field is Empty!\nTry Again!");
@@ -704,7 +835,7 @@ public class ManagerView extends javax.swing.JFrame {
         try {
             int newItemId = Integer.parseInt(txtItemID.getText());
             int qty = Integer.parseInt(txtQty.getText());
-            double price = Double.parseDouble(txtPrice.getText());
+            long price = Money.parse(txtPrice.getText());
             
             controller.updateProduct(newItemId, txtName.getText(), txtCategory.getText(), qty, price, oldId);
         } catch (NumberFormatException e) {
@@ -732,7 +863,7 @@ public class ManagerView extends javax.swing.JFrame {
             txtName.setText(product.getName());
             txtCategory.setText(product.getCategory());
             txtQty.setText(String.valueOf(product.getQuantity()));
-            txtPrice.setText(String.valueOf(product.getPrice()));
+            txtPrice.setText(Money.format(product.getPrice()));
         }
     }//GEN-LAST:event_tblProMouseClicked
 
@@ -743,7 +874,7 @@ public class ManagerView extends javax.swing.JFrame {
             try {
                 int itemId = Integer.parseInt(txtItemID.getText());
                 int qty = Integer.parseInt(txtQty.getText());
-                double price = Double.parseDouble(txtPrice.getText());
+                long price = Money.parse(txtPrice.getText());
                 
                 controller.addProduct(itemId, txtName.getText(), txtCategory.getText(), qty, price);
             } catch (NumberFormatException e) {
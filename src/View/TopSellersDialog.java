@@ -0,0 +1,104 @@
+package View;
+
+import controller.ManagerController;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Frame;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+import services.TopSellersTracker;
+
+/**
+ * Live panel of the top 20 sellers of the last hour or of today.
+ * Refreshes every five seconds while open.
+ */
+public class TopSellersDialog extends JDialog {
+
+    private static final int TOP = 20;
+    private static final int REFRESH_MILLIS = 5000;
+
+    private final ManagerController controller;
+    private final JComboBox<TopSellersTracker.Window> cmbWindow = new JComboBox<>(TopSellersTracker.Window.values());
+    private final SellersTableModel model = new SellersTableModel();
+    private final Timer refreshTimer;
+
+    public TopSellersDialog(Frame owner, ManagerController controller) {
+        super(owner, "Top Sellers", false);
+        this.controller = controller;
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(new JLabel("Window:"));
+        top.add(cmbWindow);
+        cmbWindow.addActionListener(evt -> refresh());
+
+        JTable table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        getContentPane().add(top, BorderLayout.NORTH);
+        getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+        setSize(420, 420);
+        setLocationRelativeTo(owner);
+
+        refreshTimer = new Timer(REFRESH_MILLIS, evt -> refresh());
+        refresh();
+        refreshTimer.start();
+    }
+
+    private void refresh() {
+        model.setSellers(controller.getTopSellers((TopSellersTracker.Window) cmbWindow.getSelectedItem(), TOP));
+    }
+
+    @Override
+    public void dispose() {
+        refreshTimer.stop();
+        super.dispose();
+    }
+
+    private static final class SellersTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"#", "ItemID", "Name", "Units"};
+
+        private List<TopSellersTracker.Seller> sellers = new ArrayList<>();
+
+        private void setSellers(List<TopSellersTracker.Seller> sellers) {
+            this.sellers = sellers;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return sellers.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            TopSellersTracker.Seller seller = sellers.get(rowIndex);
+            switch (columnIndex) {
+                case 0:
+                    return rowIndex + 1;
+                case 1:
+                    return seller.getItemId();
+                case 2:
+                    return seller.getName();
+                default:
+                    return seller.getUnits();
+            }
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package controller;
 
+import model.Cart;
 import model.Product;
 import model.Sale;
-import model.SaleItem;
+import services.CheckoutPipeline;
+import services.PricingService;
+import services.PrintSpooler;
 import services.ProductService;
 import services.SaleService;
+import services.StockReservationService;
+import services.TaxService;
 import services.InvoiceService;
 import View.CashierView;
 
 import javax.swing.*;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Controller for Cashier operations.
@@ -20,11 +27,75 @@ public class CashierController {
     private final CashierView view;
     private final ProductService productService;
     private final SaleService saleService;
+    private final PricingService pricingService;
+    private final TaxService taxService;
+    private final StockReservationService reservationService;
+    private final CheckoutPipeline checkoutPipeline;
+    private final PrintSpooler.Listener printerListener;
 
     public CashierController(CashierView view) {
         this.view = view;
         this.productService = new ProductService();
         this.saleService = new SaleService();
+        this.pricingService = new PricingService();
+        this.taxService = new TaxService();
+        this.reservationService = StockReservationService.getInstance();
+        this.checkoutPipeline = new CheckoutPipeline(saleService, reservationService);
+        this.printerListener = (spooler, behind) -> SwingUtilities.invokeLater(() ->
+            view.showStatus(behind
+                ? "Printer " + spooler.getName() + " is falling behind: " + spooler.getQueueDepth() + " receipts queued"
+                : "Printer " + spooler.getName() + " has caught up"));
+        InvoiceService.addBackpressureListener(printerListener);
+    }
+
+    /**
+     * Stops listening for printer backlog; called when the till closes.
+     */
+    public void close() {
+        InvoiceService.removeBackpressureListener(printerListener);
+    }
+
+    /**
+     * Loads the active promotions into the pricing engine.
+     */
+    public void loadPromotions() {
+        try {
+            pricingService.reload();
+        } catch (SQLException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(view, 
+                "An error occurred while loading promotions: " + e.getMessage(), 
+                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Loads the tax rate table, or refreshes it if the rates changed.
+     * Runs on the event dispatch thread between invoices, so it costs one
+     * fingerprint query per sale. If the rates cannot be loaded or one is
+     * invalid, the cashier is told and the previous table stays in use.
+     */
+    public void refreshTaxRates() {
+        try {
+            taxService.refreshIfChanged();
+        } catch (SQLException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(view, 
+                "An error occurred while loading tax rates: " + e.getMessage(), 
+                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Returns the tax table used to tax cart lines.
+     */
+    public TaxService getTaxService() {
+        return taxService;
+    }
+
+    /**
+     * Returns the pricing engine used to discount cart lines.
+     */
+    public PricingService getPricingService() {
+        return pricingService;
     }
 
     /**
@@ -61,34 +132,124 @@ public class CashierController {
     }
 
     /**
-     * Processes a sale transaction.
+     * Holds stock for an invoice line. Returns false (and tells the cashier)
+     * if other tills already hold or sold the remaining units.
      */
-    public boolean processSale(double total, double payment, double balance, List<SaleItem> saleItems) {
+    public boolean reserveStock(Object owner, int itemId, int quantity) {
         try {
-            Sale sale = new Sale(0, total, payment, balance);
-            int saleId = saleService.createSale(sale, saleItems);
-            return saleId > 0;
-        } catch (IllegalArgumentException e) {
-            JOptionPane.showMessageDialog(view, e.getMessage(), "Validation Error", JOptionPane.WARNING_MESSAGE);
+            if (reservationService.reserve(owner, itemId, quantity)) {
+                return true;
+            }
+            JOptionPane.showMessageDialog(view, 
+                "Quantity to add exceeds the available quantity in stock.\nOnly " 
+                + reservationService.available(itemId) + " left.");
             return false;
         } catch (SQLException e) {
             JOptionPane.showMessageDialog(view, 
-                "An error occurred while processing the sale: " + e.getMessage(), 
+                "An error occurred while checking stock: " + e.getMessage(), 
                 "Error", JOptionPane.ERROR_MESSAGE);
             return false;
         }
     }
 
     /**
-     * Generates an invoice for the sale.
+     * Returns the stock not yet sold or held by any till, or -1 if unknown.
      */
-    public void generateInvoice(JTable tblInv, JTextField txtTot, JTextField txtPay, JTextField txtBal) {
+    public int getAvailableStock(int itemId) {
         try {
-            InvoiceService.generateInvoice(tblInv, txtTot, txtPay, txtBal);
-        } catch (Exception e) {
+            return reservationService.available(itemId);
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Releases the stock held for one invoice line.
+     */
+    public void releaseStock(Object owner, int itemId) {
+        reservationService.release(owner, itemId);
+    }
+
+    /**
+     * Releases all stock held for an invoice.
+     */
+    public void releaseAllStock(Object owner) {
+        reservationService.releaseAll(owner);
+    }
+
+    /**
+     * Checks out the cart in the background. The view is told through
+     * checkoutFinished on the event dispatch thread, with the saved sale or
+     * null if the sale was not saved; the receipt is reported when it is out.
+     */
+    public void checkout(Cart cart, long payment) {
+        checkoutPipeline.checkout(cart, payment, cart).whenComplete((checkout, error) ->
+            SwingUtilities.invokeLater(() -> {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    if (cause instanceof IllegalArgumentException) {
+                        JOptionPane.showMessageDialog(view, cause.getMessage(), "Validation Error", JOptionPane.WARNING_MESSAGE);
+                    } else {
+                        JOptionPane.showMessageDialog(view, 
+                            "An error occurred while processing the sale: " + cause.getMessage(), 
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                    view.checkoutFinished(null);
+                    return;
+                }
+                view.checkoutFinished(checkout.getSale());
+                checkout.markNotified();
+                reportReceipt(checkout.getSale().getSalesId(), checkout.getReceipt(), "generating");
+            }));
+    }
+
+    /**
+     * Reports the outcome of a queued receipt to the view on the event
+     * dispatch thread.
+     */
+    private void reportReceipt(int saleId, CompletableFuture<String> receipt, String action) {
+        receipt.whenComplete((path, error) ->
+            SwingUtilities.invokeLater(() -> {
+                if (error == null) {
+                    view.showStatus("Receipt #" + saleId + " sent to " + path);
+                } else {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    JOptionPane.showMessageDialog(view, 
+                        "An error occurred while " + action + " invoice #" + saleId + ": " + cause.getMessage(), 
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }));
+    }
+
+    /**
+     * Looks up a past sale from its scanned receipt barcode.
+     * Returns null (and tells the cashier) if there is no such sale.
+     */
+    public Sale findSaleByReceipt(String code) {
+        try {
+            Sale sale = saleService.getSaleByReceiptCode(code);
+            if (sale == null) {
+                JOptionPane.showMessageDialog(view, "No sale found for receipt " + code.trim(), 
+                    "Not Found", JOptionPane.WARNING_MESSAGE);
+            }
+            return sale;
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(view, e.getMessage(), "Validation Error", JOptionPane.WARNING_MESSAGE);
+            return null;
+        } catch (SQLException e) {
             JOptionPane.showMessageDialog(view, 
-                "An error occurred while generating invoice: " + e.getMessage(), 
+                "An error occurred while looking up the receipt: " + e.getMessage(), 
                 "Error", JOptionPane.ERROR_MESSAGE);
+            return null;
         }
     }
+
+    /**
+     * Reprints a past receipt from the receipt archive in the background;
+     * the outcome is reported like a new receipt's.
+     */
+    public void reprintInvoice(int salesId) {
+        view.showStatus("Reprinting receipt #" + salesId + "...");
+        reportReceipt(salesId, InvoiceService.reprintInvoice(salesId), "reprinting");
+    }
 }
@@ -1,12 +1,31 @@
 package controller;
 
 import model.Product;
+import model.ReorderSuggestion;
+import model.SalesSummary;
+import model.StockDiscrepancy;
+import services.LabelService;
+import services.LowStockTracker;
 import services.ProductService;
+import services.ReplenishmentService;
+import services.ReportService;
+import services.SalesColumnStore;
+import services.StockLedgerService;
+import services.StockReconciliationService;
+import services.TopSellersTracker;
+import utils.Money;
 import View.ManagerView;
 
 import javax.swing.*;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 /**
  * Controller for Manager operations.
@@ -15,10 +34,36 @@ import java.util.List;
 public class ManagerController {
     private final ManagerView view;
     private final ProductService productService;
+    private final LabelService labelService;
+    private final ReportService reportService;
+    private final ReplenishmentService replenishmentService;
+    private final StockLedgerService stockLedgerService;
+    private final StockReconciliationService reconciliationService;
+    private final TopSellersTracker topSellers;
+    private boolean topSellersLoaded;
+    private final LowStockTracker lowStock;
+    private final LowStockTracker.Listener lowStockListener;
 
     public ManagerController(ManagerView view) {
         this.view = view;
         this.productService = new ProductService();
+        this.labelService = new LabelService();
+        this.reportService = new ReportService();
+        this.replenishmentService = new ReplenishmentService();
+        this.stockLedgerService = new StockLedgerService();
+        this.reconciliationService = new StockReconciliationService();
+        this.topSellers = TopSellersTracker.getInstance();
+        this.lowStock = LowStockTracker.getInstance();
+        this.lowStockListener = (item, low) -> SwingUtilities.invokeLater(() -> view.lowStockChanged(item, low));
+        lowStock.addListener(lowStockListener);
+        loadLowStock();
+    }
+
+    /**
+     * Stops listening for low-stock alerts; called when the window closes.
+     */
+    public void close() {
+        lowStock.removeListener(lowStockListener);
     }
 
     /**
@@ -27,7 +72,7 @@ public class ManagerController {
     public void loadProducts() {
         try {
             List<Product> products = productService.getAllProducts();
-            view.displayProducts(products);
+            view.displayProducts(products, loadSuggestions());
         } catch (SQLException e) {
             JOptionPane.showMessageDialog(view, 
                 "An error occurred while loading products: " + e.getMessage(), 
@@ -41,7 +86,7 @@ public class ManagerController {
     public void searchProducts(String keyword) {
         try {
             List<Product> products = productService.searchProducts(keyword);
-            view.displayProducts(products);
+            view.displayProducts(products, loadSuggestions());
         } catch (IllegalArgumentException e) {
             JOptionPane.showMessageDialog(view, e.getMessage(), "Validation Error", JOptionPane.WARNING_MESSAGE);
         } catch (SQLException e) {
@@ -54,7 +99,7 @@ public class ManagerController {
     /**
      * Adds a new product.
      */
-    public void addProduct(int itemId, String name, String category, int quantity, double price) {
+    public void addProduct(int itemId, String name, String category, int quantity, long price) {
         try {
             Product product = new Product(itemId, name, category, quantity, price);
             boolean success = productService.addProduct(product);
@@ -77,7 +122,7 @@ public class ManagerController {
     /**
      * Updates an existing product.
      */
-    public void updateProduct(int newItemId, String name, String category, int quantity, double price, int oldItemId) {
+    public void updateProduct(int newItemId, String name, String category, int quantity, long price, int oldItemId) {
         try {
             Product product = new Product(newItemId, name, category, quantity, price);
             boolean success = productService.updateProduct(product, oldItemId);
@@ -123,6 +168,258 @@ public class ManagerController {
         }
     }
 
+    /**
+     * Adds goods received from a supplier to a product's stock.
+     */
+    public void receiveStock(int itemId, String quantityText) {
+        try {
+            int quantity = Integer.parseInt(quantityText.trim());
+            boolean success = stockLedgerService.receiveStock(itemId, quantity);
+
+            if (success) {
+                JOptionPane.showMessageDialog(view, "Stock Received Successfully!");
+                loadProducts();
+            } else {
+                JOptionPane.showMessageDialog(view, "Product no longer exists!");
+            }
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(view, "Enter the quantity received as a whole number", 
+                "Validation Error", JOptionPane.WARNING_MESSAGE);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(view, e.getMessage(), "Validation Error", JOptionPane.WARNING_MESSAGE);
+        } catch (SQLException e) {
+            JOptionPane.showMessageDialog(view, 
+                "An error occurred while receiving stock: " + e.getMessage(), 
+                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Checks every product's quantity against the stock ledger in the
+     * background, writes the discrepancies to a PDF on the desktop and
+     * offers to correct the mismatched quantities. The outcome is reported
+     * on the event dispatch thread.
+     */
+    public void reconcileStock() {
+        String pdfFilePath = System.getProperty("user.home") + "/Desktop/StockReconciliation-" + LocalDate.now() + ".pdf";
+        reconciliationService.checkInBackground(pdfFilePath).whenComplete((result, error) ->
+            SwingUtilities.invokeLater(() -> {
+                if (error != null) {
+                    showReconcileError(error);
+                    return;
+                }
+                List<StockDiscrepancy> discrepancies = result.getDiscrepancies();
+                if (discrepancies.isEmpty()) {
+                    JOptionPane.showMessageDialog(view, "Stock Matches The Ledger For All Products!");
+                    return;
+                }
+                long mismatches = discrepancies.stream()
+                        .filter(d -> d.getKind() == StockDiscrepancy.Kind.MISMATCH)
+                        .count();
+                String summary = discrepancies.size() + " Discrepancies Found, Report Saved To " + pdfFilePath;
+                if (mismatches == 0) {
+                    JOptionPane.showMessageDialog(view, summary);
+                    return;
+                }
+                int confirm = JOptionPane.showConfirmDialog(view, 
+                    summary + "\nCorrect the quantity of " + mismatches + " products to match the ledger?", 
+                    "Confirm Corrections", JOptionPane.YES_NO_OPTION);
+                if (confirm == JOptionPane.YES_OPTION) {
+                    correctStock(discrepancies);
+                }
+            }));
+    }
+
+    private void correctStock(List<StockDiscrepancy> discrepancies) {
+        reconciliationService.correctInBackground(discrepancies).whenComplete((corrected, error) ->
+            SwingUtilities.invokeLater(() -> {
+                if (error != null) {
+                    showReconcileError(error);
+                    return;
+                }
+                JOptionPane.showMessageDialog(view, corrected + " Products Corrected!");
+                loadProducts();
+            }));
+    }
+
+    private void showReconcileError(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        JOptionPane.showMessageDialog(view, 
+            "An error occurred while reconciling stock: " + cause.getMessage(), 
+            "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    /**
+     * Prints a sheet of shelf labels for the selected products to the desktop.
+     */
+    public void printShelfLabels(List<Integer> itemIds) {
+        try {
+            List<Product> products = productService.getProductsByIds(itemIds);
+            String pdfFilePath = System.getProperty("user.home") + "/Desktop/ShelfLabels-" + System.currentTimeMillis() + ".pdf";
+            labelService.generateLabelSheet(products, pdfFilePath);
+            JOptionPane.showMessageDialog(view, products.size() + " Shelf Labels Saved To " + pdfFilePath);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(view, e.getMessage(), "Validation Error", JOptionPane.WARNING_MESSAGE);
+        } catch (SQLException | IOException e) {
+            JOptionPane.showMessageDialog(view, 
+                "An error occurred while printing shelf labels: " + e.getMessage(), 
+                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Exports all sale lines of a month (entered as yyyy-MM) to a PDF on the desktop.
+     */
+    public void exportSalesReport(String monthText) {
+        try {
+            YearMonth month = YearMonth.parse(monthText.trim());
+            String pdfFilePath = System.getProperty("user.home") + "/Desktop/SalesLines-" + month + ".pdf";
+            int lines = reportService.exportSalesLines(month, pdfFilePath);
+            JOptionPane.showMessageDialog(view, lines + " Sale Lines Exported To " + pdfFilePath);
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(view, "Enter the month as yyyy-MM, e.g. 2024-03", 
+                "Validation Error", JOptionPane.WARNING_MESSAGE);
+        } catch (SQLException | IOException e) {
+            JOptionPane.showMessageDialog(view, 
+                "An error occurred while exporting the sales report: " + e.getMessage(), 
+                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Loads the reorder suggestions shown next to the products; the product
+     * list is still shown without them if they cannot be read.
+     */
+    private Map<Integer, ReorderSuggestion> loadSuggestions() {
+        try {
+            return replenishmentService.getSuggestions();
+        } catch (SQLException e) {
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Recomputes the reorder suggestions of every product from the last
+     * year of sales and refreshes the product table.
+     */
+    public void recomputeReorderPoints() {
+        try {
+            int items = replenishmentService.recomputeAll();
+            JOptionPane.showMessageDialog(view, "Reorder points updated for " + items + " products.");
+            loadProducts();
+        } catch (SQLException e) {
+            JOptionPane.showMessageDialog(view, 
+                "An error occurred while computing reorder points: " + e.getMessage(), 
+                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Shows today's sales totals by category, from the daily rollups.
+     */
+    public void showTodaysSales() {
+        try {
+            LocalDate today = LocalDate.now();
+            List<SalesSummary> categories = reportService.getCategorySales(today, today);
+            List<SalesSummary> days = reportService.getDailySales(today, today);
+            StringBuilder text = formatSummaries(categories);
+            if (days.isEmpty()) {
+                text.append("No sales yet today.");
+            } else {
+                SalesSummary day = days.get(0);
+                text.append(String.format("%nTotal: %d sales, %d units, revenue %s, tax %s",
+                        day.getTransactions(), day.getUnits(), Money.format(day.getRevenue()), Money.format(day.getTax())));
+            }
+            showReport("Sales By Category " + today, text);
+        } catch (SQLException e) {
+            JOptionPane.showMessageDialog(view, 
+                "An error occurred while loading today's sales: " + e.getMessage(), 
+                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Shows the last 30 days of sales broken down by the dimension, from
+     * the in-memory sales store.
+     */
+    public void showSalesBreakdown(SalesColumnStore.Dimension dimension) {
+        try {
+            LocalDate today = LocalDate.now();
+            List<SalesSummary> groups = reportService.getSalesBreakdown(dimension, today.minusDays(29), today, 0, null);
+            StringBuilder text = formatSummaries(groups);
+            if (groups.isEmpty()) {
+                text.append("No sales in the last 30 days.");
+            }
+            showReport("Sales By " + dimension + ", Last 30 Days", text);
+        } catch (SQLException | IOException e) {
+            JOptionPane.showMessageDialog(view, 
+                "An error occurred while loading the sales breakdown: " + e.getMessage(), 
+                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private StringBuilder formatSummaries(List<SalesSummary> summaries) {
+        StringBuilder text = new StringBuilder();
+        for (SalesSummary summary : summaries) {
+            text.append(String.format("%-20s %6d sales %6d units %12s%n", summary.getLabel(),
+                    summary.getTransactions(), summary.getUnits(), Money.format(summary.getRevenue())));
+        }
+        return text;
+    }
+
+    private void showReport(String title, StringBuilder text) {
+        JTextArea report = new JTextArea(text.toString());
+        report.setEditable(false);
+        report.setFont(new java.awt.Font(java.awt.Font.MONOSPACED, java.awt.Font.PLAIN, 12));
+        JScrollPane scrollPane = new JScrollPane(report);
+        scrollPane.setPreferredSize(new java.awt.Dimension(640, 400));
+        JOptionPane.showMessageDialog(view, scrollPane, title, JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    /**
+     * Returns the best sellers of the window. Today's sales are counted from
+     * the database the first time; after that the tracker is fed by the
+     * tills' completed sales.
+     */
+    public List<TopSellersTracker.Seller> getTopSellers(TopSellersTracker.Window window, int k) {
+        if (!topSellersLoaded) {
+            try {
+                reportService.reloadTopSellers(topSellers);
+                topSellersLoaded = true;
+            } catch (SQLException e) {
+                JOptionPane.showMessageDialog(view, 
+                    "An error occurred while loading today's sales: " + e.getMessage(), 
+                    "Error", JOptionPane.ERROR_MESSAGE);
+                topSellersLoaded = true; // show what the tills report rather than failing every refresh
+            }
+        }
+        return topSellers.getTopSellers(window, k);
+    }
+
+    /**
+     * Returns the products at or below their reorder threshold, most urgent
+     * first.
+     */
+    public List<LowStockTracker.Item> getLowStock() {
+        return lowStock.getLowStock();
+    }
+
+    /**
+     * Loads every product and its reorder point into the low-stock tracker.
+     * Done when the controller is built, so alerts use the right thresholds
+     * from the start, and again when the low stock list is opened, to take
+     * in sales rung up on other till machines.
+     */
+    public void loadLowStock() {
+        try {
+            productService.reloadLowStock();
+        } catch (SQLException e) {
+            JOptionPane.showMessageDialog(view, 
+                "An error occurred while loading stock levels: " + e.getMessage(), 
+                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     /**
      * Loads a product by ID and populates the form fields.
      */
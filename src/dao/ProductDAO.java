@@ -1,12 +1,16 @@
 package dao;
 
 import model.Product;
+import model.StockDiscrepancy;
+import model.StockMovement;
 import utils.DatabaseConnector;
+import utils.Money;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -15,6 +19,9 @@ import java.util.List;
  * Handles all database operations related to products.
  */
 public class ProductDAO {
+    private static final int CORRECTION_BATCH = 1000;
+
+    private final StockLedgerDAO stockLedgerDAO = new StockLedgerDAO();
 
     /**
      * Retrieves all products from the database.
@@ -33,7 +40,7 @@ public class ProductDAO {
                     rs.getString("Name"),
                     rs.getString("Category"),
                     rs.getInt("Qty"),
-                    rs.getDouble("Price")
+                    Money.fromDecimal(rs.getBigDecimal("Price"))
                 );
                 products.add(product);
             }
@@ -63,7 +70,7 @@ public class ProductDAO {
                         rs.getString("Name"),
                         rs.getString("Category"),
                         rs.getInt("Qty"),
-                        rs.getDouble("Price")
+                        Money.fromDecimal(rs.getBigDecimal("Price"))
                     );
                     products.add(product);
                 }
@@ -90,7 +97,7 @@ public class ProductDAO {
                         rs.getString("Name"),
                         rs.getString("Category"),
                         rs.getInt("Qty"),
-                        rs.getDouble("Price")
+                        Money.fromDecimal(rs.getBigDecimal("Price"))
                     );
                 }
             }
@@ -99,55 +106,164 @@ public class ProductDAO {
     }
 
     /**
-     * Adds a new product to the database.
+     * Retrieves the products with the given IDs, in item ID order.
+     */
+    public List<Product> getProductsByIds(List<Integer> itemIds) throws SQLException {
+        List<Product> products = new ArrayList<>();
+        StringBuilder query = new StringBuilder("SELECT * FROM products WHERE ItemId IN (");
+        for (int i = 0; i < itemIds.size(); i++) {
+            query.append(i == 0 ? "?" : ", ?");
+        }
+        query.append(") ORDER BY ItemId");
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query.toString())) {
+
+            for (int i = 0; i < itemIds.size(); i++) {
+                pst.setInt(i + 1, itemIds.get(i));
+            }
+
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    Product product = new Product(
+                        rs.getInt("ItemId"),
+                        rs.getString("Name"),
+                        rs.getString("Category"),
+                        rs.getInt("Qty"),
+                        Money.fromDecimal(rs.getBigDecimal("Price"))
+                    );
+                    products.add(product);
+                }
+            }
+        }
+        return products;
+    }
+
+    /**
+     * Adds a new product to the database, recording its opening stock as
+     * an adjustment in the stock ledger.
      */
     public boolean addProduct(Product product) throws SQLException {
         String query = "INSERT INTO products(itemid, name, category, qty, price) VALUES(?, ?, ?, ?, ?)";
         
-        try (Connection con = DatabaseConnector.connect();
-             PreparedStatement pst = con.prepareStatement(query)) {
-            
-            pst.setInt(1, product.getItemId());
-            pst.setString(2, product.getName());
-            pst.setString(3, product.getCategory());
-            pst.setInt(4, product.getQuantity());
-            pst.setDouble(5, product.getPrice());
-            
-            return pst.executeUpdate() > 0;
+        try (Connection con = DatabaseConnector.connect()) {
+            con.setAutoCommit(false);
+
+            try (PreparedStatement pst = con.prepareStatement(query)) {
+                pst.setInt(1, product.getItemId());
+                pst.setString(2, product.getName());
+                pst.setString(3, product.getCategory());
+                pst.setInt(4, product.getQuantity());
+                pst.setBigDecimal(5, Money.toDecimal(product.getPrice()));
+
+                boolean added = pst.executeUpdate() > 0;
+                if (added && product.getQuantity() != 0) {
+                    stockLedgerDAO.addMovements(con, List.of(new StockMovement(product.getItemId(),
+                            StockMovement.Type.ADJUSTMENT, product.getQuantity(), 0)));
+                }
+                con.commit();
+                return added;
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
         }
     }
 
     /**
-     * Updates an existing product in the database.
+     * Updates an existing product in the database. A change of quantity
+     * is recorded as an adjustment in the stock ledger; a change of ID moves
+     * the stock from the old ID to the new one.
      */
     public boolean updateProduct(Product product, int oldItemId) throws SQLException {
         String query = "UPDATE products SET itemid=?, name=?, category=?, qty=?, price=? WHERE itemid=?";
         
-        try (Connection con = DatabaseConnector.connect();
-             PreparedStatement pst = con.prepareStatement(query)) {
-            
-            pst.setInt(1, product.getItemId());
-            pst.setString(2, product.getName());
-            pst.setString(3, product.getCategory());
-            pst.setInt(4, product.getQuantity());
-            pst.setDouble(5, product.getPrice());
-            pst.setInt(6, oldItemId);
-            
-            return pst.executeUpdate() > 0;
+        try (Connection con = DatabaseConnector.connect()) {
+            con.setAutoCommit(false);
+
+            try (PreparedStatement pst = con.prepareStatement(query)) {
+                Integer oldQuantity = lockQuantity(con, oldItemId);
+                if (oldQuantity == null) {
+                    con.rollback();
+                    return false;
+                }
+
+                pst.setInt(1, product.getItemId());
+                pst.setString(2, product.getName());
+                pst.setString(3, product.getCategory());
+                pst.setInt(4, product.getQuantity());
+                pst.setBigDecimal(5, Money.toDecimal(product.getPrice()));
+                pst.setInt(6, oldItemId);
+                boolean updated = pst.executeUpdate() > 0;
+
+                List<StockMovement> movements = new ArrayList<>();
+                if (product.getItemId() != oldItemId) {
+                    if (oldQuantity != 0) {
+                        movements.add(new StockMovement(oldItemId, StockMovement.Type.ADJUSTMENT, -oldQuantity, 0));
+                    }
+                    if (product.getQuantity() != 0) {
+                        movements.add(new StockMovement(product.getItemId(), StockMovement.Type.ADJUSTMENT,
+                                product.getQuantity(), 0));
+                    }
+                } else if (product.getQuantity() != oldQuantity) {
+                    movements.add(new StockMovement(oldItemId, StockMovement.Type.ADJUSTMENT,
+                            product.getQuantity() - oldQuantity, 0));
+                }
+                if (updated && !movements.isEmpty()) {
+                    stockLedgerDAO.addMovements(con, movements);
+                }
+                con.commit();
+                return updated;
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
         }
     }
 
     /**
-     * Deletes a product from the database.
+     * Deletes a product from the database, recording the removal of its
+     * remaining stock in the stock ledger.
      */
     public boolean deleteProduct(int itemId) throws SQLException {
         String query = "DELETE FROM products WHERE itemid=?";
         
-        try (Connection con = DatabaseConnector.connect();
-             PreparedStatement pst = con.prepareStatement(query)) {
-            
+        try (Connection con = DatabaseConnector.connect()) {
+            con.setAutoCommit(false);
+
+            try (PreparedStatement pst = con.prepareStatement(query)) {
+                Integer quantity = lockQuantity(con, itemId);
+                pst.setInt(1, itemId);
+                boolean deleted = pst.executeUpdate() > 0;
+                if (deleted && quantity != null && quantity != 0) {
+                    stockLedgerDAO.addMovements(con, List.of(new StockMovement(itemId,
+                            StockMovement.Type.ADJUSTMENT, -quantity, 0)));
+                }
+                con.commit();
+                return deleted;
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Reads a product's quantity and locks its row until the caller's
+     * transaction ends; null if there is no such product.
+     */
+    private Integer lockQuantity(Connection con, int itemId) throws SQLException {
+        try (PreparedStatement pst = con.prepareStatement("SELECT Qty FROM products WHERE ItemId = ? FOR UPDATE")) {
             pst.setInt(1, itemId);
-            return pst.executeUpdate() > 0;
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
         }
     }
 
@@ -213,18 +329,57 @@ public class ProductDAO {
     }
 
     /**
-     * Updates product quantity after a sale.
+     * Corrects products.Qty to the stock implied by the ledger, a thousand
+     * products per batch and transaction. Each product is moved by the
+     * difference found rather than set to a value, so sales committed since
+     * the discrepancy was found are kept. The ledger already holds the true
+     * movements, so nothing is added to it. Returns the products corrected.
      */
-    public boolean updateProductQuantity(int itemId, int quantitySold) throws SQLException {
-        String query = "UPDATE products SET qty = qty - ? WHERE itemid = ?";
-        
-        try (Connection con = DatabaseConnector.connect();
-             PreparedStatement pst = con.prepareStatement(query)) {
-            
-            pst.setInt(1, quantitySold);
-            pst.setInt(2, itemId);
-            
-            return pst.executeUpdate() > 0;
+    public int correctQuantities(List<StockDiscrepancy> discrepancies) throws SQLException {
+        String query = "UPDATE products SET Qty = Qty + ? WHERE ItemId = ?";
+        int corrected = 0;
+
+        try (Connection con = DatabaseConnector.connect()) {
+            con.setAutoCommit(false);
+
+            try (PreparedStatement pst = con.prepareStatement(query)) {
+                int pending = 0;
+                for (StockDiscrepancy discrepancy : discrepancies) {
+                    pst.setInt(1, discrepancy.getLedgerQty() - discrepancy.getRecordedQty());
+                    pst.setInt(2, discrepancy.getItemId());
+                    pst.addBatch();
+                    if (++pending == CORRECTION_BATCH) {
+                        corrected += executeCorrections(con, pst);
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    corrected += executeCorrections(con, pst);
+                }
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
         }
+        return corrected;
+    }
+
+    private int executeCorrections(Connection con, PreparedStatement pst) throws SQLException {
+        int corrected = 0;
+        for (int updated : pst.executeBatch()) {
+            corrected += updated > 0 || updated == Statement.SUCCESS_NO_INFO ? 1 : 0;
+        }
+        con.commit();
+        return corrected;
+    }
+
+    /**
+     * Updates product quantity after a sale, recording it in the stock
+     * ledger.
+     */
+    public boolean updateProductQuantity(int itemId, int quantitySold) throws SQLException {
+        return stockLedgerDAO.recordMovements(List.of(new StockMovement(itemId, StockMovement.Type.SALE, -quantitySold, 0)));
     }
 }
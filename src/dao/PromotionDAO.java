@@ -0,0 +1,70 @@
+package dao;
+
+import model.Promotion;
+import utils.DatabaseConnector;
+import utils.Money;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Data Access Object for Promotion entity.
+ * Handles all database operations related to promotion rules.
+ */
+public class PromotionDAO {
+    private static final Logger LOGGER = Logger.getLogger(PromotionDAO.class.getName());
+
+    /**
+     * Retrieves all promotions that are currently active. Rows with a
+     * missing or unknown type are logged and skipped, so one bad rule does
+     * not keep the others from loading.
+     */
+    public List<Promotion> getActivePromotions() throws SQLException {
+        List<Promotion> promotions = new ArrayList<>();
+        String query = "SELECT * FROM promotions WHERE active = 1";
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query);
+             ResultSet rs = pst.executeQuery()) {
+
+            while (rs.next()) {
+                Promotion.Type type = parseType(rs.getString("type"));
+                if (type == null) {
+                    LOGGER.warning("Skipping promotion " + rs.getInt("promotionId")
+                            + " with unknown type '" + rs.getString("type") + "'");
+                    continue;
+                }
+                Promotion promotion = new Promotion(
+                    rs.getInt("promotionId"),
+                    rs.getString("name"),
+                    type,
+                    rs.getInt("itemId"),
+                    rs.getString("category"),
+                    rs.getInt("percentOff"),
+                    rs.getInt("buyQty"),
+                    rs.getInt("payQty"),
+                    Money.fromDecimal(rs.getBigDecimal("overridePrice"))
+                );
+                promotions.add(promotion);
+            }
+        }
+        return promotions;
+    }
+
+    private static Promotion.Type parseType(String type) {
+        if (type == null) {
+            return null;
+        }
+        try {
+            return Promotion.Type.valueOf(type.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
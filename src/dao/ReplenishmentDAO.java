@@ -0,0 +1,146 @@
+package dao;
+
+import model.ReorderSuggestion;
+import utils.DatabaseConnector;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Access Object for replenishment: reads daily unit sales from the
+ * item rollups and stores reorder suggestions.
+ */
+public class ReplenishmentDAO {
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Receives one item's units sold on one day; rows come grouped by item,
+     * oldest day first.
+     */
+    public interface DailyUnitsHandler {
+        void handle(int itemId, int stockQty, LocalDate day, long units);
+    }
+
+    /**
+     * Streams the daily units of every product sold in [from, to). If
+     * soldOn is not null, only products sold on that day are included.
+     * Rows come through a server-side streaming cursor, so memory use does
+     * not grow with the number of products.
+     */
+    public void streamDailyUnits(LocalDate from, LocalDate to, LocalDate soldOn, DailyUnitsHandler handler) throws SQLException {
+        String query = "SELECT r.itemId, p.Qty, r.saleDay, r.units "
+                + "FROM sales_daily_items r JOIN products p ON p.ItemId = r.itemId "
+                + "WHERE r.saleDay >= ? AND r.saleDay < ? "
+                + (soldOn == null ? "" : "AND r.itemId IN (SELECT itemId FROM sales_daily_items WHERE saleDay = ?) ")
+                + "ORDER BY r.itemId, r.saleDay";
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            pst.setFetchSize(Integer.MIN_VALUE);
+            pst.setDate(1, Date.valueOf(from));
+            pst.setDate(2, Date.valueOf(to));
+            if (soldOn != null) {
+                pst.setDate(3, Date.valueOf(soldOn));
+            }
+
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    handler.handle(rs.getInt(1), rs.getInt(2), rs.getDate(3).toLocalDate(), rs.getLong(4));
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts or replaces suggestions, a thousand rows per batch and
+     * transaction.
+     */
+    public void saveSuggestions(List<ReorderSuggestion> suggestions) throws SQLException {
+        String sql = "INSERT INTO reorder_suggestions (itemId, velocity, reorderPoint, orderUpTo, suggestedQty, asOf) "
+                + "VALUES (?, ?, ?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE velocity = VALUES(velocity), reorderPoint = VALUES(reorderPoint), "
+                + "orderUpTo = VALUES(orderUpTo), suggestedQty = VALUES(suggestedQty), asOf = VALUES(asOf)";
+
+        try (Connection conn = DatabaseConnector.connect()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement pst = conn.prepareStatement(sql)) {
+                int pending = 0;
+                for (ReorderSuggestion suggestion : suggestions) {
+                    pst.setInt(1, suggestion.getItemId());
+                    pst.setBigDecimal(2, BigDecimal.valueOf(suggestion.getVelocity()).setScale(3, RoundingMode.HALF_UP));
+                    pst.setInt(3, suggestion.getReorderPoint());
+                    pst.setInt(4, suggestion.getOrderUpTo());
+                    pst.setInt(5, suggestion.getSuggestedQty());
+                    pst.setDate(6, Date.valueOf(suggestion.getAsOf()));
+                    pst.addBatch();
+                    if (++pending == BATCH_SIZE) {
+                        pst.executeBatch();
+                        conn.commit();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    pst.executeBatch();
+                    conn.commit();
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Removes the suggestions not recomputed since the given day, e.g. for
+     * products no longer sold in the history window.
+     */
+    public int deleteSuggestionsBefore(LocalDate asOf) throws SQLException {
+        String sql = "DELETE FROM reorder_suggestions WHERE asOf < ?";
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(sql)) {
+
+            pst.setDate(1, Date.valueOf(asOf));
+            return pst.executeUpdate();
+        }
+    }
+
+    /**
+     * Retrieves all suggestions keyed by item ID.
+     */
+    public Map<Integer, ReorderSuggestion> getSuggestions() throws SQLException {
+        String query = "SELECT * FROM reorder_suggestions";
+        Map<Integer, ReorderSuggestion> suggestions = new HashMap<>();
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query);
+             ResultSet rs = pst.executeQuery()) {
+
+            while (rs.next()) {
+                ReorderSuggestion suggestion = new ReorderSuggestion(
+                    rs.getInt("itemId"),
+                    rs.getBigDecimal("velocity").doubleValue(),
+                    rs.getInt("reorderPoint"),
+                    rs.getInt("orderUpTo"),
+                    rs.getInt("suggestedQty"),
+                    rs.getDate("asOf").toLocalDate()
+                );
+                suggestions.put(suggestion.getItemId(), suggestion);
+            }
+        }
+        return suggestions;
+    }
+}
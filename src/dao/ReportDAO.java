@@ -0,0 +1,252 @@
+package dao;
+
+import model.SalesSummary;
+import utils.DatabaseConnector;
+import utils.Money;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Data Access Object for the daily sales rollups.
+ * sales_daily, sales_daily_items and sales_daily_categories hold one row
+ * per day (and item or category) with the transaction count, units, revenue
+ * and tax sold. They are added to inside each sale's transaction, so reports
+ * read a few rows per day instead of every sale line.
+ */
+public class ReportDAO {
+    private static final String ADD_DAY_SQL =
+        "INSERT INTO sales_daily (saleDay, transactions, units, revenue, tax) "
+        + "SELECT DATE(s.saleDate), 1, SUM(si.quantity), SUM(si.price), SUM(si.tax) "
+        + "FROM sales s JOIN saleitems si ON si.salesId = s.salesId AND si.saleDate = s.saleDate "
+        + "WHERE s.salesId = ? AND s.saleDate = ? GROUP BY s.salesId "
+        + "ON DUPLICATE KEY UPDATE transactions = transactions + VALUES(transactions), "
+        + "units = units + VALUES(units), revenue = revenue + VALUES(revenue), tax = tax + VALUES(tax)";
+    private static final String ADD_ITEMS_SQL =
+        "INSERT INTO sales_daily_items (saleDay, itemId, transactions, units, revenue, tax) "
+        + "SELECT DATE(s.saleDate), si.itemId, 1, si.quantity, si.price, si.tax "
+        + "FROM sales s JOIN saleitems si ON si.salesId = s.salesId AND si.saleDate = s.saleDate "
+        + "WHERE s.salesId = ? AND s.saleDate = ? "
+        + "ON DUPLICATE KEY UPDATE transactions = transactions + VALUES(transactions), "
+        + "units = units + VALUES(units), revenue = revenue + VALUES(revenue), tax = tax + VALUES(tax)";
+    private static final String ADD_CATEGORIES_SQL =
+        "INSERT INTO sales_daily_categories (saleDay, category, transactions, units, revenue, tax) "
+        + "SELECT DATE(s.saleDate), COALESCE(p.Category, ''), 1, SUM(si.quantity), SUM(si.price), SUM(si.tax) "
+        + "FROM sales s JOIN saleitems si ON si.salesId = s.salesId AND si.saleDate = s.saleDate "
+        + "LEFT JOIN products p ON p.ItemId = si.itemId "
+        + "WHERE s.salesId = ? AND s.saleDate = ? GROUP BY DATE(s.saleDate), COALESCE(p.Category, '') "
+        + "ON DUPLICATE KEY UPDATE transactions = transactions + VALUES(transactions), "
+        + "units = units + VALUES(units), revenue = revenue + VALUES(revenue), tax = tax + VALUES(tax)";
+
+    /**
+     * Adds a sale that was just inserted on the connection to the rollups.
+     * Runs inside the caller's transaction, so the rollups commit or roll
+     * back together with the sale. The sale date lets MySQL read only the
+     * sale's own partition.
+     */
+    void addSale(Connection conn, int salesId, Timestamp saleDate) throws SQLException {
+        for (String sql : new String[] {ADD_DAY_SQL, ADD_ITEMS_SQL, ADD_CATEGORIES_SQL}) {
+            try (PreparedStatement pst = conn.prepareStatement(sql)) {
+                pst.setInt(1, salesId);
+                pst.setTimestamp(2, saleDate);
+                pst.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the totals of each day in [from, to) that had sales.
+     */
+    public List<SalesSummary> getDailySales(LocalDate from, LocalDate to) throws SQLException {
+        String query = "SELECT saleDay, transactions, units, revenue, tax FROM sales_daily "
+                + "WHERE saleDay >= ? AND saleDay < ? ORDER BY saleDay";
+        List<SalesSummary> days = new ArrayList<>();
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query)) {
+
+            pst.setDate(1, Date.valueOf(from));
+            pst.setDate(2, Date.valueOf(to));
+
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    days.add(new SalesSummary(
+                        rs.getDate("saleDay").toLocalDate(),
+                        null,
+                        rs.getInt("transactions"),
+                        rs.getLong("units"),
+                        Money.fromDecimal(rs.getBigDecimal("revenue")),
+                        Money.fromDecimal(rs.getBigDecimal("tax"))
+                    ));
+                }
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Retrieves the totals of each item sold in [from, to), best selling
+     * (by revenue) first. Items are labelled with their current name.
+     */
+    public List<SalesSummary> getItemSales(LocalDate from, LocalDate to) throws SQLException {
+        String query = "SELECT r.itemId, p.Name, SUM(r.transactions) AS transactions, SUM(r.units) AS units, "
+                + "SUM(r.revenue) AS revenue, SUM(r.tax) AS tax "
+                + "FROM sales_daily_items r LEFT JOIN products p ON p.ItemId = r.itemId "
+                + "WHERE r.saleDay >= ? AND r.saleDay < ? "
+                + "GROUP BY r.itemId, p.Name ORDER BY revenue DESC";
+        return getTotals(query, from, to, true);
+    }
+
+    /**
+     * Retrieves the totals of each category sold in [from, to), highest
+     * revenue first. Sales are counted under the category the item had
+     * when it was sold.
+     */
+    public List<SalesSummary> getCategorySales(LocalDate from, LocalDate to) throws SQLException {
+        String query = "SELECT category, SUM(transactions) AS transactions, SUM(units) AS units, "
+                + "SUM(revenue) AS revenue, SUM(tax) AS tax "
+                + "FROM sales_daily_categories "
+                + "WHERE saleDay >= ? AND saleDay < ? "
+                + "GROUP BY category ORDER BY revenue DESC";
+        return getTotals(query, from, to, false);
+    }
+
+    private List<SalesSummary> getTotals(String query, LocalDate from, LocalDate to, boolean byItem) throws SQLException {
+        List<SalesSummary> totals = new ArrayList<>();
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query)) {
+
+            pst.setDate(1, Date.valueOf(from));
+            pst.setDate(2, Date.valueOf(to));
+
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    String label;
+                    if (byItem) {
+                        String name = rs.getString("Name");
+                        label = rs.getInt("itemId") + " " + (name == null ? "(deleted)" : name);
+                    } else {
+                        label = rs.getString("category");
+                    }
+                    totals.add(new SalesSummary(
+                        null,
+                        label,
+                        rs.getInt("transactions"),
+                        rs.getLong("units"),
+                        Money.fromDecimal(rs.getBigDecimal("revenue")),
+                        Money.fromDecimal(rs.getBigDecimal("tax"))
+                    ));
+                }
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Recomputes the rollups of the days in [from, to) from the sale lines,
+     * e.g. for sales recorded before the rollups existed. Categories are
+     * taken from the products as they are now. Days before the oldest sale
+     * still in sales have been archived or had their partitions dropped, so
+     * their rollups are all that is left: the range is clamped to start at
+     * the first day from that one on that is not in archivedDays, and
+     * nothing is rebuilt if sales is empty. An archived day can still have
+     * some of its lines in sales when its deletion was interrupted, so it
+     * must not be rebuilt from them. Returns the number of sales rolled up.
+     */
+    public int rebuild(LocalDate from, LocalDate to, Set<LocalDate> archivedDays) throws SQLException {
+        String range = "s.saleDate >= ? AND s.saleDate < ? AND si.saleDate >= ? AND si.saleDate < ?";
+        String[] deletes = {
+            "DELETE FROM sales_daily WHERE saleDay >= ? AND saleDay < ?",
+            "DELETE FROM sales_daily_items WHERE saleDay >= ? AND saleDay < ?",
+            "DELETE FROM sales_daily_categories WHERE saleDay >= ? AND saleDay < ?"
+        };
+        String[] inserts = {
+            "INSERT INTO sales_daily (saleDay, transactions, units, revenue, tax) "
+                + "SELECT DATE(s.saleDate), COUNT(DISTINCT s.salesId), SUM(si.quantity), SUM(si.price), SUM(si.tax) "
+                + "FROM sales s JOIN saleitems si ON si.salesId = s.salesId AND si.saleDate = s.saleDate "
+                + "WHERE " + range + " GROUP BY DATE(s.saleDate)",
+            "INSERT INTO sales_daily_items (saleDay, itemId, transactions, units, revenue, tax) "
+                + "SELECT DATE(s.saleDate), si.itemId, COUNT(*), SUM(si.quantity), SUM(si.price), SUM(si.tax) "
+                + "FROM sales s JOIN saleitems si ON si.salesId = s.salesId AND si.saleDate = s.saleDate "
+                + "WHERE " + range + " GROUP BY DATE(s.saleDate), si.itemId",
+            "INSERT INTO sales_daily_categories (saleDay, category, transactions, units, revenue, tax) "
+                + "SELECT DATE(s.saleDate), COALESCE(p.Category, ''), COUNT(DISTINCT s.salesId), "
+                + "SUM(si.quantity), SUM(si.price), SUM(si.tax) "
+                + "FROM sales s JOIN saleitems si ON si.salesId = s.salesId AND si.saleDate = s.saleDate "
+                + "LEFT JOIN products p ON p.ItemId = si.itemId "
+                + "WHERE " + range + " GROUP BY DATE(s.saleDate), COALESCE(p.Category, '')"
+        };
+
+        try (Connection conn = DatabaseConnector.connect()) {
+            conn.setAutoCommit(false);
+
+            try {
+                Date oldest = null;
+                try (PreparedStatement pst = conn.prepareStatement("SELECT DATE(MIN(saleDate)) FROM sales");
+                     ResultSet rs = pst.executeQuery()) {
+                    if (rs.next()) {
+                        oldest = rs.getDate(1);
+                    }
+                }
+                LocalDate first = oldest == null ? to : oldest.toLocalDate();
+                while (archivedDays.contains(first)) {
+                    first = first.plusDays(1);
+                }
+                if (!first.isBefore(to)) {
+                    conn.commit();
+                    return 0;
+                }
+                if (first.isAfter(from)) {
+                    from = first;
+                }
+
+                for (String sql : deletes) {
+                    try (PreparedStatement pst = conn.prepareStatement(sql)) {
+                        pst.setDate(1, Date.valueOf(from));
+                        pst.setDate(2, Date.valueOf(to));
+                        pst.executeUpdate();
+                    }
+                }
+                for (String sql : inserts) {
+                    try (PreparedStatement pst = conn.prepareStatement(sql)) {
+                        pst.setDate(1, Date.valueOf(from));
+                        pst.setDate(2, Date.valueOf(to));
+                        pst.setDate(3, Date.valueOf(from));
+                        pst.setDate(4, Date.valueOf(to));
+                        pst.executeUpdate();
+                    }
+                }
+
+                int sales = 0;
+                try (PreparedStatement pst = conn.prepareStatement(
+                        "SELECT COALESCE(SUM(transactions), 0) FROM sales_daily WHERE saleDay >= ? AND saleDay < ?")) {
+                    pst.setDate(1, Date.valueOf(from));
+                    pst.setDate(2, Date.valueOf(to));
+                    try (ResultSet rs = pst.executeQuery()) {
+                        if (rs.next()) {
+                            sales = rs.getInt(1);
+                        }
+                    }
+                }
+
+                conn.commit();
+                return sales;
+
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+}
@@ -3,27 +3,78 @@ package dao;
 import model.Sale;
 import model.SaleItem;
 import utils.DatabaseConnector;
+import utils.Money;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 /**
  * Data Access Object for Sale entity.
  * Handles all database operations related to sales.
+ * sales and saleitems are partitioned by month of saleDate, so queries that
+ * filter on saleDate read only the months they cover, and old months are
+ * removed by dropping their partitions.
  */
 public class SaleDAO {
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    /**
+     * SQLState of the exception thrown when a sale would take a product's
+     * stock below zero.
+     */
+    public static final String OUT_OF_STOCK = "45000";
+
+    private final ReportDAO reportDAO = new ReportDAO();
+    private final StockLedgerDAO stockLedgerDAO = new StockLedgerDAO();
+
+    /**
+     * Receives sale lines one at a time from streamSaleLines.
+     */
+    public interface SaleLineHandler {
+        void handle(int salesId, Timestamp saleDate, SaleItem item);
+    }
 
     /**
      * Creates a new sale transaction with its items.
      * Returns the generated sale ID.
      */
     public int createSale(Sale sale, List<SaleItem> saleItems) throws SQLException {
-        String insertSalesSQL = "INSERT INTO sales (total, payment, balance) VALUES (?, ?, ?)";
-        String insertSaleItemsSQL = "INSERT INTO saleitems (salesId, itemId, quantity, price) VALUES (?, ?, ?, ?)";
+        return createSale(sale, saleItems, null);
+    }
+
+    /**
+     * Creates a new sale with its items, storing each item's name and
+     * category as they are now, takes the sold quantities off
+     * stock, records them in the stock ledger and adds the sale to the
+     * daily rollups, all in one transaction. If a product no longer has
+     * the quantity sold, nothing is saved and an SQLException with
+     * SQLState OUT_OF_STOCK is thrown. The listener, if any, is given
+     * the sale ID as soon as it is generated, before the transaction
+     * commits, so work that only needs the ID can start early; it must not
+     * rely on the sale being committed. Returns the generated sale ID.
+     */
+    public int createSale(Sale sale, List<SaleItem> saleItems, IntConsumer onSaleId) throws SQLException {
+        String updateStockSQL = "UPDATE products SET qty = qty - ? WHERE itemid = ? AND qty >= ?";
+        String insertSalesSQL = "INSERT INTO sales (total, tax, payment, balance, receiptVersion, saleDate) VALUES (?, ?, ?, ?, ?, ?)";
+        String insertSaleItemsSQL = "INSERT INTO saleitems (salesId, itemId, quantity, price, taxRate, tax, saleDate, name, category) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+        // the sale and its lines share the timestamp, which is their partition key;
+        // whole seconds, as the column stores them
+        if (sale.getSaleDate() == null) {
+            sale.setSaleDate(LocalDateTime.now().withNano(0));
+        }
+        Timestamp saleDate = Timestamp.valueOf(sale.getSaleDate());
         
         try (Connection conn = DatabaseConnector.connect()) {
             conn.setAutoCommit(false);
@@ -33,9 +84,12 @@ public class SaleDAO {
                 
                 // Insert sale
                 try (PreparedStatement salesStmt = conn.prepareStatement(insertSalesSQL, Statement.RETURN_GENERATED_KEYS)) {
-                    salesStmt.setDouble(1, sale.getTotal());
-                    salesStmt.setDouble(2, sale.getPayment());
-                    salesStmt.setDouble(3, sale.getBalance());
+                    salesStmt.setBigDecimal(1, Money.toDecimal(sale.getTotal()));
+                    salesStmt.setBigDecimal(2, Money.toDecimal(sale.getTax()));
+                    salesStmt.setBigDecimal(3, Money.toDecimal(sale.getPayment()));
+                    salesStmt.setBigDecimal(4, Money.toDecimal(sale.getBalance()));
+                    salesStmt.setInt(5, sale.getReceiptVersion());
+                    salesStmt.setTimestamp(6, saleDate);
                     salesStmt.executeUpdate();
                     
                     try (ResultSet generatedKeys = salesStmt.getGeneratedKeys()) {
@@ -45,18 +99,50 @@ public class SaleDAO {
                     }
                 }
                 
+                if (generatedSaleId != -1 && onSaleId != null) {
+                    onSaleId.accept(generatedSaleId);
+                }
+
                 // Insert sale items
                 if (generatedSaleId != -1) {
                     try (PreparedStatement itemsStmt = conn.prepareStatement(insertSaleItemsSQL)) {
                         for (SaleItem item : saleItems) {
                             itemsStmt.setInt(1, generatedSaleId);
-                            itemsStmt.setString(2, item.getItemId());
-                            itemsStmt.setString(3, item.getQuantity());
-                            itemsStmt.setString(4, item.getPrice());
+                            itemsStmt.setInt(2, item.getItemId());
+                            itemsStmt.setInt(3, item.getQuantity());
+                            itemsStmt.setBigDecimal(4, Money.toDecimal(item.getPrice()));
+                            itemsStmt.setInt(5, item.getTaxRate());
+                            itemsStmt.setBigDecimal(6, Money.toDecimal(item.getTax()));
+                            itemsStmt.setTimestamp(7, saleDate);
+                            itemsStmt.setString(8, item.getName());
+                            itemsStmt.setString(9, item.getCategory());
                             itemsStmt.addBatch();
                         }
                         itemsStmt.executeBatch();
                     }
+
+                    // Take the sold quantities off stock; another machine may have sold the last units
+                    try (PreparedStatement stockStmt = conn.prepareStatement(updateStockSQL)) {
+                        for (SaleItem item : saleItems) {
+                            stockStmt.setInt(1, item.getQuantity());
+                            stockStmt.setInt(2, item.getItemId());
+                            stockStmt.setInt(3, item.getQuantity());
+                            stockStmt.addBatch();
+                        }
+                        int[] updated = stockStmt.executeBatch();
+                        for (int i = 0; i < updated.length; i++) {
+                            if (updated[i] == 0) {
+                                SaleItem item = saleItems.get(i);
+                                throw new SQLException("Out of stock: fewer than " + item.getQuantity() + " of "
+                                        + (item.getName() == null ? "item #" + item.getItemId() : item.getName())
+                                        + " left", OUT_OF_STOCK);
+                            }
+                        }
+                    }
+                    stockLedgerDAO.addSale(conn, generatedSaleId, saleDate);
+
+                    // Add the sale to the daily rollups
+                    reportDAO.addSale(conn, generatedSaleId, saleDate);
                 }
                 
                 conn.commit();
@@ -72,7 +158,8 @@ public class SaleDAO {
     }
 
     /**
-     * Retrieves a sale by its ID.
+     * Retrieves a sale by its ID. Without a date every monthly partition's
+     * primary key is probed; use getSales for ranges.
      */
     public Sale getSaleById(int salesId) throws SQLException {
         String query = "SELECT * FROM sales WHERE salesId = ?";
@@ -84,15 +171,335 @@ public class SaleDAO {
             
             try (ResultSet rs = pst.executeQuery()) {
                 if (rs.next()) {
-                    return new Sale(
-                        rs.getInt("salesId"),
-                        rs.getDouble("total"),
-                        rs.getDouble("payment"),
-                        rs.getDouble("balance")
-                    );
+                    return mapSale(rs);
                 }
             }
         }
         return null;
     }
+
+    /**
+     * Retrieves a sale together with its items, in a single query.
+     * Item names and categories are the ones stored with each line at the
+     * time of sale; lines saved before they were stored fall back to the
+     * current product.
+     */
+    public Sale getSaleWithItems(int salesId) throws SQLException {
+        String query = "SELECT s.salesId, s.total, s.tax, s.payment, s.balance, s.receiptVersion, s.saleDate, "
+                + "si.itemId, si.quantity, si.price, si.taxRate, si.tax AS itemTax, COALESCE(si.name, p.Name) AS Name, COALESCE(si.category, p.Category) AS Category "
+                + "FROM sales s "
+                + "LEFT JOIN saleitems si ON si.salesId = s.salesId AND si.saleDate = s.saleDate "
+                + "LEFT JOIN products p ON p.ItemId = si.itemId "
+                + "WHERE s.salesId = ? ORDER BY si.itemId";
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query)) {
+
+            pst.setInt(1, salesId);
+
+            try (ResultSet rs = pst.executeQuery()) {
+                Sale sale = null;
+                while (rs.next()) {
+                    if (sale == null) {
+                        sale = mapSale(rs);
+                    }
+                    int itemId = rs.getInt("itemId");
+                    if (rs.wasNull()) {
+                        continue; // sale without items
+                    }
+                    SaleItem item = new SaleItem(
+                        salesId,
+                        itemId,
+                        rs.getInt("quantity"),
+                        Money.fromDecimal(rs.getBigDecimal("price")),
+                        rs.getInt("taxRate"),
+                        Money.fromDecimal(rs.getBigDecimal("itemTax"))
+                    );
+                    item.setName(rs.getString("Name"));
+                    item.setCategory(rs.getString("Category"));
+                    sale.getItems().add(item);
+                }
+                return sale;
+            }
+        }
+    }
+
+    /**
+     * Streams every sale line sold in [from, to) to the handler, in sale
+     * order. Only the partitions of the months in the range are read, and
+     * rows come through a server-side streaming cursor one at a time, so
+     * memory use does not grow with the size of the range. Returns the
+     * number of lines.
+     */
+    public int streamSaleLines(Timestamp from, Timestamp to, SaleLineHandler handler) throws SQLException {
+        String query = "SELECT s.salesId, s.saleDate, si.itemId, si.quantity, si.price, si.taxRate, si.tax, "
+                + "COALESCE(si.name, p.Name) AS Name, COALESCE(si.category, p.Category) AS Category "
+                + "FROM sales s "
+                + "JOIN saleitems si ON si.salesId = s.salesId AND si.saleDate = s.saleDate "
+                + "LEFT JOIN products p ON p.ItemId = si.itemId "
+                + "WHERE s.saleDate >= ? AND s.saleDate < ? AND si.saleDate >= ? AND si.saleDate < ? "
+                + "ORDER BY s.salesId, si.itemId";
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            // Connector/J streams row by row instead of buffering the result
+            pst.setFetchSize(Integer.MIN_VALUE);
+            pst.setTimestamp(1, from);
+            pst.setTimestamp(2, to);
+            pst.setTimestamp(3, from);
+            pst.setTimestamp(4, to);
+
+            int count = 0;
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    int salesId = rs.getInt("salesId");
+                    SaleItem item = new SaleItem(
+                        salesId,
+                        rs.getInt("itemId"),
+                        rs.getInt("quantity"),
+                        Money.fromDecimal(rs.getBigDecimal("price")),
+                        rs.getInt("taxRate"),
+                        Money.fromDecimal(rs.getBigDecimal("tax"))
+                    );
+                    item.setName(rs.getString("Name"));
+                    item.setCategory(rs.getString("Category"));
+                    handler.handle(salesId, rs.getTimestamp("saleDate"), item);
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Streams every sale made in [from, to) with its items to the consumer,
+     * in sale order, through a server-side streaming cursor. Item names and
+     * categories are those at the time of sale, as in getSaleWithItems.
+     */
+    public int streamSales(Timestamp from, Timestamp to, Consumer<Sale> consumer) throws SQLException {
+        String query = "SELECT s.salesId, s.total, s.tax, s.payment, s.balance, s.receiptVersion, s.saleDate, "
+                + "si.itemId, si.quantity, si.price, si.taxRate, si.tax AS itemTax, COALESCE(si.name, p.Name) AS Name, COALESCE(si.category, p.Category) AS Category "
+                + "FROM sales s "
+                + "LEFT JOIN saleitems si ON si.salesId = s.salesId AND si.saleDate = s.saleDate "
+                + "AND si.saleDate >= ? AND si.saleDate < ? "
+                + "LEFT JOIN products p ON p.ItemId = si.itemId "
+                + "WHERE s.saleDate >= ? AND s.saleDate < ? ORDER BY s.salesId, si.itemId";
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            pst.setFetchSize(Integer.MIN_VALUE);
+            pst.setTimestamp(1, from);
+            pst.setTimestamp(2, to);
+            pst.setTimestamp(3, from);
+            pst.setTimestamp(4, to);
+
+            int count = 0;
+            try (ResultSet rs = pst.executeQuery()) {
+                Sale sale = null;
+                while (rs.next()) {
+                    int salesId = rs.getInt("salesId");
+                    if (sale == null || sale.getSalesId() != salesId) {
+                        if (sale != null) {
+                            consumer.accept(sale);
+                            count++;
+                        }
+                        sale = mapSale(rs);
+                    }
+                    int itemId = rs.getInt("itemId");
+                    if (rs.wasNull()) {
+                        continue; // sale without items
+                    }
+                    SaleItem item = new SaleItem(
+                        salesId,
+                        itemId,
+                        rs.getInt("quantity"),
+                        Money.fromDecimal(rs.getBigDecimal("price")),
+                        rs.getInt("taxRate"),
+                        Money.fromDecimal(rs.getBigDecimal("itemTax"))
+                    );
+                    item.setName(rs.getString("Name"));
+                    item.setCategory(rs.getString("Category"));
+                    sale.getItems().add(item);
+                }
+                if (sale != null) {
+                    consumer.accept(sale);
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Returns the time of the first sale made at or after the given time,
+     * or null if there is none.
+     */
+    public Timestamp getFirstSaleDate(Timestamp from) throws SQLException {
+        String query = "SELECT MIN(saleDate) FROM sales WHERE saleDate >= ?";
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query)) {
+
+            pst.setTimestamp(1, from);
+
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next() ? rs.getTimestamp(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Deletes the sales made in [from, to) and their lines, at most
+     * chunkSize rows per statement, each statement committing on its own so
+     * no long transaction holds locks on the hot tables. Lines go first, so
+     * an interrupted delete never leaves lines without their sale. Returns
+     * the number of sales deleted.
+     */
+    public int deleteSales(Timestamp from, Timestamp to, int chunkSize) throws SQLException {
+        int deletedSales = 0;
+
+        try (Connection con = DatabaseConnector.connect()) {
+            for (String table : new String[] {"saleitems", "sales"}) {
+                try (PreparedStatement pst = con.prepareStatement(
+                        "DELETE FROM " + table + " WHERE saleDate >= ? AND saleDate < ? LIMIT ?")) {
+                    pst.setTimestamp(1, from);
+                    pst.setTimestamp(2, to);
+                    pst.setInt(3, chunkSize);
+                    int deleted;
+                    do {
+                        deleted = pst.executeUpdate();
+                        if (table.equals("sales")) {
+                            deletedSales += deleted;
+                        }
+                    } while (deleted == chunkSize);
+                }
+            }
+        }
+        return deletedSales;
+    }
+
+    /**
+     * Retrieves the sales made in [from, to), oldest first, without their
+     * items. Only the partitions of the months in the range are read.
+     */
+    public List<Sale> getSales(Timestamp from, Timestamp to) throws SQLException {
+        String query = "SELECT * FROM sales WHERE saleDate >= ? AND saleDate < ? ORDER BY saleDate, salesId";
+        List<Sale> sales = new ArrayList<>();
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query)) {
+
+            pst.setTimestamp(1, from);
+            pst.setTimestamp(2, to);
+
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    sales.add(mapSale(rs));
+                }
+            }
+        }
+        return sales;
+    }
+
+    /**
+     * Returns the months that have a sales partition, oldest first.
+     * The open-ended partition for later dates is not included.
+     */
+    public List<YearMonth> getPartitionMonths() throws SQLException {
+        String query = "SELECT PARTITION_NAME FROM information_schema.PARTITIONS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'sales' AND PARTITION_NAME <> 'pfuture' "
+                + "ORDER BY PARTITION_ORDINAL_POSITION";
+        List<YearMonth> months = new ArrayList<>();
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query);
+             ResultSet rs = pst.executeQuery()) {
+
+            while (rs.next()) {
+                months.add(YearMonth.parse(rs.getString(1).substring(1), PARTITION_MONTH));
+            }
+        }
+        return months;
+    }
+
+    /**
+     * Splits monthly partitions off the open-ended one for every month after
+     * the last partitioned month, up to and including the given month, in
+     * both sales and saleitems. Returns the months added.
+     */
+    public List<YearMonth> addPartitions(YearMonth through) throws SQLException {
+        List<YearMonth> existing = getPartitionMonths();
+        List<YearMonth> added = new ArrayList<>();
+        YearMonth month = existing.isEmpty() ? YearMonth.now() : existing.get(existing.size() - 1).plusMonths(1);
+        for (; !month.isAfter(through); month = month.plusMonths(1)) {
+            added.add(month);
+        }
+        if (added.isEmpty()) {
+            return added;
+        }
+
+        StringBuilder partitions = new StringBuilder();
+        for (YearMonth m : added) {
+            partitions.append("PARTITION ").append(partitionName(m))
+                    .append(" VALUES LESS THAN (UNIX_TIMESTAMP('").append(m.plusMonths(1).atDay(1)).append(" 00:00:00')), ");
+        }
+        partitions.append("PARTITION pfuture VALUES LESS THAN MAXVALUE");
+
+        try (Connection con = DatabaseConnector.connect();
+             Statement stmt = con.createStatement()) {
+            for (String table : new String[] {"sales", "saleitems"}) {
+                stmt.executeUpdate("ALTER TABLE " + table + " REORGANIZE PARTITION pfuture INTO (" + partitions + ")");
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Drops the partitions of every month before the given one from
+     * saleitems and sales, deleting those sales in a metadata operation
+     * rather than row by row. The daily rollups are kept. Returns the months
+     * dropped.
+     */
+    public List<YearMonth> dropPartitionsBefore(YearMonth month) throws SQLException {
+        List<String> names = new ArrayList<>();
+        List<YearMonth> dropped = new ArrayList<>();
+        for (YearMonth m : getPartitionMonths()) {
+            if (m.isBefore(month)) {
+                names.add(partitionName(m));
+                dropped.add(m);
+            }
+        }
+        if (names.isEmpty()) {
+            return dropped;
+        }
+
+        try (Connection con = DatabaseConnector.connect();
+             Statement stmt = con.createStatement()) {
+            // lines first, so a failure never leaves lines without their sale
+            for (String table : new String[] {"saleitems", "sales"}) {
+                stmt.executeUpdate("ALTER TABLE " + table + " DROP PARTITION " + String.join(", ", names));
+            }
+        }
+        return dropped;
+    }
+
+    private static String partitionName(YearMonth month) {
+        return "p" + month.format(PARTITION_MONTH);
+    }
+
+    private Sale mapSale(ResultSet rs) throws SQLException {
+        Sale sale = new Sale(
+            rs.getInt("salesId"),
+            Money.fromDecimal(rs.getBigDecimal("total")),
+            Money.fromDecimal(rs.getBigDecimal("tax")),
+            Money.fromDecimal(rs.getBigDecimal("payment")),
+            Money.fromDecimal(rs.getBigDecimal("balance"))
+        );
+        sale.setReceiptVersion(rs.getInt("receiptVersion"));
+        Timestamp saleDate = rs.getTimestamp("saleDate");
+        sale.setSaleDate(saleDate == null ? null : saleDate.toLocalDateTime());
+        return sale;
+    }
 }
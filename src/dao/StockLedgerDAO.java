@@ -0,0 +1,373 @@
+package dao;
+
+import model.StockDiscrepancy;
+import model.StockMovement;
+import utils.DatabaseConnector;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Access Object for the stock movement ledger.
+ * stock_movements is append-only: every change to products.Qty adds a
+ * signed row in the same transaction. stock_snapshots compacts it: each
+ * snapshot run stores, for every item that moved since the previous run,
+ * its stock up to a movement ID. Stock at any time is the item's last
+ * snapshot taken by then plus the movements after the run's movement ID,
+ * so only a short tail of the ledger is read.
+ *
+ * Snapshot rows of one run share takenAt, the latest movedAt they cover,
+ * and lastMovementId; every item with movements up to a run's
+ * lastMovementId is covered by that run or an earlier one.
+ *
+ * movedAt is always stamped by the database server (NOW()), never by the
+ * till, so a till with a wrong clock cannot make its movements look older
+ * or newer than they are.
+ */
+public class StockLedgerDAO {
+    private static final String INSERT_SQL =
+        "INSERT INTO stock_movements (itemId, type, quantity, reference, movedAt) VALUES (?, ?, ?, ?, NOW())";
+    private static final String ADD_SALE_SQL =
+        "INSERT INTO stock_movements (itemId, type, quantity, reference, movedAt) "
+        + "SELECT itemId, 'SALE', -SUM(quantity), salesId, NOW() FROM saleitems "
+        + "WHERE salesId = ? AND saleDate = ? GROUP BY itemId, salesId, saleDate";
+    private static final String CUTOFF_SQL =
+        "SELECT LEAST(NOW(), COALESCE((SELECT MIN(trx_started) FROM information_schema.innodb_trx "
+        + "WHERE trx_mysql_thread_id <> CONNECTION_ID()), NOW())) - INTERVAL ? SECOND";
+    private static final String LAST_RUN_SQL =
+        "SELECT COALESCE(MAX(lastMovementId), 0) FROM stock_snapshots WHERE takenAt <= ?";
+
+    /**
+     * Adds the stock movements of a sale that was just inserted on the
+     * connection, one per item, with a single statement. Runs inside the
+     * caller's transaction, together with the stock decrements.
+     */
+    void addSale(Connection conn, int salesId, Timestamp saleDate) throws SQLException {
+        try (PreparedStatement pst = conn.prepareStatement(ADD_SALE_SQL)) {
+            pst.setInt(1, salesId);
+            pst.setTimestamp(2, saleDate);
+            pst.executeUpdate();
+        }
+    }
+
+    /**
+     * Adds movements on the caller's connection and transaction, as one
+     * JDBC batch, stamped with the server's time.
+     */
+    void addMovements(Connection conn, List<StockMovement> movements) throws SQLException {
+        try (PreparedStatement pst = conn.prepareStatement(INSERT_SQL)) {
+            for (StockMovement movement : movements) {
+                pst.setInt(1, movement.getItemId());
+                pst.setString(2, movement.getType().name());
+                pst.setInt(3, movement.getQuantity());
+                pst.setInt(4, movement.getReference());
+                pst.addBatch();
+            }
+            pst.executeBatch();
+        }
+    }
+
+    /**
+     * Applies movements to products.Qty and records them, all in one
+     * transaction. Returns false, changing nothing, if any product does
+     * not exist.
+     */
+    public boolean recordMovements(List<StockMovement> movements) throws SQLException {
+        String updateStockSQL = "UPDATE products SET Qty = Qty + ? WHERE ItemId = ?";
+
+        try (Connection conn = DatabaseConnector.connect()) {
+            conn.setAutoCommit(false);
+
+            try {
+                try (PreparedStatement pst = conn.prepareStatement(updateStockSQL)) {
+                    for (StockMovement movement : movements) {
+                        pst.setInt(1, movement.getQuantity());
+                        pst.setInt(2, movement.getItemId());
+                        pst.addBatch();
+                    }
+                    for (int updated : pst.executeBatch()) {
+                        if (updated == 0) {
+                            conn.rollback();
+                            return false;
+                        }
+                    }
+                }
+                addMovements(conn, movements);
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Retrieves an item's movements in [from, to), oldest first.
+     */
+    public List<StockMovement> getMovements(int itemId, Timestamp from, Timestamp to) throws SQLException {
+        String query = "SELECT * FROM stock_movements WHERE itemId = ? AND movedAt >= ? AND movedAt < ? "
+                + "ORDER BY movementId";
+        List<StockMovement> movements = new ArrayList<>();
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query)) {
+
+            pst.setInt(1, itemId);
+            pst.setTimestamp(2, from);
+            pst.setTimestamp(3, to);
+
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    StockMovement movement = new StockMovement(
+                        rs.getInt("itemId"),
+                        StockMovement.Type.valueOf(rs.getString("type")),
+                        rs.getInt("quantity"),
+                        rs.getInt("reference")
+                    );
+                    movement.setMovementId(rs.getLong("movementId"));
+                    movement.setMovedAt(rs.getTimestamp("movedAt").toLocalDateTime());
+                    movements.add(movement);
+                }
+            }
+        }
+        return movements;
+    }
+
+    /**
+     * Returns an item's stock at the given time from the ledger.
+     */
+    public int getStockAsOf(int itemId, Timestamp at) throws SQLException {
+        String query = "SELECT COALESCE((SELECT qty FROM stock_snapshots WHERE itemId = ? AND takenAt <= ? "
+                + "ORDER BY lastMovementId DESC LIMIT 1), 0) "
+                + "+ COALESCE((SELECT SUM(quantity) FROM stock_movements "
+                + "WHERE itemId = ? AND movementId > ? AND movedAt <= ?), 0)";
+
+        try (Connection con = DatabaseConnector.connect()) {
+            long lastMovementId = getLastRun(con, at);
+            try (PreparedStatement pst = con.prepareStatement(query)) {
+                pst.setInt(1, itemId);
+                pst.setTimestamp(2, at);
+                pst.setInt(3, itemId);
+                pst.setLong(4, lastMovementId);
+                pst.setTimestamp(5, at);
+
+                try (ResultSet rs = pst.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the stock of every item with movements at the given time,
+     * from the ledger, keyed by item ID.
+     */
+    public Map<Integer, Integer> getStockAsOf(Timestamp at) throws SQLException {
+        String query = "SELECT itemId, SUM(qty) FROM ("
+                + "SELECT s.itemId, s.qty FROM stock_snapshots s "
+                + "JOIN (SELECT itemId, MAX(lastMovementId) AS lastMovementId FROM stock_snapshots "
+                + "WHERE takenAt <= ? GROUP BY itemId) l "
+                + "ON l.itemId = s.itemId AND l.lastMovementId = s.lastMovementId "
+                + "UNION ALL "
+                + "SELECT itemId, quantity FROM stock_movements WHERE movementId > ? AND movedAt <= ?"
+                + ") t GROUP BY itemId";
+        Map<Integer, Integer> stock = new HashMap<>();
+
+        try (Connection con = DatabaseConnector.connect()) {
+            long lastMovementId = getLastRun(con, at);
+            try (PreparedStatement pst = con.prepareStatement(query)) {
+                pst.setTimestamp(1, at);
+                pst.setLong(2, lastMovementId);
+                pst.setTimestamp(3, at);
+
+                try (ResultSet rs = pst.executeQuery()) {
+                    while (rs.next()) {
+                        stock.put(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+            }
+        }
+        return stock;
+    }
+
+    /**
+     * Returns the lowest and highest item ID found in products or in the
+     * ledger; null if both are empty.
+     */
+    public int[] getItemIdRange() throws SQLException {
+        String query = "SELECT MIN(id), MAX(id) FROM ("
+                + "SELECT MIN(ItemId) AS id FROM products UNION ALL SELECT MAX(ItemId) FROM products "
+                + "UNION ALL SELECT MIN(itemId) FROM stock_movements UNION ALL SELECT MAX(itemId) FROM stock_movements"
+                + ") t";
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query);
+             ResultSet rs = pst.executeQuery()) {
+
+            if (rs.next() && rs.getObject(1) != null) {
+                return new int[] {rs.getInt(1), rs.getInt(2)};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares products.Qty with the stock implied by the ledger for the
+     * item IDs in [fromId, toId) and returns the items that disagree.
+     * Both sides are read by one statement, i.e. one consistent InnoDB read
+     * view, and a sale changes both in one transaction, so tills can keep
+     * selling while this runs without causing false discrepancies.
+     */
+    public List<StockDiscrepancy> findDiscrepancies(int fromId, int toId) throws SQLException {
+        String ledger = "SELECT itemId, SUM(qty) AS qty FROM ("
+                + "SELECT s.itemId, s.qty FROM stock_snapshots s "
+                + "JOIN (SELECT itemId, MAX(lastMovementId) AS lastMovementId FROM stock_snapshots "
+                + "WHERE itemId >= ? AND itemId < ? GROUP BY itemId) l "
+                + "ON l.itemId = s.itemId AND l.lastMovementId = s.lastMovementId "
+                + "UNION ALL "
+                + "SELECT itemId, quantity FROM stock_movements WHERE itemId >= ? AND itemId < ? "
+                + "AND movementId > (SELECT COALESCE(MAX(lastMovementId), 0) FROM stock_snapshots)"
+                + ") t GROUP BY itemId";
+        String query = "WITH ledger AS (" + ledger + ") "
+                + "SELECT p.ItemId, p.Name, p.Qty, l.qty FROM products p LEFT JOIN ledger l ON l.itemId = p.ItemId "
+                + "WHERE p.ItemId >= ? AND p.ItemId < ? AND (l.qty IS NULL AND p.Qty <> 0 OR l.qty <> p.Qty) "
+                + "UNION ALL "
+                + "SELECT l.itemId, NULL, NULL, l.qty FROM ledger l LEFT JOIN products p ON p.ItemId = l.itemId "
+                + "WHERE p.ItemId IS NULL AND l.qty <> 0";
+        List<StockDiscrepancy> discrepancies = new ArrayList<>();
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query)) {
+
+            pst.setInt(1, fromId);
+            pst.setInt(2, toId);
+            pst.setInt(3, fromId);
+            pst.setInt(4, toId);
+            pst.setInt(5, fromId);
+            pst.setInt(6, toId);
+
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    int recorded = rs.getInt(3);
+                    boolean isProduct = !rs.wasNull();
+                    int ledgerQty = rs.getInt(4);
+                    boolean inLedger = !rs.wasNull();
+                    StockDiscrepancy.Kind kind = !isProduct ? StockDiscrepancy.Kind.NO_PRODUCT
+                            : inLedger ? StockDiscrepancy.Kind.MISMATCH : StockDiscrepancy.Kind.NOT_IN_LEDGER;
+                    discrepancies.add(new StockDiscrepancy(rs.getInt(1), rs.getString(2), recorded, ledgerQty, kind));
+                }
+            }
+        }
+        return discrepancies;
+    }
+
+    /**
+     * Returns the last movement ID covered by the snapshot runs taken by
+     * the given time; 0 if there are none.
+     */
+    private long getLastRun(Connection con, Timestamp at) throws SQLException {
+        try (PreparedStatement pst = con.prepareStatement(LAST_RUN_SQL)) {
+            pst.setTimestamp(1, at);
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot run: every item that moved since the previous run
+     * gets its stock up to the run's last movement ID. Returns the number
+     * of items snapshotted.
+     *
+     * A movement ID is handed out when the row is inserted, not when it
+     * commits, so a committed movement can have a higher ID than one still
+     * uncommitted; a run must never end past such a gap, or the gap would
+     * be left out of every later snapshot. The run therefore only covers
+     * movements stamped before the start of the oldest transaction still
+     * open on the server (from information_schema.innodb_trx, which needs
+     * the PROCESS privilege), and before now, less settleSeconds: every
+     * uncommitted movement was stamped after its transaction started, and
+     * the margin covers the time between a statement taking NOW() and
+     * inserting its row. Open transactions only hold a run back; they are
+     * snapshotted by a later run once they have ended.
+     */
+    public int takeSnapshot(int settleSeconds) throws SQLException {
+        String rangeQuery = "SELECT MAX(movementId), MAX(movedAt) FROM stock_movements "
+                + "WHERE movementId > ? AND movementId <= "
+                + "(SELECT COALESCE(MAX(movementId), 0) FROM stock_movements WHERE movedAt < ?)";
+        String insertSQL = "INSERT INTO stock_snapshots (itemId, takenAt, qty, lastMovementId) "
+                + "SELECT m.itemId, ?, COALESCE((SELECT s.qty FROM stock_snapshots s WHERE s.itemId = m.itemId "
+                + "ORDER BY s.lastMovementId DESC LIMIT 1), 0) + SUM(m.quantity), ? "
+                + "FROM stock_movements m WHERE m.movementId > ? AND m.movementId <= ? GROUP BY m.itemId";
+
+        try (Connection conn = DatabaseConnector.connect()) {
+            conn.setAutoCommit(false);
+
+            try {
+                long previousId;
+                Timestamp previousTakenAt;
+                try (PreparedStatement pst = conn.prepareStatement(
+                        "SELECT COALESCE(MAX(lastMovementId), 0), MAX(takenAt) FROM stock_snapshots");
+                     ResultSet rs = pst.executeQuery()) {
+                    rs.next();
+                    previousId = rs.getLong(1);
+                    previousTakenAt = rs.getTimestamp(2);
+                }
+
+                Timestamp settledBefore;
+                try (PreparedStatement pst = conn.prepareStatement(CUTOFF_SQL)) {
+                    pst.setInt(1, settleSeconds);
+                    try (ResultSet rs = pst.executeQuery()) {
+                        rs.next();
+                        settledBefore = rs.getTimestamp(1);
+                    }
+                }
+
+                long lastId;
+                Timestamp takenAt;
+                try (PreparedStatement pst = conn.prepareStatement(rangeQuery)) {
+                    pst.setLong(1, previousId);
+                    pst.setTimestamp(2, settledBefore);
+                    try (ResultSet rs = pst.executeQuery()) {
+                        rs.next();
+                        lastId = rs.getLong(1);
+                        takenAt = rs.getTimestamp(2);
+                    }
+                }
+                if (takenAt == null) {
+                    conn.commit();
+                    return 0;
+                }
+                if (previousTakenAt != null && previousTakenAt.after(takenAt)) {
+                    takenAt = previousTakenAt; // keep runs in takenAt order
+                }
+
+                int items;
+                try (PreparedStatement pst = conn.prepareStatement(insertSQL)) {
+                    pst.setTimestamp(1, takenAt);
+                    pst.setLong(2, lastId);
+                    pst.setLong(3, previousId);
+                    pst.setLong(4, lastId);
+                    items = pst.executeUpdate();
+                }
+                conn.commit();
+                return items;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+}
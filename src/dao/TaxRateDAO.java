@@ -0,0 +1,62 @@
+package dao;
+
+import model.TaxRate;
+import utils.DatabaseConnector;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Access Object for TaxRate entity.
+ * Handles all database operations related to category tax rates.
+ */
+public class TaxRateDAO {
+
+    /**
+     * Retrieves all category tax rates. Rates are stored as percentages and
+     * returned in basis points.
+     */
+    public List<TaxRate> getAllTaxRates() throws SQLException {
+        List<TaxRate> rates = new ArrayList<>();
+        String query = "SELECT * FROM taxrates";
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query);
+             ResultSet rs = pst.executeQuery()) {
+
+            while (rs.next()) {
+                BigDecimal percent = rs.getBigDecimal("rate");
+                rates.add(new TaxRate(
+                    rs.getString("category"),
+                    percent.movePointRight(2).intValue()
+                ));
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * Returns a cheap fingerprint of the tax table (row count and last
+     * update time) used to detect changes without reloading every row.
+     */
+    public String getTaxRatesVersion() throws SQLException {
+        String query = "SELECT COUNT(*), MAX(updated) FROM taxrates";
+
+        try (Connection con = DatabaseConnector.connect();
+             PreparedStatement pst = con.prepareStatement(query);
+             ResultSet rs = pst.executeQuery()) {
+
+            if (rs.next()) {
+                Timestamp updated = rs.getTimestamp(2);
+                return rs.getInt(1) + "@" + (updated == null ? 0 : updated.getTime());
+            }
+        }
+        return "";
+    }
+}
@@ -1,11 +1,39 @@
 package main;
 
 import controller.LoginController;
+import services.ReplenishmentService;
+import services.SaleService;
+import services.SalesArchiveService;
+import services.StockLedgerService;
+import services.StockReconciliationService;
 import View.LoginView;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class Main {
+    private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
 
     public static void main(String[] args) {
+        //add next months' sales partitions and start the nightly jobs in the background
+        Thread partitions = new Thread(() -> {
+            try {
+                new SaleService().maintainPartitions();
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Could not add sales partitions", e);
+            }
+            try {
+                SalesArchiveService.getInstance().scheduleIfEnabled();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not open the sales archive", e);
+            }
+            new ReplenishmentService().scheduleIfEnabled();
+            new StockLedgerService().scheduleIfEnabled();
+            new StockReconciliationService().scheduleIfEnabled();
+        }, "partition-maintenance");
+        partitions.setDaemon(true);
+        partitions.start();
         
         LoginView login = new LoginView();
         login.setVisible(true);
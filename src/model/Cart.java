@@ -0,0 +1,227 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import utils.Money;
+
+/**
+ * Domain model representing the basket being rung up at a till.
+ * Lines are indexed by item ID and the running totals are kept in cents,
+ * so add, remove and quantity changes never rescan the basket.
+ */
+public class Cart {
+
+    /**
+     * Prices a single line. Called only for the line that changed, so the
+     * cart is re-priced incrementally rather than as a whole.
+     */
+    public interface Pricer {
+        /**
+         * Returns the discount in cents for the line at its current quantity.
+         */
+        long discountFor(CartLine line);
+    }
+
+    /**
+     * Resolves the tax rate of a product category in basis points.
+     * Called once per new line; implementations should be a plain lookup.
+     */
+    public interface TaxPolicy {
+        int rateFor(String category);
+    }
+
+    private final List<CartLine> lines = new ArrayList<>();
+    private final Map<Integer, Integer> indexByItemId = new HashMap<>();
+    private long subtotal;
+    private long discount;
+    private long tax;
+    private Pricer pricer;
+    private TaxPolicy taxPolicy;
+
+    /**
+     * Sets the pricer used for discounts and re-prices the current lines.
+     */
+    public void setPricer(Pricer pricer) {
+        this.pricer = pricer;
+        for (CartLine line : lines) {
+            reprice(line);
+        }
+    }
+
+    /**
+     * Sets the tax policy and re-resolves the tax rate of the current lines.
+     */
+    public void setTaxPolicy(TaxPolicy taxPolicy) {
+        this.taxPolicy = taxPolicy;
+        for (CartLine line : lines) {
+            line.setTaxRate(rateFor(line.getCategory()));
+            reprice(line);
+        }
+    }
+
+    /**
+     * Adds an item to the cart, merging the quantity into an existing line
+     * for the same item. Returns the affected line.
+     */
+    public CartLine add(int itemId, String name, String category, int quantity, long unitPrice) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        if (unitPrice < 0) {
+            throw new IllegalArgumentException("Price cannot be negative");
+        }
+
+        Integer index = indexByItemId.get(itemId);
+        if (index != null) {
+            CartLine line = lines.get(index);
+            line.setQuantity(line.getQuantity() + quantity);
+            subtotal += line.getUnitPrice() * quantity;
+            reprice(line);
+            return line;
+        }
+
+        CartLine line = new CartLine(itemId, name, category, quantity, unitPrice);
+        line.setTaxRate(rateFor(category));
+        indexByItemId.put(itemId, lines.size());
+        lines.add(line);
+        subtotal += line.getLineTotal();
+        reprice(line);
+        return line;
+    }
+
+    /**
+     * Sets the quantity of an existing line. A quantity of zero removes it.
+     */
+    public CartLine updateQuantity(int itemId, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+
+        Integer index = indexByItemId.get(itemId);
+        if (index == null) {
+            return null;
+        }
+        if (quantity == 0) {
+            return removeAt(index);
+        }
+
+        CartLine line = lines.get(index);
+        subtotal += line.getUnitPrice() * (quantity - line.getQuantity());
+        line.setQuantity(quantity);
+        reprice(line);
+        return line;
+    }
+
+    /**
+     * Removes the line for the given item. Returns the removed line, or null.
+     */
+    public CartLine remove(int itemId) {
+        Integer index = indexByItemId.get(itemId);
+        return index == null ? null : removeAt(index);
+    }
+
+    /**
+     * Removes the line at the given position. The lines after it move up one
+     * place, so the invoice keeps the order items were rung up in; a basket
+     * is small enough that re-indexing them is cheap.
+     */
+    public CartLine removeAt(int index) {
+        CartLine removed = lines.remove(index);
+        indexByItemId.remove(removed.getItemId());
+        for (int i = index; i < lines.size(); i++) {
+            indexByItemId.put(lines.get(i).getItemId(), i);
+        }
+        subtotal -= removed.getLineTotal();
+        discount -= removed.getDiscount();
+        tax -= removed.getTax();
+        return removed;
+    }
+
+    public CartLine get(int itemId) {
+        Integer index = indexByItemId.get(itemId);
+        return index == null ? null : lines.get(index);
+    }
+
+    public CartLine getLine(int index) {
+        return lines.get(index);
+    }
+
+    public boolean contains(int itemId) {
+        return indexByItemId.containsKey(itemId);
+    }
+
+    /**
+     * Returns the quantity of the item already in the cart, or zero.
+     */
+    public int quantityOf(int itemId) {
+        CartLine line = get(itemId);
+        return line == null ? 0 : line.getQuantity();
+    }
+
+    public List<CartLine> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    public int size() {
+        return lines.size();
+    }
+
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    /**
+     * Returns the cart total before discounts, in cents.
+     */
+    public long getSubtotal() {
+        return subtotal;
+    }
+
+    /**
+     * Returns the total promotion discount, in cents.
+     */
+    public long getDiscount() {
+        return discount;
+    }
+
+    /**
+     * Returns the total tax charged, in cents.
+     */
+    public long getTax() {
+        return tax;
+    }
+
+    /**
+     * Returns the amount due (after discounts, including tax) in cents.
+     */
+    public long getTotal() {
+        return subtotal - discount + tax;
+    }
+
+    public void clear() {
+        lines.clear();
+        indexByItemId.clear();
+        subtotal = 0;
+        discount = 0;
+        tax = 0;
+    }
+
+    private int rateFor(String category) {
+        return taxPolicy == null ? 0 : taxPolicy.rateFor(category);
+    }
+
+    private void reprice(CartLine line) {
+        long lineDiscount = pricer == null ? 0 : pricer.discountFor(line);
+        lineDiscount = Math.max(0, Math.min(lineDiscount, line.getLineTotal()));
+
+        discount += lineDiscount - line.getDiscount();
+        line.setDiscount(lineDiscount);
+
+        long lineTax = Money.applyRate(line.getNetTotal(), line.getTaxRate());
+        tax += lineTax - line.getTax();
+        line.setTax(lineTax);
+    }
+}
@@ -0,0 +1,92 @@
+package model;
+
+/**
+ * Domain model representing one line of the basket being rung up.
+ * Prices are held in cents so line totals add up exactly.
+ */
+public class CartLine {
+    private final int itemId;
+    private final String name;
+    private final String category;
+    private int quantity;
+    private final long unitPrice;
+    private long discount;
+    private int taxRate;
+    private long tax;
+
+    public CartLine(int itemId, String name, String category, int quantity, long unitPrice) {
+        this.itemId = itemId;
+        this.name = name;
+        this.category = category;
+        this.quantity = quantity;
+        this.unitPrice = unitPrice;
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public long getUnitPrice() {
+        return unitPrice;
+    }
+
+    public long getLineTotal() {
+        return unitPrice * quantity;
+    }
+
+    /**
+     * Returns the promotion discount applied to this line, in cents.
+     */
+    public long getDiscount() {
+        return discount;
+    }
+
+    void setDiscount(long discount) {
+        this.discount = discount;
+    }
+
+    /**
+     * Returns the tax rate of this line in basis points.
+     */
+    public int getTaxRate() {
+        return taxRate;
+    }
+
+    void setTaxRate(int taxRate) {
+        this.taxRate = taxRate;
+    }
+
+    /**
+     * Returns the tax charged on the discounted line total, in cents.
+     */
+    public long getTax() {
+        return tax;
+    }
+
+    void setTax(long tax) {
+        this.tax = tax;
+    }
+
+    /**
+     * Returns the line total after discount, in cents.
+     */
+    public long getNetTotal() {
+        return getLineTotal() - discount;
+    }
+}
@@ -9,12 +9,12 @@ public class Product {
     private String name;
     private String category;
     private int quantity;
-    private double price;
+    private long price;
 
     public Product() {
     }
 
-    public Product(int itemId, String name, String category, int quantity, double price) {
+    public Product(int itemId, String name, String category, int quantity, long price) {
         this.itemId = itemId;
         this.name = name;
         this.category = category;
@@ -54,11 +54,14 @@ public class Product {
         this.quantity = quantity;
     }
 
-    public double getPrice() {
+    /**
+     * Returns the unit price in cents.
+     */
+    public long getPrice() {
         return price;
     }
 
-    public void setPrice(double price) {
+    public void setPrice(long price) {
         this.price = price;
     }
 }
@@ -0,0 +1,117 @@
+package model;
+
+/**
+ * Domain model representing a promotion rule.
+ * Pure POJO (Plain Old Java Object) with no business logic.
+ * A rule targets either a single item (itemId) or a whole category.
+ */
+public class Promotion {
+
+    /**
+     * Supported promotion kinds.
+     * PERCENT: percentOff of the line total.
+     * MULTI_BUY: buy buyQuantity, pay for payQuantity.
+     * PRICE_OVERRIDE: overridePrice (cents) replaces the unit price.
+     */
+    public enum Type {
+        PERCENT, MULTI_BUY, PRICE_OVERRIDE
+    }
+
+    private int promotionId;
+    private String name;
+    private Type type;
+    private int itemId;
+    private String category;
+    private int percentOff;
+    private int buyQuantity;
+    private int payQuantity;
+    private long overridePrice;
+
+    public Promotion() {
+    }
+
+    public Promotion(int promotionId, String name, Type type, int itemId, String category,
+                     int percentOff, int buyQuantity, int payQuantity, long overridePrice) {
+        this.promotionId = promotionId;
+        this.name = name;
+        this.type = type;
+        this.itemId = itemId;
+        this.category = category;
+        this.percentOff = percentOff;
+        this.buyQuantity = buyQuantity;
+        this.payQuantity = payQuantity;
+        this.overridePrice = overridePrice;
+    }
+
+    public int getPromotionId() {
+        return promotionId;
+    }
+
+    public void setPromotionId(int promotionId) {
+        this.promotionId = promotionId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    public void setItemId(int itemId) {
+        this.itemId = itemId;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public int getPercentOff() {
+        return percentOff;
+    }
+
+    public void setPercentOff(int percentOff) {
+        this.percentOff = percentOff;
+    }
+
+    public int getBuyQuantity() {
+        return buyQuantity;
+    }
+
+    public void setBuyQuantity(int buyQuantity) {
+        this.buyQuantity = buyQuantity;
+    }
+
+    public int getPayQuantity() {
+        return payQuantity;
+    }
+
+    public void setPayQuantity(int payQuantity) {
+        this.payQuantity = payQuantity;
+    }
+
+    public long getOverridePrice() {
+        return overridePrice;
+    }
+
+    public void setOverridePrice(long overridePrice) {
+        this.overridePrice = overridePrice;
+    }
+}
@@ -0,0 +1,81 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * Domain model representing the replenishment suggestion for a product.
+ * Pure POJO (Plain Old Java Object) with no business logic.
+ * Velocity is the forecast units sold per day; stock at or below the
+ * reorder point should be topped up to the order-up-to level.
+ */
+public class ReorderSuggestion {
+    private int itemId;
+    private double velocity;
+    private int reorderPoint;
+    private int orderUpTo;
+    private int suggestedQty;
+    private LocalDate asOf;
+
+    public ReorderSuggestion() {
+    }
+
+    public ReorderSuggestion(int itemId, double velocity, int reorderPoint, int orderUpTo, int suggestedQty, LocalDate asOf) {
+        this.itemId = itemId;
+        this.velocity = velocity;
+        this.reorderPoint = reorderPoint;
+        this.orderUpTo = orderUpTo;
+        this.suggestedQty = suggestedQty;
+        this.asOf = asOf;
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    public void setItemId(int itemId) {
+        this.itemId = itemId;
+    }
+
+    public double getVelocity() {
+        return velocity;
+    }
+
+    public void setVelocity(double velocity) {
+        this.velocity = velocity;
+    }
+
+    public int getReorderPoint() {
+        return reorderPoint;
+    }
+
+    public void setReorderPoint(int reorderPoint) {
+        this.reorderPoint = reorderPoint;
+    }
+
+    public int getOrderUpTo() {
+        return orderUpTo;
+    }
+
+    public void setOrderUpTo(int orderUpTo) {
+        this.orderUpTo = orderUpTo;
+    }
+
+    public int getSuggestedQty() {
+        return suggestedQty;
+    }
+
+    public void setSuggestedQty(int suggestedQty) {
+        this.suggestedQty = suggestedQty;
+    }
+
+    /**
+     * Returns the last day of sales the suggestion is based on.
+     */
+    public LocalDate getAsOf() {
+        return asOf;
+    }
+
+    public void setAsOf(LocalDate asOf) {
+        this.asOf = asOf;
+    }
+}
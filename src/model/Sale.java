@@ -1,25 +1,39 @@
 package model;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Domain model representing a Sale transaction.
  * Pure POJO (Plain Old Java Object) with no business logic.
+ * Amounts are held in cents.
  */
 public class Sale {
     private int salesId;
-    private double total;
-    private double payment;
-    private double balance;
+    private long total;
+    private long tax;
+    private long payment;
+    private long balance;
+    private int receiptVersion;
+    private LocalDateTime saleDate;
+    private List<SaleItem> items = new ArrayList<>();
 
     public Sale() {
     }
 
-    public Sale(int salesId, double total, double payment, double balance) {
+    public Sale(int salesId, long total, long payment, long balance) {
         this.salesId = salesId;
         this.total = total;
         this.payment = payment;
         this.balance = balance;
     }
 
+    public Sale(int salesId, long total, long tax, long payment, long balance) {
+        this(salesId, total, payment, balance);
+        this.tax = tax;
+    }
+
     public int getSalesId() {
         return salesId;
     }
@@ -28,27 +42,59 @@ public class Sale {
         this.salesId = salesId;
     }
 
-    public double getTotal() {
+    public long getTotal() {
         return total;
     }
 
-    public void setTotal(double total) {
+    public void setTotal(long total) {
         this.total = total;
     }
 
-    public double getPayment() {
+    public long getTax() {
+        return tax;
+    }
+
+    public void setTax(long tax) {
+        this.tax = tax;
+    }
+
+    public long getPayment() {
         return payment;
     }
 
-    public void setPayment(double payment) {
+    public void setPayment(long payment) {
         this.payment = payment;
     }
 
-    public double getBalance() {
+    public long getBalance() {
         return balance;
     }
 
-    public void setBalance(double balance) {
+    public void setBalance(long balance) {
         this.balance = balance;
     }
+
+    public int getReceiptVersion() {
+        return receiptVersion;
+    }
+
+    public void setReceiptVersion(int receiptVersion) {
+        this.receiptVersion = receiptVersion;
+    }
+
+    public LocalDateTime getSaleDate() {
+        return saleDate;
+    }
+
+    public void setSaleDate(LocalDateTime saleDate) {
+        this.saleDate = saleDate;
+    }
+
+    public List<SaleItem> getItems() {
+        return items;
+    }
+
+    public void setItems(List<SaleItem> items) {
+        this.items = items;
+    }
 }
@@ -6,20 +6,30 @@ package model;
  */
 public class SaleItem {
     private int salesId;
-    private String itemId;
-    private String quantity;
-    private String price;
+    private int itemId;
+    private int quantity;
+    private long price;
+    private int taxRate;
+    private long tax;
+    private String name;
+    private String category;
 
     public SaleItem() {
     }
 
-    public SaleItem(int salesId, String itemId, String quantity, String price) {
+    public SaleItem(int salesId, int itemId, int quantity, long price) {
         this.salesId = salesId;
         this.itemId = itemId;
         this.quantity = quantity;
         this.price = price;
     }
 
+    public SaleItem(int salesId, int itemId, int quantity, long price, int taxRate, long tax) {
+        this(salesId, itemId, quantity, price);
+        this.taxRate = taxRate;
+        this.tax = tax;
+    }
+
     public int getSalesId() {
         return salesId;
     }
@@ -28,27 +38,74 @@ public class SaleItem {
         this.salesId = salesId;
     }
 
-    public String getItemId() {
+    public int getItemId() {
         return itemId;
     }
 
-    public void setItemId(String itemId) {
+    public void setItemId(int itemId) {
         this.itemId = itemId;
     }
 
-    public String getQuantity() {
+    public int getQuantity() {
         return quantity;
     }
 
-    public void setQuantity(String quantity) {
+    public void setQuantity(int quantity) {
         this.quantity = quantity;
     }
 
-    public String getPrice() {
+    /**
+     * Returns the line total in cents.
+     */
+    public long getPrice() {
         return price;
     }
 
-    public void setPrice(String price) {
+    public void setPrice(long price) {
         this.price = price;
     }
+
+    /**
+     * Product name at the time of sale, carried for receipts.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Product category at the time of sale, carried for receipts.
+     */
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    /**
+     * Returns the tax rate of the line in basis points.
+     */
+    public int getTaxRate() {
+        return taxRate;
+    }
+
+    public void setTaxRate(int taxRate) {
+        this.taxRate = taxRate;
+    }
+
+    /**
+     * Returns the tax charged on the line in cents.
+     */
+    public long getTax() {
+        return tax;
+    }
+
+    public void setTax(long tax) {
+        this.tax = tax;
+    }
 }
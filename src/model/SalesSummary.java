@@ -0,0 +1,84 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * Domain model representing rolled-up sales: one day, one item or one
+ * category, depending on the report.
+ * Pure POJO (Plain Old Java Object) with no business logic.
+ * Amounts are held in cents; revenue is after discounts and before tax.
+ */
+public class SalesSummary {
+    private LocalDate day;
+    private String label;
+    private int transactions;
+    private long units;
+    private long revenue;
+    private long tax;
+
+    public SalesSummary() {
+    }
+
+    public SalesSummary(LocalDate day, String label, int transactions, long units, long revenue, long tax) {
+        this.day = day;
+        this.label = label;
+        this.transactions = transactions;
+        this.units = units;
+        this.revenue = revenue;
+        this.tax = tax;
+    }
+
+    /**
+     * Returns the day, or null if the summary spans several days.
+     */
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public void setDay(LocalDate day) {
+        this.day = day;
+    }
+
+    /**
+     * Returns the item or category summarised, or null for all sales.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    public int getTransactions() {
+        return transactions;
+    }
+
+    public void setTransactions(int transactions) {
+        this.transactions = transactions;
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    public void setUnits(long units) {
+        this.units = units;
+    }
+
+    public long getRevenue() {
+        return revenue;
+    }
+
+    public void setRevenue(long revenue) {
+        this.revenue = revenue;
+    }
+
+    public long getTax() {
+        return tax;
+    }
+
+    public void setTax(long tax) {
+        this.tax = tax;
+    }
+}
@@ -0,0 +1,84 @@
+package model;
+
+/**
+ * Domain model representing a product whose recorded quantity does not
+ * match the stock implied by the movement ledger.
+ * Pure POJO (Plain Old Java Object) with no business logic.
+ */
+public class StockDiscrepancy {
+
+    /**
+     * What kind of discrepancy was found.
+     */
+    public enum Kind {
+        /** products.Qty differs from the ledger. */
+        MISMATCH,
+        /** The product has stock but no ledger entries, e.g. no opening balance. */
+        NOT_IN_LEDGER,
+        /** The ledger holds stock for an item that is not a product. */
+        NO_PRODUCT
+    }
+
+    private int itemId;
+    private String name;
+    private int recordedQty;
+    private int ledgerQty;
+    private Kind kind;
+
+    public StockDiscrepancy() {
+    }
+
+    public StockDiscrepancy(int itemId, String name, int recordedQty, int ledgerQty, Kind kind) {
+        this.itemId = itemId;
+        this.name = name;
+        this.recordedQty = recordedQty;
+        this.ledgerQty = ledgerQty;
+        this.kind = kind;
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    public void setItemId(int itemId) {
+        this.itemId = itemId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns products.Qty; 0 if there is no such product.
+     */
+    public int getRecordedQty() {
+        return recordedQty;
+    }
+
+    public void setRecordedQty(int recordedQty) {
+        this.recordedQty = recordedQty;
+    }
+
+    /**
+     * Returns the stock implied by the ledger; 0 if it has no entries.
+     */
+    public int getLedgerQty() {
+        return ledgerQty;
+    }
+
+    public void setLedgerQty(int ledgerQty) {
+        this.ledgerQty = ledgerQty;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public void setKind(Kind kind) {
+        this.kind = kind;
+    }
+}
@@ -0,0 +1,84 @@
+package model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Domain model representing one entry of the stock movement ledger.
+ * Pure POJO (Plain Old Java Object) with no business logic.
+ * Quantity is signed: positive for stock coming in, negative for stock
+ * going out. Reference is the sale ID for sales and returns, 0 otherwise.
+ */
+public class StockMovement {
+
+    /**
+     * Why the stock changed.
+     */
+    public enum Type {
+        SALE, RECEIPT, ADJUSTMENT, RETURN
+    }
+
+    private long movementId;
+    private int itemId;
+    private Type type;
+    private int quantity;
+    private int reference;
+    private LocalDateTime movedAt;
+
+    public StockMovement() {
+    }
+
+    public StockMovement(int itemId, Type type, int quantity, int reference) {
+        this.itemId = itemId;
+        this.type = type;
+        this.quantity = quantity;
+        this.reference = reference;
+    }
+
+    public long getMovementId() {
+        return movementId;
+    }
+
+    public void setMovementId(long movementId) {
+        this.movementId = movementId;
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    public void setItemId(int itemId) {
+        this.itemId = itemId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public int getReference() {
+        return reference;
+    }
+
+    public void setReference(int reference) {
+        this.reference = reference;
+    }
+
+    public LocalDateTime getMovedAt() {
+        return movedAt;
+    }
+
+    public void setMovedAt(LocalDateTime movedAt) {
+        this.movedAt = movedAt;
+    }
+}
@@ -0,0 +1,35 @@
+package model;
+
+/**
+ * Domain model representing the sales tax rate of a product category.
+ * Pure POJO (Plain Old Java Object) with no business logic.
+ * Rates are held in basis points (1/100 of a percent), e.g. 825 = 8.25%.
+ */
+public class TaxRate {
+    private String category;
+    private int rate;
+
+    public TaxRate() {
+    }
+
+    public TaxRate(String category, int rate) {
+        this.category = category;
+        this.rate = rate;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public void setRate(int rate) {
+        this.rate = rate;
+    }
+}
@@ -0,0 +1,58 @@
+package services;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.io.image.ImageDataFactory;
+
+/**
+ * Service class for rendering barcodes straight into iText image data.
+ * The ZXing bit matrix is copied into a grayscale raster in memory,
+ * with no image file in between. Nothing is cached: every receipt carries
+ * its own sale's code, so a payload is rarely rendered twice.
+ */
+public class BarcodeService {
+
+    private BarcodeService() {
+    }
+
+    /**
+     * Returns a CODE_128 barcode of the given pixel size as iText image data.
+     */
+    public static ImageData code128(String data, int width, int height) throws WriterException {
+        Raster raster = Raster.of(new MultiFormatWriter().encode(data, BarcodeFormat.CODE_128, width, height));
+        return ImageDataFactory.create(raster.width, raster.height, 1, 8, raster.data, null);
+    }
+
+    /**
+     * An 8-bit grayscale raster, one byte per pixel (0 = black, 255 = white).
+     * Never modified once built.
+     */
+    private static final class Raster {
+        private final int width;
+        private final int height;
+        private final byte[] data;
+
+        private Raster(int width, int height, byte[] data) {
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+
+        private static Raster of(BitMatrix bitMatrix) {
+            int width = bitMatrix.getWidth();
+            int height = bitMatrix.getHeight();
+            byte[] data = new byte[width * height];
+
+            for (int y = 0; y < height; y++) {
+                int rowStart = y * width;
+                for (int x = 0; x < width; x++) {
+                    data[rowStart + x] = bitMatrix.get(x, y) ? 0 : (byte) 0xFF;
+                }
+            }
+            return new Raster(width, height, data);
+        }
+    }
+}
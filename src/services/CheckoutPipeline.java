@@ -0,0 +1,266 @@
+package services;
+
+import dao.SaleDAO;
+import model.Cart;
+import model.CartLine;
+import model.Sale;
+import model.SaleItem;
+import utils.Money;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a checkout as a pipeline of stages off the event dispatch thread.
+ *
+ * VALIDATE and PRICE run on the caller's thread: the cart is checked and
+ * the payment must cover its total, then it is frozen into a sale. PERSIST saves the sale, its lines and
+ * the stock decrements in one transaction. As soon as the sale ID is
+ * generated, the receipt is rendered speculatively (RECEIPT) on a separate
+ * thread while the transaction is still running; it is handed to the
+ * printer only once the sale has committed, and thrown away otherwise. After the commit, STOCK settles the
+ * till's stock holds while the receipt prints. A sale that would take a
+ * product below zero, because another machine sold the last units first,
+ * fails PERSIST as a validation error. NOTIFY is the time until the
+ * till has been told. Every stage is timed.
+ */
+public class CheckoutPipeline {
+    private static final Logger LOGGER = Logger.getLogger(CheckoutPipeline.class.getName());
+
+    /**
+     * The stages of a checkout, in order.
+     */
+    public enum Stage {
+        VALIDATE, PRICE, PERSIST, STOCK, RECEIPT, NOTIFY
+    }
+
+    private static final ExecutorService CHECKOUT = boundedPool("checkout", 2, 16);
+    private static final ExecutorService RENDER = boundedPool("receipt-render", 2, 32);
+
+    private final SaleService saleService;
+    private final StockReservationService reservationService;
+
+    public CheckoutPipeline(SaleService saleService, StockReservationService reservationService) {
+        this.saleService = saleService;
+        this.reservationService = reservationService;
+    }
+
+    private static ExecutorService boundedPool(String name, int threads, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Starts checking out the cart and returns at once. The cart is read only
+     * on the calling thread. The future completes once the sale has committed
+     * and stock is settled; the receipt follows on Checkout.getReceipt().
+     * Validation and database errors complete the future exceptionally.
+     * Stock holds are settled for the given owner.
+     */
+    public CompletableFuture<Checkout> checkout(Cart cart, long payment, Object owner) {
+        Checkout checkout = new Checkout();
+        try {
+            // VALIDATE
+            long start = System.nanoTime();
+            if (cart.isEmpty()) {
+                throw new IllegalArgumentException("Sale must have at least one item");
+            }
+            if (payment < 0) {
+                throw new IllegalArgumentException("Payment cannot be negative");
+            }
+            if (payment < cart.getTotal()) {
+                throw new IllegalArgumentException("Payment cannot be less than the total of " + Money.format(cart.getTotal()));
+            }
+            start = checkout.record(Stage.VALIDATE, start);
+
+            // PRICE: freeze the cart's running totals into the sale
+            long total = cart.getTotal();
+            Sale sale = new Sale(0, total, cart.getTax(), payment, total - payment);
+            List<SaleItem> saleItems = new ArrayList<>(cart.size());
+            for (CartLine line : cart.getLines()) {
+                SaleItem item = new SaleItem(0, line.getItemId(), line.getQuantity(), line.getNetTotal(), line.getTaxRate(), line.getTax());
+                item.setName(line.getName());
+                item.setCategory(line.getCategory());
+                saleItems.add(item);
+            }
+            checkout.sale = sale;
+            checkout.saleItems = saleItems;
+            checkout.record(Stage.PRICE, start);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<Checkout> result = new CompletableFuture<>();
+        try {
+            CHECKOUT.execute(() -> run(checkout, owner, result));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new IllegalStateException("Too many checkouts in progress, please retry", e));
+        }
+        return result;
+    }
+
+    private void run(Checkout checkout, Object owner, CompletableFuture<Checkout> result) {
+        CompletableFuture<InvoiceService.RenderedReceipt> rendered = new CompletableFuture<>();
+        try {
+            // PERSIST, with the receipt rendering as soon as the sale ID exists
+            long start = System.nanoTime();
+            int salesId = saleService.createSale(checkout.sale, checkout.saleItems, id -> renderAsync(checkout, id, rendered));
+            if (salesId <= 0) {
+                throw new SQLException("The sale was not saved");
+            }
+            start = checkout.record(Stage.PERSIST, start);
+            checkout.committedAt = start;
+
+            // committed: release the receipt to the printer
+            checkout.receipt = rendered.thenCompose(InvoiceService::releaseReceipt);
+
+            // STOCK, while the receipt prints
+            try {
+                reservationService.commit(owner);
+            } catch (SQLException e) {
+                // the sale is committed; the holds are released and the cache reloads on next use
+                LOGGER.log(Level.WARNING, "Could not refresh stock after sale #" + checkout.sale.getSalesId(), e);
+            }
+            checkout.record(Stage.STOCK, start);
+            result.complete(checkout);
+        } catch (SQLException e) {
+            // rolled back: the speculative receipt is never released
+            rendered.cancel(false);
+            if (SaleDAO.OUT_OF_STOCK.equals(e.getSQLState())) {
+                // another machine sold the last units; tell the cashier like any other validation failure
+                refreshStock(checkout);
+                result.completeExceptionally(new IllegalArgumentException(e.getMessage(), e));
+            } else {
+                result.completeExceptionally(e);
+            }
+        } catch (Exception | Error e) {
+            rendered.cancel(false);
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void refreshStock(Checkout checkout) {
+        List<Integer> itemIds = new ArrayList<>(checkout.saleItems.size());
+        for (SaleItem item : checkout.saleItems) {
+            itemIds.add(item.getItemId());
+        }
+        try {
+            reservationService.refresh(itemIds);
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Could not refresh stock after a sale ran out of stock", e);
+        }
+    }
+
+    private static void renderAsync(Checkout checkout, int salesId, CompletableFuture<InvoiceService.RenderedReceipt> rendered) {
+        // the receipt gets its own copies; the originals are still being saved
+        Sale sale = checkout.sale;
+        Sale receiptSale = new Sale(salesId, sale.getTotal(), sale.getTax(), sale.getPayment(), sale.getBalance());
+        receiptSale.setSaleDate(sale.getSaleDate());
+        List<SaleItem> receiptItems = new ArrayList<>(checkout.saleItems.size());
+        for (SaleItem item : checkout.saleItems) {
+            SaleItem copy = new SaleItem(salesId, item.getItemId(), item.getQuantity(), item.getPrice(), item.getTaxRate(), item.getTax());
+            copy.setName(item.getName());
+            copy.setCategory(item.getCategory());
+            receiptItems.add(copy);
+        }
+        try {
+            RENDER.execute(() -> {
+                try {
+                    long start = System.nanoTime();
+                    InvoiceService.RenderedReceipt receipt = InvoiceService.renderReceipt(receiptSale, receiptItems);
+                    checkout.record(Stage.RECEIPT, start);
+                    rendered.complete(receipt);
+                } catch (Exception | Error e) {
+                    rendered.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rendered.completeExceptionally(new IllegalStateException("Receipt renderer is busy, please reprint receipt #" + salesId, e));
+        }
+    }
+
+    /**
+     * One checkout in flight: the saved sale, the pending receipt and the
+     * time spent in each stage.
+     */
+    public static final class Checkout {
+        private final AtomicLongArray nanos = new AtomicLongArray(Stage.values().length);
+        private Sale sale;
+        private List<SaleItem> saleItems;
+        private volatile CompletableFuture<String> receipt;
+        private volatile long committedAt;
+
+        private Checkout() {
+        }
+
+        public Sale getSale() {
+            return sale;
+        }
+
+        public List<SaleItem> getSaleItems() {
+            return saleItems;
+        }
+
+        /**
+         * Completes with the PDF path or printer name once the receipt is out.
+         */
+        public CompletableFuture<String> getReceipt() {
+            return receipt;
+        }
+
+        /**
+         * Called by the till once it has shown the outcome; ends NOTIFY.
+         */
+        public void markNotified() {
+            record(Stage.NOTIFY, committedAt);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Checkout of sale #" + sale.getSalesId() + ": " + this);
+            }
+        }
+
+        /**
+         * Returns the time spent in a stage in microseconds, or 0 if the
+         * stage has not finished.
+         */
+        public long getMicros(Stage stage) {
+            return nanos.get(stage.ordinal()) / 1000;
+        }
+
+        private long record(Stage stage, long start) {
+            long now = System.nanoTime();
+            nanos.set(stage.ordinal(), now - start);
+            return now;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (Stage stage : Stage.values()) {
+                if (text.length() > 0) {
+                    text.append(", ");
+                }
+                text.append(stage.name().toLowerCase()).append(' ')
+                        .append(String.format("%.1f", getMicros(stage) / 1000.0)).append(" ms");
+            }
+            return text.toString();
+        }
+    }
+}
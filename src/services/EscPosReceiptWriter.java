@@ -0,0 +1,283 @@
+package services;
+
+import model.Sale;
+import model.SaleItem;
+import utils.Money;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receipt backend for 58/80mm thermal printers speaking ESC/POS.
+ * Lays out the same receipt as the PDF template as raw printer commands
+ * in a reused direct buffer; the barcode is printed by the printer itself
+ * (GS k CODE128), so no image is rendered. Output goes to a device file
+ * such as /dev/usb/lp0, or to any output stream.
+ * Not meant for concurrent use; print() is synchronized.
+ */
+public class EscPosReceiptWriter {
+
+    /**
+     * Characters per line in the printer's default font.
+     */
+    public static final int COLUMNS_58MM = 32;
+    public static final int COLUMNS_80MM = 48;
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private static final byte[] INIT = {0x1B, 0x40};
+    private static final byte[] ALIGN_LEFT = {0x1B, 0x61, 0};
+    private static final byte[] ALIGN_CENTER = {0x1B, 0x61, 1};
+    private static final byte[] BOLD_ON = {0x1B, 0x45, 1};
+    private static final byte[] BOLD_OFF = {0x1B, 0x45, 0};
+    private static final byte[] DOUBLE_SIZE = {0x1D, 0x21, 0x11};
+    private static final byte[] NORMAL_SIZE = {0x1D, 0x21, 0};
+    // height 64 dots, module width 2, human readable text below
+    private static final byte[] BARCODE_SETUP = {0x1D, 0x68, 64, 0x1D, 0x77, 2, 0x1D, 0x48, 2};
+    // feed 4 lines, then partial cut
+    private static final byte[] FEED_AND_CUT = {0x1B, 0x64, 4, 0x1D, 0x56, 0x42, 0};
+    private static final byte LF = 0x0A;
+
+    private final ReceiptTemplate template;
+    private final int columns;
+    private final Path device;
+    private final OutputStream stream;
+    private final WritableByteChannel streamChannel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+
+    /**
+     * Writes receipts to a printer device file. The file is opened for
+     * appending per receipt, so a plain file can stand in for the printer.
+     */
+    public EscPosReceiptWriter(Path device, int columns) {
+        this(ReceiptTemplate.getDefault(), columns, device, null);
+    }
+
+    /**
+     * Writes receipts to an output stream, e.g. a pipe or socket to the printer.
+     * The stream stays open; closing it is up to the caller.
+     */
+    public EscPosReceiptWriter(OutputStream stream, int columns) {
+        this(ReceiptTemplate.getDefault(), columns, null, stream);
+    }
+
+    private EscPosReceiptWriter(ReceiptTemplate template, int columns, Path device, OutputStream stream) {
+        if (columns < 16) {
+            throw new IllegalArgumentException("Printer must fit at least 16 columns");
+        }
+        this.template = template;
+        this.columns = columns;
+        this.device = device;
+        this.stream = stream;
+        this.streamChannel = stream == null ? null : Channels.newChannel(stream);
+    }
+
+    /**
+     * Describes where receipts go, for status messages.
+     */
+    public String getTarget() {
+        return device != null ? device.toString() : "receipt printer";
+    }
+
+    /**
+     * Encodes and sends one receipt. Returns a copy of the bytes sent, for
+     * archiving and reprints.
+     */
+    public synchronized byte[] print(Sale sale, List<SaleItem> saleItems) throws IOException {
+        ByteBuffer out = encode(sale, saleItems);
+        byte[] sent = new byte[out.remaining()];
+        out.get(sent).rewind();
+        write(out);
+        return sent;
+    }
+
+    /**
+     * Encodes a receipt without sending it, e.g. to print it later.
+     */
+    public synchronized byte[] render(Sale sale, List<SaleItem> saleItems) {
+        ByteBuffer out = encode(sale, saleItems);
+        byte[] receipt = new byte[out.remaining()];
+        out.get(receipt);
+        return receipt;
+    }
+
+    /**
+     * Sends previously encoded receipt bytes, e.g. a rendered or archived receipt.
+     */
+    public synchronized void reprint(byte[] receipt) throws IOException {
+        write(ByteBuffer.wrap(receipt));
+    }
+
+    private void write(ByteBuffer out) throws IOException {
+        if (device != null) {
+            try (FileChannel channel = FileChannel.open(device,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+        } else {
+            while (out.hasRemaining()) {
+                streamChannel.write(out);
+            }
+            stream.flush();
+        }
+    }
+
+    /**
+     * Lays out the receipt as ESC/POS commands. The returned buffer is ready
+     * for reading and is reused by the next call.
+     */
+    synchronized ByteBuffer encode(Sale sale, List<SaleItem> saleItems) {
+        buffer.clear();
+        put(INIT);
+
+        // Header
+        String[] header = template.getHeaderLines();
+        put(ALIGN_CENTER);
+        put(BOLD_ON);
+        put(DOUBLE_SIZE);
+        line(header[0], columns / 2);
+        put(NORMAL_SIZE);
+        put(BOLD_OFF);
+        for (int i = 1; i < header.length; i++) {
+            wrapped(header[i]);
+        }
+        newLine();
+
+        // Sale lines: "id name" on the first row, "category  xqty  price" below
+        put(ALIGN_LEFT);
+        rule();
+        row("Item", "Qty      Price");
+        rule();
+        for (SaleItem item : saleItems) {
+            line(item.getName() == null ? ReceiptTemplate.nameOf(item) : item.getItemId() + " " + item.getName(), columns);
+            row("  " + (item.getCategory() == null ? "" : item.getCategory()), "x" + item.getQuantity() + "  " + pad(Money.format(item.getPrice()), 9));
+        }
+        rule();
+
+        // Tax subtotals per rate, then totals
+        row("Subtotal", Money.format(sale.getTotal() - sale.getTax()));
+        for (Map.Entry<Integer, long[]> rate : ReceiptTemplate.taxByRate(saleItems).entrySet()) {
+            long[] sums = rate.getValue();
+            row("Tax " + Money.formatRate(rate.getKey()) + " on " + Money.format(sums[0]), Money.format(sums[1]));
+        }
+        put(BOLD_ON);
+        row("Total", Money.format(sale.getTotal()));
+        put(BOLD_OFF);
+        row("Payment", Money.format(sale.getPayment()));
+        row("Balance", Money.format(sale.getBalance()));
+        newLine();
+
+        // Barcode, drawn by the printer
+        put(ALIGN_CENTER);
+        barcode(template.getBarcodeData(sale));
+        newLine();
+
+        // Footer
+        for (String footerLine : template.getFooter().split("\n")) {
+            wrapped(footerLine);
+        }
+        put(FEED_AND_CUT);
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private void barcode(String data) {
+        // GS k 73 n: CODE128, "{B" selects code set B
+        ensure(BARCODE_SETUP.length + 6 + data.length());
+        buffer.put(BARCODE_SETUP);
+        buffer.put((byte) 0x1D).put((byte) 0x6B).put((byte) 73).put((byte) (data.length() + 2));
+        buffer.put((byte) '{').put((byte) 'B');
+        text(data, data.length());
+    }
+
+    private void row(String left, String right) {
+        int space = columns - right.length() - 1;
+        ensure(columns + right.length() + 1);
+        int written = text(left, space);
+        for (int i = written; i < columns - right.length(); i++) {
+            buffer.put((byte) ' ');
+        }
+        text(right, right.length());
+        buffer.put(LF);
+    }
+
+    private void rule() {
+        ensure(columns + 1);
+        for (int i = 0; i < columns; i++) {
+            buffer.put((byte) '-');
+        }
+        buffer.put(LF);
+    }
+
+    private void line(String value, int width) {
+        ensure(width + 1);
+        text(value, width);
+        buffer.put(LF);
+    }
+
+    /**
+     * Writes a line, breaking at spaces where it is wider than the paper.
+     */
+    private void wrapped(String value) {
+        int start = 0;
+        while (value.length() - start > columns) {
+            int end = value.lastIndexOf(' ', start + columns);
+            if (end <= start) {
+                end = start + columns;
+            }
+            line(value.substring(start, end), columns);
+            start = end;
+            while (start < value.length() && value.charAt(start) == ' ') {
+                start++;
+            }
+        }
+        line(value.substring(start), columns);
+    }
+
+    private void newLine() {
+        ensure(1);
+        buffer.put(LF);
+    }
+
+    /**
+     * Writes at most max characters; anything outside printable ASCII is
+     * printed as '?'. Returns the number of characters written.
+     */
+    private int text(String value, int max) {
+        int length = Math.min(value.length(), Math.max(max, 0));
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            buffer.put(c >= 0x20 && c < 0x7F ? (byte) c : (byte) '?');
+        }
+        return length;
+    }
+
+    private void put(byte[] command) {
+        ensure(command.length);
+        buffer.put(command);
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    private static String pad(String value, int width) {
+        return value.length() >= width ? value : " ".repeat(width - value.length()) + value;
+    }
+}
@@ -1,136 +1,307 @@
 package services;
 
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.MultiFormatWriter;
 import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
-import com.itextpdf.io.exceptions.IOException;
-import com.itextpdf.io.image.ImageDataFactory;
-import com.itextpdf.kernel.colors.ColorConstants;
-import com.itextpdf.kernel.geom.PageSize;
 import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
-import com.itextpdf.layout.borders.Border;
 import com.itextpdf.layout.element.Image;
-import com.itextpdf.layout.element.Paragraph;
-import com.itextpdf.layout.element.Table;
-import com.itextpdf.layout.properties.TextAlignment;
-import javax.swing.*;
-import java.nio.file.FileSystems;
+import model.Sale;
+import model.SaleItem;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Service class for generating invoices/receipts.
- * Handles PDF generation with barcode.
+ * Handles PDF generation with barcode, or raw ESC/POS output when a thermal
+ * printer is configured (system property istore.printer names the device,
+ * istore.printer.columns its line width). CheckoutPipeline renders each
+ * receipt from its own copy of the saved sale and queues it on the print
+ * spooler of its printer, so the till never waits on receipt output and
+ * receipts come out in sale order. In ARCHIVED mode every receipt is also kept in the
+ * receipt archive (system property istore.archive, default ~/istore/receipts)
+ * for reprints. In LAZY mode (istore.receipts=lazy) nothing is archived and
+ * reprints are rendered again from the stored sale.
  */
 public class InvoiceService {
+    private static final Logger LOGGER = Logger.getLogger(InvoiceService.class.getName());
 
-    private static void generateBarcode(String data, String filePath) throws Exception {
-        int width = 200; // Adjusted width for a smaller barcode
-        int height = 50;  // Adjusted height for a smaller barcode
+    /**
+     * How receipts are kept for reprints.
+     */
+    public enum ReceiptMode {
+        ARCHIVED, LAZY
+    }
+
+    private static final int QUEUE_CAPACITY = 32;
+    private static final int REPRINT_CACHE_SIZE = 16;
+
+    private static final List<PrintSpooler.Listener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final PrintSpooler.Listener FAN_OUT = (spooler, behind) -> {
+        for (PrintSpooler.Listener listener : LISTENERS) {
+            listener.backpressureChanged(spooler, behind);
+        }
+    };
+    private static final PrintSpooler PDF_SPOOLER = new PrintSpooler("desktop", QUEUE_CAPACITY, FAN_OUT);
+    private static final Map<EscPosReceiptWriter, PrintSpooler> PRINTER_SPOOLERS = new ConcurrentHashMap<>();
+    private static final ReceiptTemplate TEMPLATE = ReceiptTemplate.getDefault();
+    private static final ExecutorService REPRINT = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "receipt-reprint");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final EscPosReceiptWriter THERMAL_PRINTER = createThermalPrinter();
+    private static final ReceiptMode RECEIPT_MODE =
+            "lazy".equalsIgnoreCase(System.getProperty("istore.receipts")) ? ReceiptMode.LAZY : ReceiptMode.ARCHIVED;
+    private static ReceiptArchive archive;
+
+    private static final SaleService SALE_SERVICE = new SaleService();
+    private static final Map<Integer, byte[]> REPRINTS = new LinkedHashMap<>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+            return size() > REPRINT_CACHE_SIZE;
+        }
+    };
+
+    private static EscPosReceiptWriter createThermalPrinter() {
+        String device = System.getProperty("istore.printer");
+        if (device == null || device.isBlank()) {
+            return null;
+        }
+        return new EscPosReceiptWriter(Path.of(device),
+                Integer.getInteger("istore.printer.columns", EscPosReceiptWriter.COLUMNS_80MM));
+    }
+
+    private static PrintSpooler spoolerFor(EscPosReceiptWriter printer) {
+        return PRINTER_SPOOLERS.computeIfAbsent(printer,
+                p -> new PrintSpooler(p.getTarget(), QUEUE_CAPACITY, FAN_OUT));
+    }
+
+    /**
+     * Registers a listener told whenever a receipt spooler starts or stops
+     * falling behind.
+     */
+    public static void addBackpressureListener(PrintSpooler.Listener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeBackpressureListener(PrintSpooler.Listener listener) {
+        LISTENERS.remove(listener);
+    }
 
-        BitMatrix bitMatrix = new MultiFormatWriter().encode(data, BarcodeFormat.CODE_128, width, height);
-        com.google.zxing.client.j2se.MatrixToImageWriter.writeToPath(bitMatrix, "PNG", FileSystems.getDefault().getPath(filePath));
+    public static ReceiptMode getReceiptMode() {
+        return RECEIPT_MODE;
     }
 
-    public static void generateInvoice(JTable tblInv, JTextField txtTot, JTextField txtPay, JTextField txtBal) throws WriterException, Exception {
+    /**
+     * Returns the receipt archive, opening it on first use.
+     */
+    public static synchronized ReceiptArchive getArchive() throws IOException {
+        if (archive == null) {
+            String directory = System.getProperty("istore.archive", System.getProperty("user.home") + "/istore/receipts");
+            archive = new ReceiptArchive(Path.of(directory), ReceiptArchive.DEFAULT_SEGMENT_BYTES,
+                    ReceiptArchive.DEFAULT_RETENTION_MILLIS, ReceiptArchive.DEFAULT_MAX_SEGMENTS);
+        }
+        return archive;
+    }
+
+    /**
+     * Renders a receipt for the current output (thermal printer or PDF)
+     * without sending it anywhere yet.
+     */
+    public static RenderedReceipt renderReceipt(Sale sale, List<SaleItem> saleItems) throws WriterException, IOException {
+        EscPosReceiptWriter printer = THERMAL_PRINTER;
+        if (printer != null) {
+            return new RenderedReceipt(sale.getSalesId(), printer, printer.render(sale, saleItems));
+        }
+        return new RenderedReceipt(sale.getSalesId(), null, renderPdf(sale, saleItems));
+    }
+
+    /**
+     * Queues a rendered receipt on its printer's spooler and returns
+     * immediately. The future completes with the PDF path or printer name,
+     * or exceptionally if output failed after retries or the printer is too
+     * far behind to queue it. Only the output itself is retried; the
+     * receipt is archived once it is out, as a separate step.
+     */
+    public static CompletableFuture<String> releaseReceipt(RenderedReceipt receipt) {
+        PrintSpooler spooler = receipt.printer == null ? PDF_SPOOLER : spoolerFor(receipt.printer);
+        return spooler.submit("Receipt #" + receipt.salesId, () -> output(receipt))
+                .thenApply(target -> {
+                    archive(receipt);
+                    return target;
+                });
+    }
+
+    /**
+     * Sends a rendered receipt to its printer or desktop file and returns
+     * the printer name or PDF path.
+     */
+    private static String output(RenderedReceipt receipt) throws IOException {
+        if (receipt.printer != null) {
+            receipt.printer.reprint(receipt.data);
+            return receipt.printer.getTarget();
+        }
+        String target = desktopPath(receipt.salesId);
+        Files.write(Path.of(target), receipt.data);
+        return target;
+    }
+
+    /**
+     * Keeps a receipt that is already out in the archive, in ARCHIVED mode.
+     * A failure is only logged: the receipt must not be output again, and a
+     * reprint of an unarchived sale renders it again from the stored sale.
+     */
+    private static void archive(RenderedReceipt receipt) {
+        if (RECEIPT_MODE != ReceiptMode.ARCHIVED) {
+            return;
+        }
+        ReceiptArchive.Format format = receipt.printer != null ? ReceiptArchive.Format.ESC_POS : ReceiptArchive.Format.PDF;
         try {
-            // make the file path
-            String desktopPath = System.getProperty("user.home") + "/Desktop/";
-            String pdfFilePath = desktopPath + "Receipt.pdf";
-            String barcodeFilePath = desktopPath + "Barcode.png";
-
-            // Create a barcode for the phone number
-            String phoneNumber = "+5181561616";
-            generateBarcode(phoneNumber, barcodeFilePath);
-
-            PdfWriter writer = new PdfWriter(pdfFilePath);
-            try (var pdf = new com.itextpdf.kernel.pdf.PdfDocument(writer)) {
-
-                // Set custom page size (e.g., 200x300 points)
-                PageSize customPageSize = new PageSize(300, 700);
-                pdf.setDefaultPageSize(customPageSize);
-
-                // the receipt content
-                try (var document = new Document(pdf)) {
-                    document.setMargins(10, 10, 10, 10); // Set smaller margins
-
-                    // Header
-                    document.add(new Paragraph("APPLE COMPUTERS USA").setBold().setFontSize(14).setTextAlignment(TextAlignment.CENTER));
-                    document.add(new Paragraph("1, Menlo Park, California").setTextAlignment(TextAlignment.CENTER));
-                    document.add(new Paragraph("Apple Cool Line : +1125 689 4178").setTextAlignment(TextAlignment.CENTER));
-                    document.add(new Paragraph("\n"));
-
-                    // Table
-                    Table table = new Table(5);
-                    table.addCell("Item ID");
-                    table.addCell("Name");
-                    table.addCell("Category");
-                    table.addCell("Quantity");
-                    table.addCell("Price($)");
-
-                    /* Add data from the table
-                    for (int i = 0; i < tblInv.getRowCount(); i++) {
-                        for (int j = 0; j < tblInv.getColumnCount(); j++) {
-                            table.addCell(tblInv.getValueAt(i, j).toString());
-                        }
-                    }*/
-
-                    // Add data from the table with custom formatting
-                    for (int i = 0; i < tblInv.getRowCount(); i++) {
-                        table.addCell(new Paragraph(tblInv.getValueAt(i, 0).toString())
-                                .setMargin(0)
-                                .setPadding(0)
-                                .setTextAlignment(TextAlignment.LEFT)
-                                .setFontColor(ColorConstants.BLACK));
-                        table.addCell(new Paragraph(tblInv.getValueAt(i, 1).toString())
-                                .setMargin(0)
-                                .setPadding(0)
-                                .setTextAlignment(TextAlignment.CENTER)
-                                .setFontColor(ColorConstants.BLACK));
-                        table.addCell(new Paragraph(tblInv.getValueAt(i, 2).toString())
-                                .setMargin(0)
-                                .setPadding(0)
-                                .setTextAlignment(TextAlignment.RIGHT)
-                                .setFontColor(ColorConstants.BLACK));
-                        table.addCell(new Paragraph(tblInv.getValueAt(i, 3).toString())
-                                .setMargin(0)
-                                .setPadding(0)
-                                .setTextAlignment(TextAlignment.RIGHT)
-                                .setFontColor(ColorConstants.BLACK));
-                        table.addCell(new Paragraph(tblInv.getValueAt(i, 4).toString())
-                                .setMargin(0)
-                                .setPadding(0)
-                                .setTextAlignment(TextAlignment.RIGHT)
-                                .setFontColor(ColorConstants.BLACK));
-                    }
-
-                    // Set alignment for the entire table
-                    table.setHorizontalAlignment(com.itextpdf.layout.properties.HorizontalAlignment.CENTER).setBorder(Border.NO_BORDER);
-                    document.add(table);
-
-                    // Total and payment information
-                    document.add(new Paragraph("Total Price : " + txtTot.getText()).setTextAlignment(TextAlignment.CENTER));
-                    document.add(new Paragraph("Payment : " + txtPay.getText()).setTextAlignment(TextAlignment.CENTER));
-                    document.add(new Paragraph("Balance: " + txtBal.getText()).setTextAlignment(TextAlignment.CENTER));
-                    document.add(new Paragraph("\n\n"));
-
-                    // Barcode
-                    Image barcodeImage = new Image(ImageDataFactory.create(barcodeFilePath));
-                    barcodeImage.setWidth(100); // Adjusted width for a smaller barcode
-                    barcodeImage.setHeight(25);  // Adjusted height for a smaller barcode
-                    document.add(barcodeImage);
-
-                    // Footer
-                    document.add(new Paragraph("Wish You A Merry Christmas!\nThank You For Buying From Us And Your Trust!\nCome Again!")
-                            .setTextAlignment(TextAlignment.CENTER)
-                            .setFontColor(ColorConstants.BLUE));
-                }
+            getArchive().store(receipt.salesId, format, receipt.data);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Receipt #" + receipt.salesId + " was output but could not be archived", e);
+        }
+    }
+
+    /**
+     * Queues the receipt of a past sale for output again and returns at
+     * once. The receipt is looked up and rendered on a background thread,
+     * then output through its printer's spooler like a new receipt, so a
+     * reprint waits its turn, is retried and counts towards backpressure.
+     * In ARCHIVED mode the stored receipt is replayed as it was first
+     * produced; otherwise, or if it is not archived, it is rendered again
+     * from the sale. The future completes with the printer name or PDF path.
+     */
+    public static CompletableFuture<String> reprintInvoice(int salesId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return prepareReprint(salesId);
+            } catch (Exception e) {
+                throw new CompletionException(e);
             }
-            JOptionPane.showMessageDialog(null, "Invoice Generated Successfully at:\n" + pdfFilePath, "Success", JOptionPane.INFORMATION_MESSAGE);
+        }, REPRINT).thenCompose(receipt -> {
+            PrintSpooler spooler = receipt.printer == null ? PDF_SPOOLER : spoolerFor(receipt.printer);
+            return spooler.submit("Reprint #" + salesId, () -> output(receipt));
+        });
+    }
+
+    private static RenderedReceipt prepareReprint(int salesId) throws Exception {
+        if (RECEIPT_MODE == ReceiptMode.ARCHIVED) {
+            ReceiptArchive.StoredReceipt receipt = getArchive().load(salesId);
+            if (receipt != null) {
+                return replay(receipt);
+            }
+        }
+        return rerender(salesId);
+    }
+
+    private static RenderedReceipt replay(ReceiptArchive.StoredReceipt receipt) {
+        int salesId = receipt.getSalesId();
+        if (receipt.getFormat() == ReceiptArchive.Format.ESC_POS) {
+            EscPosReceiptWriter printer = THERMAL_PRINTER;
+            if (printer == null) {
+                throw new IllegalStateException("Receipt #" + salesId + " is a thermal printer receipt, but no printer is configured");
+            }
+            return new RenderedReceipt(salesId, printer, receipt.getData());
+        }
+        return new RenderedReceipt(salesId, null, receipt.getData());
+    }
+
+    /**
+     * Renders the receipt of a stored sale with the current template. Only
+     * the current layout can be rendered, so a sale first printed with an
+     * older template version gets a reprint that differs in layout (not in
+     * content); that is logged. Rendered PDFs are kept in a small LRU, since
+     * a reprint is often asked for more than once.
+     */
+    private static RenderedReceipt rerender(int salesId) throws Exception {
+        EscPosReceiptWriter printer = THERMAL_PRINTER;
+        if (printer != null) {
+            Sale sale = loadSale(salesId);
+            return new RenderedReceipt(salesId, printer, printer.render(sale, sale.getItems()));
+        }
+
+        byte[] pdfBytes;
+        synchronized (REPRINTS) {
+            pdfBytes = REPRINTS.get(salesId);
+        }
+        if (pdfBytes == null) {
+            Sale sale = loadSale(salesId);
+            pdfBytes = renderPdf(sale, sale.getItems());
+            synchronized (REPRINTS) {
+                REPRINTS.put(salesId, pdfBytes);
+            }
+        }
+        return new RenderedReceipt(salesId, null, pdfBytes);
+    }
+
+    private static Sale loadSale(int salesId) throws Exception {
+        Sale sale = SALE_SERVICE.getSaleWithItems(salesId);
+        if (sale == null) {
+            throw new IllegalArgumentException("Sale #" + salesId + " does not exist");
+        }
+        if (sale.getReceiptVersion() != ReceiptTemplate.VERSION) {
+            LOGGER.info("Receipt #" + salesId + " was printed with template version " + sale.getReceiptVersion()
+                    + "; reprinting with version " + ReceiptTemplate.VERSION);
+        }
+        return sale;
+    }
+
+    private static String desktopPath(int salesId) {
+        // one file per sale so concurrent renders never collide
+        return System.getProperty("user.home") + "/Desktop/Receipt-" + salesId + ".pdf";
+    }
+
+    /**
+     * Renders the receipt PDF in memory.
+     */
+    private static byte[] renderPdf(Sale sale, List<SaleItem> saleItems) throws WriterException, IOException {
+        // Create the receipt barcode, rendered in memory
+        Image barcodeImage = new Image(BarcodeService.code128(TEMPLATE.getBarcodeData(sale), 200, 50));
+
+        ByteArrayOutputStream receipt = new ByteArrayOutputStream(16 * 1024);
+        PdfWriter writer = new PdfWriter(receipt);
+        try (var pdf = new com.itextpdf.kernel.pdf.PdfDocument(writer)) {
+            pdf.setDefaultPageSize(TEMPLATE.getPageSize());
+
+            // the receipt content
+            try (var document = new Document(pdf)) {
+                TEMPLATE.render(document, sale, saleItems, barcodeImage);
+            }
+        }
+        return receipt.toByteArray();
+    }
+
+    /**
+     * A receipt rendered for one printer (or the PDF desktop output when
+     * printer is null), ready to be sent.
+     */
+    public static final class RenderedReceipt {
+        private final int salesId;
+        private final EscPosReceiptWriter printer;
+        private final byte[] data;
+
+        private RenderedReceipt(int salesId, EscPosReceiptWriter printer, byte[] data) {
+            this.salesId = salesId;
+            this.printer = printer;
+            this.data = data;
+        }
 
-        } catch (IOException ex) {
-            JOptionPane.showMessageDialog(null, "Error generating invoice:\n" + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        public int getSalesId() {
+            return salesId;
         }
     }
 }
@@ -0,0 +1,154 @@
+package services;
+
+import com.google.zxing.WriterException;
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.AreaBreak;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.Image;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.properties.HorizontalAlignment;
+import com.itextpdf.layout.properties.TextAlignment;
+import com.itextpdf.layout.properties.UnitValue;
+import model.Product;
+import utils.Money;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Service class for printing shelf labels.
+ * Lays out product name, price and a CODE_128 barcode of the item ID on A4
+ * label sheets. Barcodes are rendered one page at a time with fork-join,
+ * and the next page renders while the current one is written, so only two
+ * pages of images are ever held in memory.
+ */
+public class LabelService {
+    private static final int COLUMNS = 3;
+    private static final int ROWS = 8;
+    private static final int LABELS_PER_PAGE = COLUMNS * ROWS;
+    private static final int BARCODE_WIDTH = 300;
+    private static final int BARCODE_HEIGHT = 60;
+    private static final float MARGIN = 20;
+
+    private final ForkJoinPool pool;
+
+    public LabelService() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public LabelService(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Writes a label sheet PDF for the products and returns its path.
+     */
+    public String generateLabelSheet(List<Product> products, String pdfFilePath) throws IOException {
+        if (products == null || products.isEmpty()) {
+            throw new IllegalArgumentException("Select at least one product");
+        }
+        Product[] labels = products.toArray(new Product[0]);
+        int pages = (labels.length + LABELS_PER_PAGE - 1) / LABELS_PER_PAGE;
+
+        try (PdfDocument pdf = new PdfDocument(new PdfWriter(pdfFilePath));
+             Document document = new Document(pdf, PageSize.A4)) {
+            document.setMargins(MARGIN, MARGIN, MARGIN, MARGIN);
+            PdfFont bold = PdfFontFactory.createFont(StandardFonts.HELVETICA_BOLD);
+            float labelHeight = (PageSize.A4.getHeight() - 2 * MARGIN) / ROWS - 8; // leaves room for cell borders
+
+            ForkJoinTask<ImageData[]> next = renderPage(labels, 0);
+            for (int page = 0; page < pages; page++) {
+                ImageData[] barcodes = next.join();
+                if (page + 1 < pages) {
+                    next = renderPage(labels, page + 1);
+                }
+                if (page > 0) {
+                    document.add(new AreaBreak());
+                }
+                document.add(layoutPage(labels, page, barcodes, bold, labelHeight));
+            }
+        }
+        return pdfFilePath;
+    }
+
+    private Table layoutPage(Product[] labels, int page, ImageData[] barcodes, PdfFont bold, float labelHeight) {
+        Table table = new Table(UnitValue.createPercentArray(COLUMNS)).useAllAvailableWidth();
+        int start = page * LABELS_PER_PAGE;
+        for (int i = 0; i < barcodes.length; i++) {
+            Product product = labels[start + i];
+            Image barcode = new Image(barcodes[i])
+                    .setWidth(140)
+                    .setHeight(28)
+                    .setHorizontalAlignment(HorizontalAlignment.CENTER);
+            table.addCell(new Cell()
+                    .setHeight(labelHeight)
+                    .setTextAlignment(TextAlignment.CENTER)
+                    .add(new Paragraph(product.getName()).setFont(bold).setFontSize(11).setMargin(0))
+                    .add(new Paragraph("$" + Money.format(product.getPrice())).setFont(bold).setFontSize(16).setMargin(0))
+                    .add(barcode)
+                    .add(new Paragraph(String.valueOf(product.getItemId())).setFontSize(8).setMargin(0)));
+        }
+        return table;
+    }
+
+    private ForkJoinTask<ImageData[]> renderPage(Product[] labels, int page) {
+        int from = page * LABELS_PER_PAGE;
+        int to = Math.min(from + LABELS_PER_PAGE, labels.length);
+        ImageData[] barcodes = new ImageData[to - from];
+        return pool.submit(() -> {
+            new RenderLabels(labels, barcodes, from, 0, barcodes.length).invoke();
+            return barcodes;
+        });
+    }
+
+    /**
+     * Renders a range of label barcodes, splitting in halves down to a few
+     * labels per task.
+     */
+    private static final class RenderLabels extends RecursiveAction {
+        private static final int THRESHOLD = 4;
+
+        private final Product[] labels;
+        private final ImageData[] barcodes;
+        private final int offset;
+        private final int from;
+        private final int to;
+
+        private RenderLabels(Product[] labels, ImageData[] barcodes, int offset, int from, int to) {
+            this.labels = labels;
+            this.barcodes = barcodes;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    int itemId = labels[offset + i].getItemId();
+                    try {
+                        barcodes[i] = BarcodeService.code128(String.valueOf(itemId), BARCODE_WIDTH, BARCODE_HEIGHT);
+                    } catch (WriterException e) {
+                        throw new IllegalArgumentException("Cannot encode a barcode for item " + itemId, e);
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RenderLabels(labels, barcodes, offset, from, middle),
+                    new RenderLabels(labels, barcodes, offset, middle, to));
+        }
+    }
+}
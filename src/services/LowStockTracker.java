@@ -0,0 +1,379 @@
+package services;
+
+import dao.ProductDAO;
+import dao.ReplenishmentDAO;
+import model.Product;
+import model.ReorderSuggestion;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Service class keeping the products at or below their reorder threshold,
+ * updated on every stock change made through this application, so finding
+ * low stock never scans the products table.
+ *
+ * The threshold of a product is its reorder point from the reorder
+ * suggestions, or istore.lowStock.threshold (default 5) for products
+ * without one. Low products sit in an indexed binary heap ordered by how
+ * far their quantity is below the threshold: each product remembers its
+ * heap slot, so a quantity change moves, adds or removes it in O(log n)
+ * and the most urgent product is always at the root.
+ *
+ * Listeners are told when a product becomes low and when it is restocked;
+ * they run on the thread that changed the stock, after the tracker's lock
+ * is released, and must hand off to their own thread for slow work.
+ *
+ * The tracker lives in one JVM and only sees stock changes made by that
+ * process. Sales rung up on other till machines reach it only when it is
+ * reloaded, so its alerts cover this machine's changes and reload brings
+ * in everything else.
+ */
+public class LowStockTracker {
+    private static final int DEFAULT_THRESHOLD = 5;
+    private static final LowStockTracker INSTANCE =
+            new LowStockTracker(Integer.getInteger("istore.lowStock.threshold", DEFAULT_THRESHOLD));
+
+    /**
+     * Receives low-stock alerts: low is true when the product fell to its
+     * threshold, false when it was restocked above it.
+     */
+    public interface Listener {
+        void lowStockChanged(Item item, boolean low);
+    }
+
+    /**
+     * A product's stock and threshold at the time it was reported.
+     */
+    public static final class Item {
+        private final int itemId;
+        private final String name;
+        private final int quantity;
+        private final int threshold;
+
+        private Item(Entry entry) {
+            this.itemId = entry.itemId;
+            this.name = entry.name;
+            this.quantity = entry.quantity;
+            this.threshold = entry.threshold;
+        }
+
+        public int getItemId() {
+            return itemId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public int getThreshold() {
+            return threshold;
+        }
+    }
+
+    private static final Comparator<Item> MOST_URGENT_FIRST = Comparator
+            .comparingLong((Item item) -> (long) item.quantity - item.threshold)
+            .thenComparingInt(Item::getItemId);
+
+    private final int defaultThreshold;
+    private final Object reloadLock = new Object();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private Map<Integer, Integer> thresholds = new HashMap<>();
+    private Entry[] heap = new Entry[64];
+    private int size;
+    private boolean loaded;
+    private List<Product> pendingProducts;
+    private List<ReorderSuggestion> pendingThresholds;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    LowStockTracker(int defaultThreshold) {
+        this.defaultThreshold = defaultThreshold;
+    }
+
+    /**
+     * Returns the tracker shared by the tills and manager screens of this
+     * process.
+     */
+    public static LowStockTracker getInstance() {
+        return INSTANCE;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Rebuilds the tracker from every product and its reorder point. Must
+     * run before the tracker is first read, and picks up stock changed on
+     * other machines when run again. Changes reported while it reads are
+     * applied on top of what it read. No alerts are raised for products
+     * already low.
+     */
+    public void reload(ProductDAO productDAO, ReplenishmentDAO replenishmentDAO) throws SQLException {
+        synchronized (reloadLock) {
+            synchronized (this) {
+                pendingProducts = new ArrayList<>();
+                pendingThresholds = new ArrayList<>();
+            }
+            List<Product> products;
+            Map<Integer, ReorderSuggestion> suggestions;
+            try {
+                products = productDAO.getAllProducts();
+                suggestions = replenishmentDAO.getSuggestions();
+            } catch (SQLException | RuntimeException e) {
+                synchronized (this) {
+                    pendingProducts = null;
+                    pendingThresholds = null;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                entries.clear();
+                Arrays.fill(heap, 0, size, null);
+                size = 0;
+                thresholds = new HashMap<>();
+                for (ReorderSuggestion suggestion : suggestions.values()) {
+                    thresholds.put(suggestion.getItemId(), suggestion.getReorderPoint());
+                }
+                for (ReorderSuggestion suggestion : pendingThresholds) {
+                    thresholds.put(suggestion.getItemId(), suggestion.getReorderPoint());
+                }
+                for (Product product : products) {
+                    fix(record(product));
+                }
+                for (Product product : pendingProducts) {
+                    fix(record(product));
+                }
+                pendingProducts = null;
+                pendingThresholds = null;
+                loaded = true;
+            }
+        }
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Records the current stock of products, e.g. as read back after a sale
+     * or saved from the product form. Ignored until the tracker is loaded,
+     * since the load reads the stock anyway.
+     */
+    public void update(List<Product> products) {
+        List<Item> nowLow = new ArrayList<>();
+        List<Item> restocked = new ArrayList<>();
+        synchronized (this) {
+            if (pendingProducts != null) {
+                pendingProducts.addAll(products);
+            }
+            if (!loaded) {
+                return;
+            }
+            for (Product product : products) {
+                Entry entry = record(product);
+                collect(entry, fix(entry), nowLow, restocked);
+            }
+        }
+        notifyListeners(nowLow, restocked);
+    }
+
+    /**
+     * Sets the reorder thresholds from freshly computed suggestions,
+     * including those of products the tracker has not seen yet.
+     */
+    public void setThresholds(List<ReorderSuggestion> suggestions) {
+        List<Item> nowLow = new ArrayList<>();
+        List<Item> restocked = new ArrayList<>();
+        synchronized (this) {
+            if (pendingThresholds != null) {
+                pendingThresholds.addAll(suggestions);
+            }
+            for (ReorderSuggestion suggestion : suggestions) {
+                thresholds.put(suggestion.getItemId(), suggestion.getReorderPoint());
+                Entry entry = entries.get(suggestion.getItemId());
+                if (loaded && entry != null) {
+                    entry.threshold = suggestion.getReorderPoint();
+                    collect(entry, fix(entry), nowLow, restocked);
+                }
+            }
+        }
+        notifyListeners(nowLow, restocked);
+    }
+
+    /**
+     * Records a product's stock; a new product gets its reorder point, or
+     * the default threshold if it has none. The caller fixes its heap slot.
+     */
+    private Entry record(Product product) {
+        Entry entry = entries.computeIfAbsent(product.getItemId(),
+                id -> new Entry(id, thresholds.getOrDefault(id, defaultThreshold)));
+        entry.name = product.getName();
+        entry.quantity = product.getQuantity();
+        return entry;
+    }
+
+    /**
+     * Forgets a deleted product.
+     */
+    public synchronized void remove(int itemId) {
+        Entry entry = entries.remove(itemId);
+        if (entry != null && entry.slot >= 0) {
+            removeAt(entry.slot);
+        }
+    }
+
+    /**
+     * Returns the low products, most urgent first.
+     */
+    public List<Item> getLowStock() {
+        List<Item> items;
+        synchronized (this) {
+            items = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                items.add(new Item(heap[i]));
+            }
+        }
+        items.sort(MOST_URGENT_FIRST);
+        return items;
+    }
+
+    /**
+     * Returns how many products are low.
+     */
+    public synchronized int getLowStockCount() {
+        return size;
+    }
+
+    private void collect(Entry entry, int change, List<Item> nowLow, List<Item> restocked) {
+        if (change > 0) {
+            nowLow.add(new Item(entry));
+        } else if (change < 0) {
+            restocked.add(new Item(entry));
+        }
+    }
+
+    private void notifyListeners(List<Item> nowLow, List<Item> restocked) {
+        for (Listener listener : listeners) {
+            for (Item item : nowLow) {
+                listener.lowStockChanged(item, true);
+            }
+            for (Item item : restocked) {
+                listener.lowStockChanged(item, false);
+            }
+        }
+    }
+
+    /**
+     * Puts the entry where its quantity and threshold say it belongs.
+     * Returns 1 if it became low, -1 if it stopped being low, 0 otherwise.
+     */
+    private int fix(Entry entry) {
+        boolean low = entry.quantity <= entry.threshold;
+        if (entry.slot < 0) {
+            if (!low) {
+                return 0;
+            }
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            heap[size] = entry;
+            entry.slot = size++;
+            siftUp(entry.slot);
+            return 1;
+        }
+        if (!low) {
+            removeAt(entry.slot);
+            return -1;
+        }
+        siftDown(siftUp(entry.slot));
+        return 0;
+    }
+
+    private void removeAt(int slot) {
+        Entry removed = heap[slot];
+        removed.slot = -1;
+        Entry last = heap[--size];
+        heap[size] = null;
+        if (slot < size) {
+            heap[slot] = last;
+            last.slot = slot;
+            siftDown(siftUp(slot));
+        }
+    }
+
+    private int siftUp(int slot) {
+        Entry entry = heap[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!moreUrgent(entry, heap[parent])) {
+                break;
+            }
+            place(heap[parent], slot);
+            slot = parent;
+        }
+        place(entry, slot);
+        return slot;
+    }
+
+    private void siftDown(int slot) {
+        Entry entry = heap[slot];
+        while (true) {
+            int child = 2 * slot + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && moreUrgent(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!moreUrgent(heap[child], entry)) {
+                break;
+            }
+            place(heap[child], slot);
+            slot = child;
+        }
+        place(entry, slot);
+    }
+
+    private void place(Entry entry, int slot) {
+        heap[slot] = entry;
+        entry.slot = slot;
+    }
+
+    private static boolean moreUrgent(Entry a, Entry b) {
+        long shortfallA = (long) a.quantity - a.threshold;
+        long shortfallB = (long) b.quantity - b.threshold;
+        return shortfallA != shortfallB ? shortfallA < shortfallB : a.itemId < b.itemId;
+    }
+
+    /**
+     * A product's stock and threshold; slot is its heap index, -1 while it
+     * is not low. Guarded by the tracker.
+     */
+    private static final class Entry {
+        private final int itemId;
+        private String name;
+        private int quantity;
+        private int threshold;
+        private int slot = -1;
+
+        private Entry(int itemId, int threshold) {
+            this.itemId = itemId;
+            this.threshold = threshold;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package services;
+
+import dao.PromotionDAO;
+import model.Cart;
+import model.CartLine;
+import model.Promotion;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service class for promotion pricing.
+ * Active promotions are compiled once into lookup tables keyed by item ID
+ * and by category, so pricing a cart line only looks at the rules that can
+ * apply to it. When several rules match, the best discount wins.
+ */
+public class PricingService implements Cart.Pricer {
+    private static final Rule[] NO_RULES = new Rule[0];
+
+    private final PromotionDAO promotionDAO;
+    private volatile RuleIndex index = new RuleIndex(Collections.emptyMap(), Collections.emptyMap(), 0);
+
+    public PricingService() {
+        this.promotionDAO = new PromotionDAO();
+    }
+
+    /**
+     * Reloads the active promotions from the database and recompiles them.
+     */
+    public void reload() throws SQLException {
+        compile(promotionDAO.getActivePromotions());
+    }
+
+    /**
+     * Compiles the given promotions into a fresh index. The swap is atomic,
+     * so tills pricing concurrently see either the old or the new rule set.
+     */
+    public void compile(List<Promotion> promotions) {
+        Map<Integer, List<Rule>> byItem = new HashMap<>();
+        Map<String, List<Rule>> byCategory = new HashMap<>();
+        int count = 0;
+
+        for (Promotion promotion : promotions) {
+            Rule rule = Rule.of(promotion);
+            if (rule == null) {
+                continue;
+            }
+            if (promotion.getItemId() > 0) {
+                byItem.computeIfAbsent(promotion.getItemId(), k -> new ArrayList<>()).add(rule);
+                count++;
+            } else if (promotion.getCategory() != null && !promotion.getCategory().isEmpty()) {
+                byCategory.computeIfAbsent(promotion.getCategory(), k -> new ArrayList<>()).add(rule);
+                count++;
+            }
+        }
+
+        this.index = new RuleIndex(toArrays(byItem), toArrays(byCategory), count);
+    }
+
+    /**
+     * Returns the number of rules in the current index.
+     */
+    public int getRuleCount() {
+        return index.count;
+    }
+
+    @Override
+    public long discountFor(CartLine line) {
+        RuleIndex current = index;
+        long best = bestDiscount(current.byItem.getOrDefault(line.getItemId(), NO_RULES), line, 0);
+        if (line.getCategory() != null) {
+            best = bestDiscount(current.byCategory.getOrDefault(line.getCategory(), NO_RULES), line, best);
+        }
+        return best;
+    }
+
+    private static long bestDiscount(Rule[] rules, CartLine line, long best) {
+        for (Rule rule : rules) {
+            long discount = rule.discount(line.getQuantity(), line.getUnitPrice());
+            if (discount > best) {
+                best = discount;
+            }
+        }
+        return best;
+    }
+
+    private static <K> Map<K, Rule[]> toArrays(Map<K, List<Rule>> grouped) {
+        Map<K, Rule[]> compiled = new HashMap<>(grouped.size() * 2);
+        for (Map.Entry<K, List<Rule>> entry : grouped.entrySet()) {
+            compiled.put(entry.getKey(), entry.getValue().toArray(NO_RULES));
+        }
+        return compiled;
+    }
+
+    private static final class RuleIndex {
+        private final Map<Integer, Rule[]> byItem;
+        private final Map<String, Rule[]> byCategory;
+        private final int count;
+
+        private RuleIndex(Map<Integer, Rule[]> byItem, Map<String, Rule[]> byCategory, int count) {
+            this.byItem = byItem;
+            this.byCategory = byCategory;
+            this.count = count;
+        }
+    }
+
+    /**
+     * A promotion reduced to the primitive fields needed at pricing time.
+     */
+    private static final class Rule {
+        private final Promotion.Type type;
+        private final int percentOff;
+        private final int buyQuantity;
+        private final int payQuantity;
+        private final long overridePrice;
+
+        private Rule(Promotion.Type type, int percentOff, int buyQuantity, int payQuantity, long overridePrice) {
+            this.type = type;
+            this.percentOff = percentOff;
+            this.buyQuantity = buyQuantity;
+            this.payQuantity = payQuantity;
+            this.overridePrice = overridePrice;
+        }
+
+        /**
+         * Validates a promotion and compiles it, or returns null if it can never apply.
+         */
+        private static Rule of(Promotion promotion) {
+            switch (promotion.getType()) {
+                case PERCENT:
+                    if (promotion.getPercentOff() <= 0 || promotion.getPercentOff() > 100) {
+                        return null;
+                    }
+                    break;
+                case MULTI_BUY:
+                    if (promotion.getBuyQuantity() <= 0 || promotion.getPayQuantity() < 0
+                            || promotion.getPayQuantity() >= promotion.getBuyQuantity()) {
+                        return null;
+                    }
+                    break;
+                case PRICE_OVERRIDE:
+                    if (promotion.getOverridePrice() < 0) {
+                        return null;
+                    }
+                    break;
+            }
+            return new Rule(promotion.getType(), promotion.getPercentOff(),
+                    promotion.getBuyQuantity(), promotion.getPayQuantity(), promotion.getOverridePrice());
+        }
+
+        private long discount(int quantity, long unitPrice) {
+            switch (type) {
+                case PERCENT:
+                    return unitPrice * quantity * percentOff / 100;
+                case MULTI_BUY:
+                    return (long) (quantity / buyQuantity) * (buyQuantity - payQuantity) * unitPrice;
+                case PRICE_OVERRIDE:
+                    return Math.max(0, unitPrice - overridePrice) * quantity;
+                default:
+                    return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package services;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Print queue for one printer (or the PDF desktop output).
+ * Jobs run one at a time, in submission order, on the spooler's own worker
+ * thread. The queue is bounded: a full queue rejects new jobs instead of
+ * growing, and the listener is told when the queue passes the high-water
+ * mark and again once it has drained below the low-water mark, so the till
+ * can warn the cashier. Jobs failing with an IOException are retried with
+ * backoff, since printers and disks fail transiently; a job is re-run from
+ * the start, so it should do nothing but the output itself. The spooler's
+ * counters are logged at most once a minute while it is busy, and whenever
+ * it starts or stops falling behind.
+ */
+public class PrintSpooler {
+    private static final Logger LOGGER = Logger.getLogger(PrintSpooler.class.getName());
+
+    public static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MILLIS = 200;
+    private static final long METRICS_LOG_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Told when the spooler starts or stops falling behind.
+     */
+    public interface Listener {
+        void backpressureChanged(PrintSpooler spooler, boolean behind);
+    }
+
+    private final String name;
+    private final int capacity;
+    private final int highWater;
+    private final int lowWater;
+    private final Listener listener;
+    private final BlockingQueue<Job> queue;
+    private final Thread worker;
+    private volatile boolean behind;
+    private volatile boolean running = true;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private long metricsLoggedAt = System.currentTimeMillis();
+
+    public PrintSpooler(String name, int capacity, Listener listener) {
+        if (capacity < 4) {
+            throw new IllegalArgumentException("Spooler capacity must be at least 4");
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.highWater = capacity * 3 / 4;
+        this.lowWater = capacity / 4;
+        this.listener = listener;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.worker = new Thread(this::run, "print-spooler-" + name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Queues a job and returns at once. The future completes with the job's
+     * result, or exceptionally if it failed after retries or the queue is full.
+     */
+    public CompletableFuture<String> submit(String description, Callable<String> job) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        if (!running) {
+            result.completeExceptionally(new IllegalStateException("Printer " + name + " is shut down"));
+            return result;
+        }
+        if (!queue.offer(new Job(description, job, result))) {
+            rejected.incrementAndGet();
+            result.completeExceptionally(new IllegalStateException(
+                    "Printer " + name + " is " + capacity + " receipts behind, please wait and retry"));
+            return result;
+        }
+        submitted.incrementAndGet();
+        int depth = queue.size();
+        maxDepth.accumulateAndGet(depth, Math::max);
+        if (depth >= highWater && !behind) {
+            signal(true);
+        }
+        return result;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public boolean isBehind() {
+        return behind;
+    }
+
+    /**
+     * Returns a snapshot of the spooler's counters.
+     */
+    public Metrics getMetrics() {
+        long done = completed.get() + failed.get();
+        return new Metrics(queue.size(), maxDepth.get(), submitted.get(), completed.get(), failed.get(), rejected.get(),
+                retries.get(), done == 0 ? 0 : totalLatencyNanos.get() / done / 1_000_000,
+                maxLatencyNanos.get() / 1_000_000);
+    }
+
+    /**
+     * Stops the worker once the jobs already queued are done.
+     */
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                continue; // re-check running, drain what is left
+            }
+            execute(job);
+            if (behind && queue.size() <= lowWater) {
+                signal(false);
+            }
+            long now = System.currentTimeMillis();
+            if (now - metricsLoggedAt >= METRICS_LOG_MILLIS) {
+                metricsLoggedAt = now;
+                LOGGER.info("Printer " + name + ": " + getMetrics());
+            }
+        }
+    }
+
+    private void execute(Job job) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                String outcome = job.work.call();
+                completed.incrementAndGet();
+                recordLatency(job);
+                job.result.complete(outcome);
+                return;
+            } catch (IOException e) {
+                if (attempt < MAX_ATTEMPTS) {
+                    retries.incrementAndGet();
+                    LOGGER.log(Level.WARNING, job.description + " failed on " + name + ", retrying", e);
+                    try {
+                        Thread.sleep(RETRY_BACKOFF_MILLIS << (attempt - 1));
+                    } catch (InterruptedException interrupted) {
+                        // shutting down; still finish this job's attempts
+                    }
+                    continue;
+                }
+                fail(job, e);
+                return;
+            } catch (Exception | Error e) {
+                fail(job, e);
+                return;
+            }
+        }
+    }
+
+    private void fail(Job job, Throwable e) {
+        failed.incrementAndGet();
+        recordLatency(job);
+        job.result.completeExceptionally(e);
+    }
+
+    private void recordLatency(Job job) {
+        long latency = System.nanoTime() - job.queuedAt;
+        totalLatencyNanos.addAndGet(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+    }
+
+    private synchronized void signal(boolean nowBehind) {
+        if (behind == nowBehind) {
+            return;
+        }
+        behind = nowBehind;
+        LOGGER.info("Printer " + name + (nowBehind ? " is falling behind: " : " has caught up: ") + getMetrics());
+        if (listener != null) {
+            listener.backpressureChanged(this, nowBehind);
+        }
+    }
+
+    private static final class Job {
+        private final String description;
+        private final Callable<String> work;
+        private final CompletableFuture<String> result;
+        private final long queuedAt = System.nanoTime();
+
+        private Job(String description, Callable<String> work, CompletableFuture<String> result) {
+            this.description = description;
+            this.work = work;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Counters of one spooler at a point in time. Latency is measured from
+     * submission to completion.
+     */
+    public static final class Metrics {
+        private final int queueDepth;
+        private final int maxQueueDepth;
+        private final long submitted;
+        private final long completed;
+        private final long failed;
+        private final long rejected;
+        private final long retries;
+        private final long averageLatencyMillis;
+        private final long maxLatencyMillis;
+
+        private Metrics(int queueDepth, int maxQueueDepth, long submitted, long completed, long failed,
+                long rejected, long retries, long averageLatencyMillis, long maxLatencyMillis) {
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.failed = failed;
+            this.rejected = rejected;
+            this.retries = retries;
+            this.averageLatencyMillis = averageLatencyMillis;
+            this.maxLatencyMillis = maxLatencyMillis;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        public long getAverageLatencyMillis() {
+            return averageLatencyMillis;
+        }
+
+        public long getMaxLatencyMillis() {
+            return maxLatencyMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "queued " + queueDepth + " (max " + maxQueueDepth + "), done " + completed
+                    + ", failed " + failed + ", rejected " + rejected + ", retries " + retries
+                    + ", latency avg " + averageLatencyMillis + " ms / max " + maxLatencyMillis + " ms";
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package services;
 
 import dao.ProductDAO;
+import dao.ReplenishmentDAO;
 import model.Product;
 
 import java.sql.SQLException;
@@ -12,9 +13,13 @@ import java.util.List;
  */
 public class ProductService {
     private final ProductDAO productDAO;
+    private final LowStockTracker lowStock;
+    private final StockReservationService reservations;
 
     public ProductService() {
         this.productDAO = new ProductDAO();
+        this.lowStock = LowStockTracker.getInstance();
+        this.reservations = StockReservationService.getInstance();
     }
 
     /**
@@ -34,6 +39,16 @@ public class ProductService {
         return productDAO.searchProducts(keyword);
     }
 
+    /**
+     * Retrieves a selection of products by ID, e.g. for shelf labels.
+     */
+    public List<Product> getProductsByIds(List<Integer> itemIds) throws SQLException {
+        if (itemIds == null || itemIds.isEmpty()) {
+            throw new IllegalArgumentException("Select at least one product");
+        }
+        return productDAO.getProductsByIds(itemIds);
+    }
+
     /**
      * Retrieves a product by ID.
      */
@@ -67,7 +82,12 @@ public class ProductService {
             throw new IllegalArgumentException("Product name already exists");
         }
 
-        return productDAO.addProduct(product);
+        boolean added = productDAO.addProduct(product);
+        if (added) {
+            lowStock.update(List.of(product));
+            reservations.refresh(product.getItemId());
+        }
+        return added;
     }
 
     /**
@@ -93,20 +113,48 @@ public class ProductService {
             throw new IllegalArgumentException("Item ID already exists");
         }
 
-        return productDAO.updateProduct(product, oldItemId);
+        boolean updated = productDAO.updateProduct(product, oldItemId);
+        if (updated) {
+            if (product.getItemId() != oldItemId) {
+                lowStock.remove(oldItemId);
+            }
+            lowStock.update(List.of(product));
+            reservations.refresh(List.of(oldItemId, product.getItemId()));
+        }
+        return updated;
     }
 
     /**
      * Deletes a product.
      */
     public boolean deleteProduct(int itemId) throws SQLException {
-        return productDAO.deleteProduct(itemId);
+        boolean deleted = productDAO.deleteProduct(itemId);
+        if (deleted) {
+            lowStock.remove(itemId);
+            reservations.refresh(itemId);
+        }
+        return deleted;
+    }
+
+    /**
+     * Loads every product and its reorder point into the low-stock tracker.
+     */
+    public void reloadLowStock() throws SQLException {
+        lowStock.reload(productDAO, new ReplenishmentDAO());
     }
 
     /**
      * Updates product quantity after a sale.
      */
     public boolean updateProductQuantity(int itemId, int quantitySold) throws SQLException {
-        return productDAO.updateProductQuantity(itemId, quantitySold);
+        boolean updated = productDAO.updateProductQuantity(itemId, quantitySold);
+        if (updated) {
+            Product product = productDAO.getProductById(itemId);
+            if (product != null) {
+                lowStock.update(List.of(product));
+            }
+            reservations.refresh(itemId);
+        }
+        return updated;
     }
 }
@@ -0,0 +1,408 @@
+package services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only store of every rendered receipt, keyed by sale ID.
+ * Receipts are deflated and appended to numbered segment files; an in-memory
+ * index maps each sale ID to its segment and offset, so a reprint is one
+ * positioned read. A new segment is started once the current one is full,
+ * and whole segments are deleted when they pass the retention age or the
+ * segment cap.
+ *
+ * When a segment is full it is sealed: its index entries are written next
+ * to it in an .idx file. On open, sealed segments are indexed from those
+ * files and only the open segment has its record headers walked, so opening
+ * reads about 28 bytes per receipt instead of every segment. A sealed
+ * segment whose .idx is missing, or does not match the segment's size, is
+ * walked once and given one. The index itself stays in memory, at roughly
+ * 100 bytes of heap per archived receipt.
+ *
+ * Record layout: magic, salesId, format, raw length, stored length, CRC32 of
+ * the stored bytes (six ints), followed by the deflated receipt. Index file
+ * layout: magic, segment size, entry count, then per entry salesId, offset,
+ * format, raw length, stored length and CRC32, and a CRC32 of all of it.
+ */
+public class ReceiptArchive {
+
+    /**
+     * How the archived bytes are to be reprinted.
+     */
+    public enum Format {
+        PDF, ESC_POS
+    }
+
+    public static final long DEFAULT_SEGMENT_BYTES = 32L * 1024 * 1024;
+    public static final long DEFAULT_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7 * 366);
+    public static final int DEFAULT_MAX_SEGMENTS = 256;
+
+    private static final int MAGIC = 0x52435054; // "RCPT"
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
+    private static final int INDEX_MAGIC = 0x52494458; // "RIDX"
+    private static final int INDEX_HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int INDEX_ENTRY_BYTES = 5 * Integer.BYTES + Long.BYTES;
+    private static final String PREFIX = "receipts-";
+    private static final String SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long retentionMillis;
+    private final int maxSegments;
+
+    private final Map<Integer, Location> index = new HashMap<>();
+    private final TreeMap<Integer, Path> segments = new TreeMap<>();
+    private final Set<Integer> currentIds = new LinkedHashSet<>();
+    private final Deflater deflater = new Deflater();
+    private final Inflater inflater = new Inflater();
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    private byte[] scratch = new byte[16 * 1024];
+
+    private int currentSegment;
+    private FileChannel current;
+
+    /**
+     * Opens (or creates) the archive in a directory and loads its index.
+     */
+    public ReceiptArchive(Path directory, long segmentBytes, long retentionMillis, int maxSegments) throws IOException {
+        if (segmentBytes <= HEADER_BYTES || maxSegments < 1) {
+            throw new IllegalArgumentException("Invalid archive limits");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retentionMillis = retentionMillis;
+        this.maxSegments = maxSegments;
+
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        for (Map.Entry<Integer, Path> segment : segments.entrySet()) {
+            int number = segment.getKey();
+            if (number == segments.lastKey()) {
+                scan(number, segment.getValue(), true, currentIds);
+            } else if (!loadIndex(number, segment.getValue())) {
+                Set<Integer> ids = new LinkedHashSet<>();
+                scan(number, segment.getValue(), false, ids);
+                writeIndex(number, Files.size(segment.getValue()), ids);
+            }
+        }
+        enforceRetention();
+        openSegment(segments.isEmpty() ? 1 : segments.lastKey());
+    }
+
+    /**
+     * Appends a receipt. Storing the same sale again supersedes the older copy.
+     */
+    public synchronized void store(int salesId, Format format, byte[] receipt) throws IOException {
+        deflater.reset();
+        deflater.setInput(receipt);
+        deflater.finish();
+        int stored = 0;
+        while (!deflater.finished()) {
+            if (stored == scratch.length) {
+                scratch = Arrays.copyOf(scratch, scratch.length * 2);
+            }
+            stored += deflater.deflate(scratch, stored, scratch.length - stored);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(scratch, 0, stored);
+
+        if (current.size() > 0 && current.size() + HEADER_BYTES + stored > segmentBytes) {
+            long size = current.size();
+            current.force(false);
+            current.close();
+            writeIndex(currentSegment, size, currentIds);
+            currentIds.clear();
+            openSegment(currentSegment + 1);
+            enforceRetention();
+        }
+
+        long offset = current.size();
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + stored);
+        record.putInt(MAGIC).putInt(salesId).putInt(format.ordinal())
+                .putInt(receipt.length).putInt(stored).putInt((int) crc.getValue());
+        record.put(scratch, 0, stored).flip();
+        while (record.hasRemaining()) {
+            current.write(record);
+        }
+        index.put(salesId, new Location(currentSegment, offset, format, receipt.length, stored, (int) crc.getValue()));
+        currentIds.add(salesId);
+    }
+
+    /**
+     * Returns the archived receipt of a sale, or null if it is not archived
+     * (never rendered, or already past retention).
+     */
+    public synchronized StoredReceipt load(int salesId) throws IOException {
+        Location location = index.get(salesId);
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer data = ByteBuffer.allocate(location.stored);
+        try (FileChannel channel = FileChannel.open(segments.get(location.segment), StandardOpenOption.READ)) {
+            readFully(channel, data, location.offset + HEADER_BYTES);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data.array());
+        if ((int) crc.getValue() != location.crc) {
+            throw new IOException("Receipt #" + salesId + " is corrupt in the archive");
+        }
+
+        byte[] receipt = new byte[location.length];
+        inflater.reset();
+        inflater.setInput(data.array());
+        try {
+            int read = 0;
+            while (read < receipt.length && !inflater.finished()) {
+                read += inflater.inflate(receipt, read, receipt.length - read);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Receipt #" + salesId + " is corrupt in the archive", e);
+        }
+        return new StoredReceipt(salesId, location.format, receipt);
+    }
+
+    public synchronized boolean contains(int salesId) {
+        return index.containsKey(salesId);
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized void close() throws IOException {
+        current.force(false);
+        current.close();
+    }
+
+    private Path segmentFile(int number, String suffix) {
+        return directory.resolve(String.format("%s%06d%s", PREFIX, number, suffix));
+    }
+
+    private void openSegment(int number) throws IOException {
+        Path file = segmentFile(number, SUFFIX);
+        current = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        currentSegment = number;
+        segments.put(number, file);
+    }
+
+    /**
+     * Indexes the records of one segment and adds their sale IDs to ids. A
+     * torn record at the end of the newest segment (crash during a write) is
+     * cut off.
+     */
+    private void scan(int number, Path file, boolean newest, Set<Integer> ids) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long offset = 0;
+            while (offset + HEADER_BYTES <= size) {
+                header.clear();
+                readFully(channel, header, offset);
+                header.flip();
+                if (header.getInt() != MAGIC) {
+                    break;
+                }
+                int salesId = header.getInt();
+                int format = header.getInt();
+                int length = header.getInt();
+                int stored = header.getInt();
+                int crc = header.getInt();
+                if (format < 0 || format >= Format.values().length || stored < 0
+                        || offset + HEADER_BYTES + stored > size) {
+                    break;
+                }
+                index.put(salesId, new Location(number, offset, Format.values()[format], length, stored, crc));
+                ids.add(salesId);
+                offset += HEADER_BYTES + stored;
+            }
+            if (offset < size && newest) {
+                channel.truncate(offset);
+            }
+        }
+    }
+
+    /**
+     * Writes the index file of a sealed segment from the entries of the
+     * given sale IDs that live in it. The file is written aside and moved
+     * into place, so a crash leaves either no index or a whole one.
+     */
+    private void writeIndex(int number, long segmentSize, Set<Integer> ids) throws IOException {
+        List<Integer> entries = new ArrayList<>(ids.size());
+        for (int salesId : ids) {
+            Location location = index.get(salesId);
+            if (location != null && location.segment == number) {
+                entries.add(salesId);
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_HEADER_BYTES + entries.size() * INDEX_ENTRY_BYTES + Integer.BYTES);
+        buffer.putInt(INDEX_MAGIC).putLong(segmentSize).putInt(entries.size());
+        for (int salesId : entries) {
+            Location location = index.get(salesId);
+            buffer.putInt(salesId).putLong(location.offset).putInt(location.format.ordinal())
+                    .putInt(location.length).putInt(location.stored).putInt(location.crc);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue()).flip();
+
+        Path file = segmentFile(number, INDEX_SUFFIX);
+        Path temp = segmentFile(number, INDEX_SUFFIX + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Indexes a sealed segment from its index file. Returns false, leaving
+     * the index untouched, if there is no index file or it is damaged or was
+     * written for a segment of a different size.
+     */
+    private boolean loadIndex(int number, Path segment) throws IOException {
+        Path file = segmentFile(number, INDEX_SUFFIX);
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < INDEX_HEADER_BYTES + Integer.BYTES) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.limit() - Integer.BYTES);
+        if (buffer.getInt(buffer.limit() - Integer.BYTES) != (int) crc.getValue()
+                || buffer.getInt() != INDEX_MAGIC || buffer.getLong() != Files.size(segment)) {
+            return false;
+        }
+        int count = buffer.getInt();
+        if (count < 0 || buffer.remaining() != (long) count * INDEX_ENTRY_BYTES + Integer.BYTES) {
+            return false;
+        }
+        Map<Integer, Location> entries = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            int salesId = buffer.getInt();
+            long offset = buffer.getLong();
+            int format = buffer.getInt();
+            if (format < 0 || format >= Format.values().length) {
+                return false;
+            }
+            entries.put(salesId, new Location(number, offset, Format.values()[format],
+                    buffer.getInt(), buffer.getInt(), buffer.getInt()));
+        }
+        index.putAll(entries);
+        return true;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of receipt archive segment");
+            }
+        }
+    }
+
+    /**
+     * Deletes the oldest closed segments that are past retention or over the
+     * segment cap, together with their index entries.
+     */
+    private void enforceRetention() throws IOException {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        List<Integer> expired = new ArrayList<>();
+        int remaining = segments.size();
+        for (Map.Entry<Integer, Path> segment : segments.entrySet()) {
+            if (segment.getKey().equals(segments.lastKey())) {
+                break; // the segment being written to
+            }
+            boolean overCap = remaining > maxSegments;
+            if (overCap || Files.getLastModifiedTime(segment.getValue()).toMillis() < cutoff) {
+                expired.add(segment.getKey());
+                remaining--;
+            }
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        for (int number : expired) {
+            Files.deleteIfExists(segments.remove(number));
+            Files.deleteIfExists(segmentFile(number, INDEX_SUFFIX));
+        }
+        index.values().removeIf(location -> !segments.containsKey(location.segment));
+    }
+
+    /**
+     * A receipt read back from the archive.
+     */
+    public static final class StoredReceipt {
+        private final int salesId;
+        private final Format format;
+        private final byte[] data;
+
+        private StoredReceipt(int salesId, Format format, byte[] data) {
+            this.salesId = salesId;
+            this.format = format;
+            this.data = data;
+        }
+
+        public int getSalesId() {
+            return salesId;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    private static final class Location {
+        private final int segment;
+        private final long offset;
+        private final Format format;
+        private final int length;
+        private final int stored;
+        private final int crc;
+
+        private Location(int segment, long offset, Format format, int length, int stored, int crc) {
+            this.segment = segment;
+            this.offset = offset;
+            this.format = format;
+            this.length = length;
+            this.stored = stored;
+            this.crc = crc;
+        }
+    }
+}
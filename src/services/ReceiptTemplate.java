@@ -0,0 +1,189 @@
+package services;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.kernel.colors.ColorConstants;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.Style;
+import com.itextpdf.layout.borders.Border;
+import com.itextpdf.layout.element.Image;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.properties.HorizontalAlignment;
+import com.itextpdf.layout.properties.TextAlignment;
+import model.Sale;
+import model.SaleItem;
+import utils.Money;
+import utils.ReceiptCode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The receipt layout, compiled once and shared by every render.
+ * Store header and footer text, column headings, styles and parsed font
+ * programs are built up front; a render only adds the sale lines and totals.
+ * iText binds PdfFont objects to a single document, so each document gets
+ * cheap PdfFont wrappers around the shared font programs. Sharing keeps
+ * the layout in one place; it does not make a render measurably faster,
+ * since iText's layout pass dominates the cost.
+ */
+public class ReceiptTemplate {
+
+    /**
+     * Bumped whenever the receipt layout changes.
+     */
+    public static final int VERSION = 2;
+
+    private static final String[] COLUMNS = {"Item ID", "Name", "Category", "Quantity", "Price($)"};
+    private static final TextAlignment[] COLUMN_ALIGNMENT = {
+        TextAlignment.LEFT, TextAlignment.CENTER, TextAlignment.RIGHT, TextAlignment.RIGHT, TextAlignment.RIGHT
+    };
+
+    private static final ReceiptTemplate DEFAULT = new ReceiptTemplate(
+            new String[]{"APPLE COMPUTERS USA", "1, Menlo Park, California", "Apple Cool Line : +1125 689 4178"},
+            "Wish You A Merry Christmas!\nThank You For Buying From Us And Your Trust!\nCome Again!");
+
+    private final String[] headerLines;
+    private final String footer;
+    private final PageSize pageSize = new PageSize(300, 700);
+    private final FontProgram regularFont;
+    private final FontProgram boldFont;
+    private final Style titleStyle;
+    private final Style centeredStyle;
+    private final Style footerStyle;
+    private final Style[] cellStyles = new Style[COLUMNS.length];
+
+    public ReceiptTemplate(String[] headerLines, String footer) {
+        this.headerLines = headerLines.clone();
+        this.footer = footer;
+        try {
+            this.regularFont = FontProgramFactory.createFont(StandardFonts.HELVETICA);
+            this.boldFont = FontProgramFactory.createFont(StandardFonts.HELVETICA_BOLD);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Receipt fonts could not be loaded", e);
+        }
+
+        this.titleStyle = new Style().setFontSize(14).setTextAlignment(TextAlignment.CENTER);
+        this.centeredStyle = new Style().setTextAlignment(TextAlignment.CENTER);
+        this.footerStyle = new Style().setTextAlignment(TextAlignment.CENTER).setFontColor(ColorConstants.BLUE);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            cellStyles[i] = new Style()
+                    .setMargin(0)
+                    .setPadding(0)
+                    .setTextAlignment(COLUMN_ALIGNMENT[i])
+                    .setFontColor(ColorConstants.BLACK);
+        }
+    }
+
+    /**
+     * Returns the store's receipt template.
+     */
+    public static ReceiptTemplate getDefault() {
+        return DEFAULT;
+    }
+
+    public String[] getHeaderLines() {
+        return headerLines.clone();
+    }
+
+    public String getFooter() {
+        return footer;
+    }
+
+    public PageSize getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Returns the payload printed as the receipt barcode: the sale's
+     * receipt code, so a scan leads straight back to the sale.
+     */
+    public String getBarcodeData(Sale sale) {
+        return ReceiptCode.encode(sale.getSalesId());
+    }
+
+    /**
+     * Lays out a full receipt for the sale into an empty document.
+     */
+    public void render(Document document, Sale sale, List<SaleItem> saleItems, Image barcodeImage) {
+        PdfFont regular = PdfFontFactory.createFont(regularFont, PdfEncodings.WINANSI);
+        PdfFont bold = PdfFontFactory.createFont(boldFont, PdfEncodings.WINANSI);
+
+        document.setMargins(10, 10, 10, 10); // Set smaller margins
+        document.setFont(regular);
+
+        // Header
+        document.add(new Paragraph(headerLines[0]).addStyle(titleStyle).setFont(bold));
+        for (int i = 1; i < headerLines.length; i++) {
+            document.add(new Paragraph(headerLines[i]).addStyle(centeredStyle));
+        }
+        document.add(new Paragraph("\n"));
+
+        // Table
+        Table table = new Table(COLUMNS.length);
+        for (String column : COLUMNS) {
+            table.addCell(column);
+        }
+        for (SaleItem item : saleItems) {
+            table.addCell(new Paragraph(String.valueOf(item.getItemId())).addStyle(cellStyles[0]));
+            table.addCell(new Paragraph(nameOf(item)).addStyle(cellStyles[1]));
+            table.addCell(new Paragraph(item.getCategory() == null ? "" : item.getCategory()).addStyle(cellStyles[2]));
+            table.addCell(new Paragraph(String.valueOf(item.getQuantity())).addStyle(cellStyles[3]));
+            table.addCell(new Paragraph(Money.format(item.getPrice())).addStyle(cellStyles[4]));
+        }
+        table.setHorizontalAlignment(HorizontalAlignment.CENTER).setBorder(Border.NO_BORDER);
+        document.add(table);
+
+        // Tax subtotals per rate
+        document.add(new Paragraph("Subtotal : " + Money.format(sale.getTotal() - sale.getTax())).addStyle(centeredStyle));
+        for (Map.Entry<Integer, long[]> rate : taxByRate(saleItems).entrySet()) {
+            long[] sums = rate.getValue();
+            document.add(new Paragraph("Tax " + Money.formatRate(rate.getKey()) + " on " + Money.format(sums[0]) + " : " + Money.format(sums[1]))
+                    .addStyle(centeredStyle));
+        }
+
+        // Total and payment information
+        document.add(new Paragraph("Total Price : " + Money.format(sale.getTotal())).addStyle(centeredStyle));
+        document.add(new Paragraph("Payment : " + Money.format(sale.getPayment())).addStyle(centeredStyle));
+        document.add(new Paragraph("Balance: " + Money.format(sale.getBalance())).addStyle(centeredStyle));
+        document.add(new Paragraph("\n\n"));
+
+        // Barcode
+        barcodeImage.setWidth(100); // Adjusted width for a smaller barcode
+        barcodeImage.setHeight(25);  // Adjusted height for a smaller barcode
+        document.add(barcodeImage);
+
+        // Footer
+        document.add(new Paragraph(footer).addStyle(footerStyle));
+    }
+
+    /**
+     * Returns the name printed for a sale line, or its item ID if the
+     * product was deleted before a lazy reprint.
+     */
+    public static String nameOf(SaleItem item) {
+        return item.getName() == null ? String.valueOf(item.getItemId()) : item.getName();
+    }
+
+    /**
+     * Groups the sale lines by tax rate. Each entry holds {taxable amount, tax} in cents.
+     */
+    public static Map<Integer, long[]> taxByRate(List<SaleItem> saleItems) {
+        Map<Integer, long[]> byRate = new TreeMap<>();
+        for (SaleItem item : saleItems) {
+            long[] sums = byRate.computeIfAbsent(item.getTaxRate(), rate -> new long[2]);
+            sums[0] += item.getPrice();
+            sums[1] += item.getTax();
+        }
+        return byRate;
+    }
+}
@@ -0,0 +1,340 @@
+package services;
+
+import dao.ReplenishmentDAO;
+import model.ReorderSuggestion;
+
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Service class computing reorder points from sales history.
+ *
+ * Each product's daily units over the last year are read from the item
+ * rollups. The forecast for an item is an exponentially weighted daily
+ * velocity (span of four weeks) over sales adjusted for a day-of-week
+ * profile, which is learnt once the item has four weeks of history. The
+ * reorder point is the demand forecast over the supplier lead time plus
+ * safety stock for a 95% service level; stock at or below it is topped up
+ * to cover the lead time and the two-week review period.
+ *
+ * History is held in compressed sparse rows (only days with sales), and
+ * items are forecast in parallel with fork-join over item ranges. A full
+ * recompute runs weekly; on other nights only the items sold on the
+ * closed day are recomputed.
+ */
+public class ReplenishmentService {
+    private static final Logger LOGGER = Logger.getLogger(ReplenishmentService.class.getName());
+
+    static final int HISTORY_DAYS = 364;
+    private static final int VELOCITY_SPAN = 28;
+    private static final double ALPHA = 2.0 / (VELOCITY_SPAN + 1);
+    private static final int SEASONAL_MIN_DAYS = 28;
+    private static final int REVIEW_DAYS = 14;
+    private static final double SERVICE_FACTOR = 1.65; // z for a 95% cycle service level
+    private static final int ITEMS_PER_TASK = 1024;
+    private static final int DEFAULT_LEAD_DAYS = 7;
+    private static final LocalTime RUN_AT = LocalTime.of(3, 0);
+
+    private final ReplenishmentDAO replenishmentDAO;
+    private final int leadDays;
+    private final ForkJoinPool pool;
+    private ScheduledExecutorService scheduler;
+
+    public ReplenishmentService() {
+        this(Integer.getInteger("istore.replenish.leadDays", DEFAULT_LEAD_DAYS), ForkJoinPool.commonPool());
+    }
+
+    public ReplenishmentService(int leadDays, ForkJoinPool pool) {
+        if (leadDays < 1) {
+            throw new IllegalArgumentException("Lead time must be at least one day");
+        }
+        this.replenishmentDAO = new ReplenishmentDAO();
+        this.leadDays = leadDays;
+        this.pool = pool;
+    }
+
+    /**
+     * Recomputes the suggestions of every product sold in the last year,
+     * as of yesterday, and removes those of products no longer sold.
+     * Returns the number of products.
+     */
+    public int recomputeAll() throws SQLException {
+        LocalDate asOf = LocalDate.now().minusDays(1);
+        List<ReorderSuggestion> suggestions = forecast(load(asOf, null), asOf);
+        replenishmentDAO.saveSuggestions(suggestions);
+        replenishmentDAO.deleteSuggestionsBefore(asOf);
+        LowStockTracker.getInstance().setThresholds(suggestions);
+        return suggestions.size();
+    }
+
+    /**
+     * Recomputes the suggestions of the products sold on a closed day.
+     * Returns the number of products.
+     */
+    public int updateAfterClose(LocalDate day) throws SQLException {
+        List<ReorderSuggestion> suggestions = forecast(load(day, day), day);
+        replenishmentDAO.saveSuggestions(suggestions);
+        LowStockTracker.getInstance().setThresholds(suggestions);
+        return suggestions.size();
+    }
+
+    /**
+     * Retrieves the current suggestions keyed by item ID.
+     */
+    public Map<Integer, ReorderSuggestion> getSuggestions() throws SQLException {
+        return replenishmentDAO.getSuggestions();
+    }
+
+    /**
+     * Starts the nightly run if this machine is configured for it with
+     * -Distore.replenish.schedule=true: a full recompute on Mondays (after
+     * Sunday's close), the products sold the day before otherwise.
+     */
+    public synchronized void scheduleIfEnabled() {
+        if (scheduler != null || !Boolean.getBoolean("istore.replenish.schedule")) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replenishment");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(RUN_AT);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                LocalDate today = LocalDate.now();
+                int items = today.getDayOfWeek() == DayOfWeek.MONDAY
+                        ? recomputeAll()
+                        : updateAfterClose(today.minusDays(1));
+                LOGGER.info("Updated reorder suggestions for " + items + " products");
+            } catch (SQLException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Reorder suggestions were not updated", e);
+            }
+        }, Duration.between(now, next).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    private History load(LocalDate asOf, LocalDate soldOn) throws SQLException {
+        History.Builder builder = new History.Builder();
+        replenishmentDAO.streamDailyUnits(asOf.minusDays(HISTORY_DAYS - 1L), asOf.plusDays(1), soldOn,
+                (itemId, stockQty, day, units) ->
+                        builder.add(itemId, stockQty, (int) ChronoUnit.DAYS.between(day, asOf), units));
+        return builder.build();
+    }
+
+    /**
+     * Forecasts every item of the history as of the given day.
+     */
+    List<ReorderSuggestion> forecast(History history, LocalDate asOf) {
+        int items = history.size();
+        double[] velocity = new double[items];
+        int[] reorderPoint = new int[items];
+        int[] orderUpTo = new int[items];
+        if (items > 0) {
+            pool.invoke(new Forecast(history, asOf.getDayOfWeek().getValue() - 1, velocity, reorderPoint, orderUpTo, 0, items));
+        }
+
+        List<ReorderSuggestion> suggestions = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            int stock = history.stock[i];
+            int suggested = stock <= reorderPoint[i] ? Math.max(0, orderUpTo[i] - stock) : 0;
+            suggestions.add(new ReorderSuggestion(history.itemIds[i], velocity[i], reorderPoint[i], orderUpTo[i],
+                    suggested, asOf));
+        }
+        return suggestions;
+    }
+
+    /**
+     * Forecasts a range of items, splitting down to ITEMS_PER_TASK items.
+     */
+    private final class Forecast extends RecursiveAction {
+        private final History history;
+        private final int asOfWeekday;
+        private final double[] velocity;
+        private final int[] reorderPoint;
+        private final int[] orderUpTo;
+        private final int from;
+        private final int to;
+
+        private Forecast(History history, int asOfWeekday, double[] velocity, int[] reorderPoint, int[] orderUpTo,
+                int from, int to) {
+            this.history = history;
+            this.asOfWeekday = asOfWeekday;
+            this.velocity = velocity;
+            this.reorderPoint = reorderPoint;
+            this.orderUpTo = orderUpTo;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ITEMS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Forecast(history, asOfWeekday, velocity, reorderPoint, orderUpTo, from, middle),
+                        new Forecast(history, asOfWeekday, velocity, reorderPoint, orderUpTo, middle, to));
+                return;
+            }
+            double[] daily = new double[HISTORY_DAYS];
+            double[] weekday = new double[7];
+            for (int item = from; item < to; item++) {
+                forecastItem(item, daily, weekday);
+            }
+        }
+
+        private void forecastItem(int item, double[] daily, double[] weekday) {
+            // unpack the sparse history; index = days before asOf
+            Arrays.fill(daily, 0);
+            int days = 1;
+            for (int k = history.start[item]; k < history.start[item + 1]; k++) {
+                int daysAgo = history.daysAgo[k];
+                daily[daysAgo] = history.units[k];
+                days = Math.max(days, daysAgo + 1); // history starts at the first sale
+            }
+
+            // day-of-week profile: mean units per weekday over the overall mean
+            Arrays.fill(weekday, 1);
+            if (days >= SEASONAL_MIN_DAYS) {
+                double[] sum = new double[7];
+                int[] count = new int[7];
+                double total = 0;
+                for (int d = 0; d < days; d++) {
+                    int w = weekdayOf(d);
+                    sum[w] += daily[d];
+                    count[w]++;
+                    total += daily[d];
+                }
+                double mean = total / days;
+                if (mean > 0) {
+                    for (int w = 0; w < 7; w++) {
+                        weekday[w] = Math.min(4, Math.max(0.25, sum[w] / count[w] / mean));
+                    }
+                }
+            }
+
+            // velocity: EWMA of weekday-adjusted units, oldest to newest
+            int window = Math.min(days, 3 * VELOCITY_SPAN);
+            double level = 0;
+            for (int d = 0; d < window; d++) {
+                level += daily[d] / weekday[weekdayOf(d)];
+            }
+            level /= window;
+            for (int d = window - 1; d >= 0; d--) {
+                level += ALPHA * (daily[d] / weekday[weekdayOf(d)] - level);
+            }
+
+            // spread of the recent days around the forecast
+            int recent = Math.min(days, VELOCITY_SPAN);
+            double squares = 0;
+            for (int d = 0; d < recent; d++) {
+                double error = daily[d] - level * weekday[weekdayOf(d)];
+                squares += error * error;
+            }
+            double deviation = Math.sqrt(squares / recent);
+
+            double leadDemand = 0;
+            double coverDemand = 0;
+            for (int k = 1; k <= leadDays + REVIEW_DAYS; k++) {
+                double demand = level * weekday[Math.floorMod(asOfWeekday + k, 7)];
+                if (k <= leadDays) {
+                    leadDemand += demand;
+                }
+                coverDemand += demand;
+            }
+            velocity[item] = level;
+            reorderPoint[item] = (int) Math.ceil(leadDemand + SERVICE_FACTOR * deviation * Math.sqrt(leadDays));
+            orderUpTo[item] = (int) Math.ceil(coverDemand + SERVICE_FACTOR * deviation * Math.sqrt(leadDays + REVIEW_DAYS));
+        }
+
+        private int weekdayOf(int daysAgo) {
+            return Math.floorMod(asOfWeekday - daysAgo, 7);
+        }
+    }
+
+    /**
+     * Daily units of many items as compressed sparse rows: the sales of
+     * item i are entries start[i] to start[i + 1] - 1.
+     */
+    static final class History {
+        private final int[] itemIds;
+        private final int[] stock;
+        private final int[] start;
+        private final short[] daysAgo;
+        private final int[] units;
+
+        private History(int[] itemIds, int[] stock, int[] start, short[] daysAgo, int[] units) {
+            this.itemIds = itemIds;
+            this.stock = stock;
+            this.start = start;
+            this.daysAgo = daysAgo;
+            this.units = units;
+        }
+
+        int size() {
+            return itemIds.length;
+        }
+
+        /**
+         * Collects rows grouped by item; days outside the history window
+         * are ignored.
+         */
+        static final class Builder {
+            private int[] itemIds = new int[1024];
+            private int[] stock = new int[1024];
+            private int[] start = new int[1025];
+            private short[] daysAgo = new short[4096];
+            private int[] units = new int[4096];
+            private int items;
+            private int entries;
+
+            void add(int itemId, int stockQty, int daysBefore, long sold) {
+                if (daysBefore < 0 || daysBefore >= HISTORY_DAYS) {
+                    return;
+                }
+                if (items == 0 || itemIds[items - 1] != itemId) {
+                    if (items == itemIds.length) {
+                        itemIds = Arrays.copyOf(itemIds, items * 2);
+                        stock = Arrays.copyOf(stock, items * 2);
+                        start = Arrays.copyOf(start, items * 2 + 1);
+                    }
+                    itemIds[items] = itemId;
+                    stock[items] = stockQty;
+                    start[items] = entries;
+                    items++;
+                }
+                if (entries == units.length) {
+                    daysAgo = Arrays.copyOf(daysAgo, entries * 2);
+                    units = Arrays.copyOf(units, entries * 2);
+                }
+                daysAgo[entries] = (short) daysBefore;
+                units[entries] = (int) Math.min(Integer.MAX_VALUE, sold);
+                entries++;
+            }
+
+            History build() {
+                start[items] = entries;
+                return new History(Arrays.copyOf(itemIds, items), Arrays.copyOf(stock, items),
+                        Arrays.copyOf(start, items + 1), daysAgo, units);
+            }
+        }
+    }
+}
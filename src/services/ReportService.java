@@ -0,0 +1,164 @@
+package services;
+
+import com.itextpdf.layout.properties.TextAlignment;
+import dao.ReportDAO;
+import dao.SaleDAO;
+import model.SalesSummary;
+import utils.Money;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Service class for sales reports.
+ * Line reports are streamed from the database straight into the PDF, so
+ * their size is limited by disk, not by memory. Totals by day, item and
+ * category are read from the daily rollups, so they cost a few rows per
+ * day whatever the number of sales.
+ */
+public class ReportService {
+    private static final String[] LINE_COLUMNS = {"Sale", "Date", "Item ID", "Name", "Category", "Qty", "Tax Rate", "Tax", "Price"};
+    private static final float[] LINE_WIDTHS = {7, 16, 8, 18, 14, 7, 9, 9, 12};
+    private static final TextAlignment[] LINE_ALIGNMENT = {
+        TextAlignment.RIGHT, TextAlignment.LEFT, TextAlignment.RIGHT, TextAlignment.LEFT, TextAlignment.LEFT,
+        TextAlignment.RIGHT, TextAlignment.RIGHT, TextAlignment.RIGHT, TextAlignment.RIGHT
+    };
+
+    private static final long STORE_MAX_AGE_MILLIS = 10 * 60 * 1000;
+
+    private final SaleDAO saleDAO;
+    private final ReportDAO reportDAO;
+    private SalesColumnStore salesStore;
+    private LocalDate salesStoreFirst;
+    private long salesStoreLoadedAt;
+
+    public ReportService() {
+        this.saleDAO = new SaleDAO();
+        this.reportDAO = new ReportDAO();
+    }
+
+    /**
+     * Retrieves the totals of each day from first to last (inclusive) that
+     * had sales.
+     */
+    public List<SalesSummary> getDailySales(LocalDate first, LocalDate last) throws SQLException {
+        checkRange(first, last);
+        return reportDAO.getDailySales(first, last.plusDays(1));
+    }
+
+    /**
+     * Retrieves the totals of each item sold from first to last (inclusive),
+     * highest revenue first.
+     */
+    public List<SalesSummary> getItemSales(LocalDate first, LocalDate last) throws SQLException {
+        checkRange(first, last);
+        return reportDAO.getItemSales(first, last.plusDays(1));
+    }
+
+    /**
+     * Retrieves the totals of each category sold from first to last
+     * (inclusive), highest revenue first.
+     */
+    public List<SalesSummary> getCategorySales(LocalDate first, LocalDate last) throws SQLException {
+        checkRange(first, last);
+        return reportDAO.getCategorySales(first, last.plusDays(1));
+    }
+
+    /**
+     * Recomputes the rollups from first to last (inclusive) from the sale
+     * lines and returns the number of sales rolled up. Days already archived
+     * or dropped are skipped, keeping their rollups, including an archived
+     * day whose lines were only partly deleted.
+     */
+    public int rebuildRollups(LocalDate first, LocalDate last) throws SQLException, IOException {
+        checkRange(first, last);
+        Set<LocalDate> archivedDays = new HashSet<>(SalesArchiveService.getInstance().getArchivedDays());
+        return reportDAO.rebuild(first, last.plusDays(1), archivedDays);
+    }
+
+    /**
+     * Breaks down the sale lines sold from first to last (inclusive) by the
+     * dimension, optionally for one item (itemId != 0) or category (not
+     * null). Runs on an in-memory copy of the sales history, reloaded at
+     * most every ten minutes or when an earlier start date is asked for, so
+     * ad-hoc breakdowns do not load the database.
+     */
+    public List<SalesSummary> getSalesBreakdown(SalesColumnStore.Dimension dimension, LocalDate first, LocalDate last,
+            int itemId, String category) throws SQLException, IOException {
+        checkRange(first, last);
+        return getSalesStore(first).breakdown(dimension, first.atStartOfDay(), last.plusDays(1).atStartOfDay(),
+                itemId, category);
+    }
+
+    private synchronized SalesColumnStore getSalesStore(LocalDate first) throws SQLException, IOException {
+        if (salesStore == null || first.isBefore(salesStoreFirst)
+                || System.currentTimeMillis() - salesStoreLoadedAt > STORE_MAX_AGE_MILLIS) {
+            // release the old copy before loading the new one
+            salesStore = null;
+            salesStore = SalesColumnStore.load(SalesArchiveService.getInstance(), first, LocalDate.now());
+            salesStoreFirst = first;
+            salesStoreLoadedAt = System.currentTimeMillis();
+        }
+        return salesStore;
+    }
+
+    /**
+     * Counts today's sales into the tracker from the database.
+     */
+    public void reloadTopSellers(TopSellersTracker tracker) throws SQLException {
+        tracker.reload(saleDAO);
+    }
+
+    private void checkRange(LocalDate first, LocalDate last) {
+        if (first == null || last == null) {
+            throw new IllegalArgumentException("Dates cannot be empty");
+        }
+        if (last.isBefore(first)) {
+            throw new IllegalArgumentException("The end date cannot be before the start date");
+        }
+    }
+
+    /**
+     * Exports every sale line of a month, archived or not, to a PDF and
+     * returns the number of lines written.
+     */
+    public int exportSalesLines(YearMonth month, String pdfFilePath) throws SQLException, IOException {
+        if (month == null) {
+            throw new IllegalArgumentException("Month cannot be empty");
+        }
+        Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        long[] totals = new long[3]; // quantity, tax, net
+
+        try (ReportWriter writer = new ReportWriter(pdfFilePath, "Sales Lines " + month,
+                LINE_COLUMNS, LINE_WIDTHS, LINE_ALIGNMENT)) {
+            int lines = SalesArchiveService.getInstance().streamSaleLines(from, to, (salesId, saleDate, item) -> {
+                writer.addRow(
+                    String.valueOf(salesId),
+                    dateFormat.format(saleDate),
+                    String.valueOf(item.getItemId()),
+                    item.getName(),
+                    item.getCategory(),
+                    String.valueOf(item.getQuantity()),
+                    Money.formatRate(item.getTaxRate()),
+                    Money.format(item.getTax()),
+                    Money.format(item.getPrice())
+                );
+                totals[0] += item.getQuantity();
+                totals[1] += item.getTax();
+                totals[2] += item.getPrice();
+            });
+            writer.setSummary(lines + " lines, " + totals[0] + " units.  Tax : " + Money.format(totals[1])
+                    + "  Net : " + Money.format(totals[2]));
+            return lines;
+        }
+    }
+}
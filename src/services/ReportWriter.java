@@ -0,0 +1,96 @@
+package services;
+
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.properties.TextAlignment;
+import com.itextpdf.layout.properties.UnitValue;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Writes a tabular PDF report row by row in constant memory.
+ * The table is added in iText's large-table mode and flushed every fifty
+ * rows, so finished rows are laid out and written to disk instead of piling
+ * up in one Table object. The header row repeats on every page.
+ */
+public class ReportWriter implements AutoCloseable {
+    private static final int FLUSH_ROWS = 50;
+
+    private final PdfDocument pdf;
+    private final Document document;
+    private final Table table;
+    private final TextAlignment[] alignment;
+    private int pendingRows;
+    private long rows;
+    private String summary;
+
+    /**
+     * Starts a landscape A4 report. Column widths are relative.
+     */
+    public ReportWriter(String pdfFilePath, String title, String[] columns, float[] widths, TextAlignment[] alignment)
+            throws FileNotFoundException {
+        if (columns.length != widths.length || columns.length != alignment.length) {
+            throw new IllegalArgumentException("Every column needs a width and an alignment");
+        }
+        this.alignment = alignment.clone();
+        this.pdf = new PdfDocument(new PdfWriter(pdfFilePath));
+        this.document = new Document(pdf, PageSize.A4.rotate());
+        document.setMargins(20, 20, 20, 20);
+        document.add(new Paragraph(title).setFontSize(14).setTextAlignment(TextAlignment.CENTER));
+
+        this.table = new Table(UnitValue.createPercentArray(widths), true).useAllAvailableWidth();
+        table.setFontSize(9);
+        for (int i = 0; i < columns.length; i++) {
+            table.addHeaderCell(new Cell().add(new Paragraph(columns[i]).setBold()).setTextAlignment(alignment[i]));
+        }
+        document.add(table);
+    }
+
+    /**
+     * Appends a row; one value per column.
+     */
+    public void addRow(String... values) {
+        if (values.length != alignment.length) {
+            throw new IllegalArgumentException("Expected " + alignment.length + " values, got " + values.length);
+        }
+        for (int i = 0; i < values.length; i++) {
+            table.addCell(new Cell().add(new Paragraph(values[i] == null ? "" : values[i]))
+                    .setPaddingTop(1)
+                    .setPaddingBottom(1)
+                    .setTextAlignment(alignment[i]));
+        }
+        rows++;
+        if (++pendingRows == FLUSH_ROWS) {
+            table.flush();
+            pendingRows = 0;
+        }
+    }
+
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Sets a line printed below the table, e.g. totals.
+     */
+    public void setSummary(String summary) {
+        this.summary = summary;
+    }
+
+    /**
+     * Completes the table and closes the PDF.
+     */
+    @Override
+    public void close() {
+        table.complete();
+        if (summary != null) {
+            document.add(new Paragraph(summary).setTextAlignment(TextAlignment.RIGHT));
+        }
+        document.close();
+    }
+}
@@ -4,28 +4,92 @@ import dao.ProductDAO;
 import dao.SaleDAO;
 import model.Sale;
 import model.SaleItem;
+import utils.ReceiptCode;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Service class for Sale-related business logic.
  * Acts as an intermediary between Controllers and DAOs.
  */
 public class SaleService {
+    private static final Logger LOGGER = Logger.getLogger(SaleService.class.getName());
+    private static final int PARTITION_MONTHS_AHEAD = 3;
+
     private final SaleDAO saleDAO;
     private final ProductDAO productDAO;
+    private final TopSellersTracker topSellers;
+    private final LowStockTracker lowStock;
 
     public SaleService() {
         this.saleDAO = new SaleDAO();
         this.productDAO = new ProductDAO();
+        this.topSellers = TopSellersTracker.getInstance();
+        this.lowStock = LowStockTracker.getInstance();
     }
 
     /**
      * Creates a new sale and updates product quantities.
      */
     public int createSale(Sale sale, List<SaleItem> saleItems) throws SQLException {
-        // Validation
+        return createSale(sale, saleItems, null);
+    }
+
+    /**
+     * Creates a new sale and updates product quantities in one transaction.
+     * The listener is given the sale ID before the commit; see SaleDAO.
+     * Once committed, the sale is counted by the top sellers tracker and
+     * the decremented stock is passed to the low-stock tracker.
+     */
+    public int createSale(Sale sale, List<SaleItem> saleItems, IntConsumer onSaleId) throws SQLException {
+        validate(sale, saleItems);
+
+        // Create the sale, remembering which receipt layout it was printed with
+        sale.setReceiptVersion(ReceiptTemplate.VERSION);
+        int saleId = saleDAO.createSale(sale, saleItems, onSaleId);
+        sale.setSalesId(saleId);
+        for (SaleItem item : saleItems) {
+            item.setSalesId(saleId);
+        }
+        if (saleId > 0) {
+            topSellers.record(saleItems, System.currentTimeMillis());
+            trackStock(saleItems);
+        }
+        return saleId;
+    }
+
+    /**
+     * Reads back the stock of the items just sold for the low-stock
+     * tracker. The sale is already committed, so a failure here is only
+     * logged; the products are picked up again on their next change.
+     */
+    private void trackStock(List<SaleItem> saleItems) {
+        Set<Integer> itemIds = new LinkedHashSet<>();
+        for (SaleItem item : saleItems) {
+            itemIds.add(item.getItemId());
+        }
+        try {
+            lowStock.update(productDAO.getProductsByIds(new ArrayList<>(itemIds)));
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Could not read back stock after a sale", e);
+        }
+    }
+
+    /**
+     * Checks a sale before it is saved.
+     */
+    public void validate(Sale sale, List<SaleItem> saleItems) {
         if (sale.getTotal() < 0) {
             throw new IllegalArgumentException("Total cannot be negative");
         }
@@ -35,18 +99,43 @@ public class SaleService {
         if (saleItems == null || saleItems.isEmpty()) {
             throw new IllegalArgumentException("Sale must have at least one item");
         }
-
-        // Create the sale
-        int saleId = saleDAO.createSale(sale, saleItems);
-
-        // Update product quantities
         for (SaleItem item : saleItems) {
-            int itemId = Integer.parseInt(item.getItemId());
-            int quantity = Integer.parseInt(item.getQuantity());
-            productDAO.updateProductQuantity(itemId, quantity);
+            if (item.getQuantity() <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive for item " + item.getItemId());
+            }
         }
+    }
 
-        return saleId;
+    /**
+     * Retrieves the sales made from first to last (inclusive), without
+     * their items.
+     */
+    public List<Sale> getSales(LocalDate first, LocalDate last) throws SQLException {
+        if (first == null || last == null || last.isBefore(first)) {
+            throw new IllegalArgumentException("Enter a valid date range");
+        }
+        return saleDAO.getSales(Timestamp.valueOf(first.atStartOfDay()), Timestamp.valueOf(last.plusDays(1).atStartOfDay()));
+    }
+
+    /**
+     * Makes sure monthly sales partitions exist for the coming months, so
+     * new sales never land in the open-ended partition. Returns the months
+     * added.
+     */
+    public List<YearMonth> maintainPartitions() throws SQLException {
+        return saleDAO.addPartitions(YearMonth.now().plusMonths(PARTITION_MONTHS_AHEAD));
+    }
+
+    /**
+     * Deletes all sales and sale lines of the months before the given one by
+     * dropping their partitions. The current month can never be dropped.
+     * Returns the months dropped.
+     */
+    public List<YearMonth> purgeSalesBefore(YearMonth month) throws SQLException {
+        if (month == null || month.isAfter(YearMonth.now())) {
+            throw new IllegalArgumentException("Only past months can be purged");
+        }
+        return saleDAO.dropPartitionsBefore(month);
     }
 
     /**
@@ -55,4 +144,29 @@ public class SaleService {
     public Sale getSaleById(int salesId) throws SQLException {
         return saleDAO.getSaleById(salesId);
     }
+
+    /**
+     * Retrieves the sale and its lines for a scanned receipt barcode,
+     * looking in the sales archive if it is no longer in the database.
+     * Returns null if no such sale exists.
+     */
+    public Sale getSaleByReceiptCode(String code) throws SQLException {
+        return getSaleWithItems(ReceiptCode.decode(code));
+    }
+
+    /**
+     * Retrieves a sale and its lines, from the database or, once archived,
+     * from the sales archive. Returns null if no such sale exists.
+     */
+    public Sale getSaleWithItems(int salesId) throws SQLException {
+        Sale sale = saleDAO.getSaleWithItems(salesId);
+        if (sale == null) {
+            try {
+                sale = SalesArchiveService.getInstance().findSale(salesId);
+            } catch (IOException e) {
+                throw new SQLException("Could not read the sales archive: " + e.getMessage(), e);
+            }
+        }
+        return sale;
+    }
 }
@@ -0,0 +1,599 @@
+package services;
+
+import model.Sale;
+import model.SaleItem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed columnar files of archived sales, one file per month with one
+ * block per day.
+ *
+ * A day block holds the day's sales and lines column by column: sale IDs
+ * and times delta encoded, amounts as cents, item names and categories
+ * dictionary encoded. The block is deflated and written with a header
+ * carrying its CRC32. Each month file has an index file listing its days
+ * with their offset, length, CRC32, counts and sale ID range; the index is
+ * rewritten atomically after the block is forced to disk, so a day is
+ * either fully archived or not at all, and bytes past the last indexed
+ * block are cut off on the next append.
+ *
+ * Several workstations read the same archive directory while one of them
+ * appends to it, so the indexes are not only read at open: every lookup
+ * first re-reads the index of each month whose index file was added,
+ * resized, touched or removed since it was last read (a directory listing
+ * and one stat per month), and a day archived elsewhere is seen by the
+ * next lookup.
+ *
+ * Block layout: magic, epoch day, raw length, stored length (four ints),
+ * CRC32 of the stored bytes (long), followed by the deflated columns.
+ */
+public class SalesArchive {
+    private static final int MAGIC = 0x53414C45; // "SALE"
+    private static final int INDEX_MAGIC = 0x53494458; // "SIDX"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+    private static final String PREFIX = "sales-";
+    private static final String DATA_SUFFIX = ".col";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private final Path directory;
+    private final TreeMap<LocalDate, Day> days = new TreeMap<>();
+    private final Map<YearMonth, Stamp> stamps = new HashMap<>();
+
+    /**
+     * Opens (or creates) the archive in a directory and reads its indexes.
+     */
+    public SalesArchive(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        synchronized (this) {
+            refresh();
+        }
+    }
+
+    /**
+     * Returns the archived days, oldest first.
+     */
+    public synchronized List<LocalDate> getDays() throws IOException {
+        refresh();
+        return new ArrayList<>(days.keySet());
+    }
+
+    public synchronized boolean contains(LocalDate day) throws IOException {
+        refresh();
+        return days.containsKey(day);
+    }
+
+    /**
+     * Returns the number of sales archived for a day, or 0.
+     */
+    public synchronized int getSaleCount(LocalDate day) throws IOException {
+        refresh();
+        Day entry = days.get(day);
+        return entry == null ? 0 : entry.sales;
+    }
+
+    /**
+     * Archives one day of sales, each with its items and sale date. The day
+     * must not be archived yet. Returns once the block and index are on disk.
+     */
+    public synchronized void append(LocalDate day, List<Sale> sales) throws IOException {
+        refresh();
+        if (days.containsKey(day)) {
+            throw new IllegalArgumentException(day + " is already archived");
+        }
+        byte[] raw = encode(day, sales);
+        byte[] stored = deflate(raw);
+        CRC32 crc = new CRC32();
+        crc.update(stored);
+
+        YearMonth month = YearMonth.from(day);
+        List<Day> monthDays = monthDays(month);
+        long offset = 0;
+        for (Day monthDay : monthDays) {
+            offset = Math.max(offset, monthDay.end());
+        }
+
+        try (FileChannel channel = FileChannel.open(dataFile(month),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(offset); // drop a block whose index update never happened
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt((int) day.toEpochDay()).putInt(raw.length).putInt(stored.length)
+                    .putLong(crc.getValue()).flip();
+            long position = offset;
+            position += writeFully(channel, header, position);
+            writeFully(channel, ByteBuffer.wrap(stored), position);
+            channel.force(true);
+        }
+
+        int firstSaleId = Integer.MAX_VALUE;
+        int lastSaleId = Integer.MIN_VALUE;
+        int lines = 0;
+        for (Sale sale : sales) {
+            firstSaleId = Math.min(firstSaleId, sale.getSalesId());
+            lastSaleId = Math.max(lastSaleId, sale.getSalesId());
+            lines += sale.getItems().size();
+        }
+        Day entry = new Day(day, offset, HEADER_BYTES + stored.length, crc.getValue(), sales.size(), lines,
+                sales.isEmpty() ? 0 : firstSaleId, sales.isEmpty() ? 0 : lastSaleId);
+        monthDays.add(entry);
+        writeIndex(month, monthDays);
+        days.put(day, entry);
+    }
+
+    /**
+     * Reads back an archived day's sales with their items, in sale order;
+     * null if the day is not archived. Fails if the block is corrupt.
+     */
+    public List<Sale> read(LocalDate day) throws IOException {
+        Day entry;
+        synchronized (this) {
+            entry = days.get(day);
+            if (entry == null) {
+                refresh();
+                entry = days.get(day);
+            }
+        }
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer block = ByteBuffer.allocate(entry.length);
+        try (FileChannel channel = FileChannel.open(dataFile(YearMonth.from(day)), StandardOpenOption.READ)) {
+            while (block.hasRemaining()) {
+                if (channel.read(block, entry.offset + block.position()) < 0) {
+                    throw new IOException("Archive of " + day + " is truncated");
+                }
+            }
+        }
+        block.flip();
+        if (block.getInt() != MAGIC || block.getInt() != (int) day.toEpochDay()) {
+            throw new IOException("Archive of " + day + " has a bad header");
+        }
+        int rawLength = block.getInt();
+        int storedLength = block.getInt();
+        long expectedCrc = block.getLong();
+        byte[] stored = new byte[storedLength];
+        block.get(stored);
+        CRC32 crc = new CRC32();
+        crc.update(stored);
+        if (crc.getValue() != expectedCrc || expectedCrc != entry.crc) {
+            throw new IOException("Archive of " + day + " is corrupt (checksum mismatch)");
+        }
+        return decode(day, inflate(stored, rawLength));
+    }
+
+    /**
+     * Finds an archived sale by ID using the days' sale ID ranges; null if
+     * it is not archived.
+     */
+    public Sale findSale(int salesId) throws IOException {
+        List<LocalDate> candidates = new ArrayList<>();
+        synchronized (this) {
+            refresh();
+            for (Day day : days.values()) {
+                if (day.sales > 0 && salesId >= day.firstSaleId && salesId <= day.lastSaleId) {
+                    candidates.add(day.date);
+                }
+            }
+        }
+        for (LocalDate day : candidates) {
+            for (Sale sale : read(day)) {
+                if (sale.getSalesId() == salesId) {
+                    return sale;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Re-reads the index of every month whose index file was added, changed
+     * or removed since it was last read. Called with the lock held.
+     */
+    private void refresh() throws IOException {
+        Map<YearMonth, Stamp> seen = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + INDEX_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                YearMonth month = YearMonth.parse(name.substring(PREFIX.length(), name.length() - INDEX_SUFFIX.length()));
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                Stamp stamp = new Stamp(attributes.size(), attributes.lastModifiedTime().toMillis());
+                seen.put(month, stamp);
+                if (!stamp.equals(stamps.get(month))) {
+                    replaceMonth(month, readIndex(file));
+                }
+            }
+        }
+        for (YearMonth month : stamps.keySet()) {
+            if (!seen.containsKey(month)) {
+                replaceMonth(month, new ArrayList<>());
+            }
+        }
+        stamps.clear();
+        stamps.putAll(seen);
+    }
+
+    private void replaceMonth(YearMonth month, List<Day> monthDays) {
+        days.subMap(month.atDay(1), true, month.atEndOfMonth(), true).clear();
+        for (Day day : monthDays) {
+            days.put(day.date, day);
+        }
+    }
+
+    private List<Day> monthDays(YearMonth month) {
+        List<Day> monthDays = new ArrayList<>();
+        for (Day day : days.subMap(month.atDay(1), true, month.atEndOfMonth(), true).values()) {
+            monthDays.add(day);
+        }
+        return monthDays;
+    }
+
+    private Path dataFile(YearMonth month) {
+        return directory.resolve(PREFIX + month + DATA_SUFFIX);
+    }
+
+    private Path indexFile(YearMonth month) {
+        return directory.resolve(PREFIX + month + INDEX_SUFFIX);
+    }
+
+    private void writeIndex(YearMonth month, List<Day> monthDays) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(monthDays.size());
+            for (Day day : monthDays) {
+                out.writeInt((int) day.date.toEpochDay());
+                out.writeLong(day.offset);
+                out.writeInt(day.length);
+                out.writeLong(day.crc);
+                out.writeInt(day.sales);
+                out.writeInt(day.lines);
+                out.writeInt(day.firstSaleId);
+                out.writeInt(day.lastSaleId);
+            }
+        }
+        Path temp = indexFile(month).resolveSibling(indexFile(month).getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()), 0);
+            channel.force(true);
+        }
+        Files.move(temp, indexFile(month), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static List<Day> readIndex(Path file) throws IOException {
+        List<Day> entries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                throw new IOException(file + " is not a sales archive index");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                entries.add(new Day(LocalDate.ofEpochDay(in.readInt()), in.readLong(), in.readInt(), in.readLong(),
+                        in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+            }
+        }
+        return entries;
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static byte[] encode(LocalDate day, List<Sale> sales) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> words = new ArrayList<>();
+        int lines = 0;
+        for (Sale sale : sales) {
+            for (SaleItem item : sale.getItems()) {
+                code(item.getName(), dictionary, words);
+                code(item.getCategory(), dictionary, words);
+                lines++;
+            }
+        }
+        long dayStart = day.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + sales.size() * 48 + lines * 40);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(sales.size());
+            out.writeInt(lines);
+            out.writeInt(words.size());
+            for (String word : words) {
+                out.writeUTF(word);
+            }
+
+            // sale columns
+            int previousId = 0;
+            for (Sale sale : sales) {
+                out.writeInt(sale.getSalesId() - previousId);
+                previousId = sale.getSalesId();
+            }
+            int previousSecond = 0;
+            for (Sale sale : sales) {
+                int second = (int) (sale.getSaleDate().toEpochSecond(ZoneOffset.UTC) - dayStart);
+                out.writeInt(second - previousSecond);
+                previousSecond = second;
+            }
+            for (Sale sale : sales) {
+                out.writeLong(sale.getTotal());
+            }
+            for (Sale sale : sales) {
+                out.writeLong(sale.getTax());
+            }
+            for (Sale sale : sales) {
+                out.writeLong(sale.getPayment());
+            }
+            for (Sale sale : sales) {
+                out.writeLong(sale.getBalance());
+            }
+            for (Sale sale : sales) {
+                out.writeShort(sale.getReceiptVersion());
+            }
+            for (Sale sale : sales) {
+                out.writeInt(sale.getItems().size());
+            }
+
+            // line columns, in sale order
+            for (Sale sale : sales) {
+                for (SaleItem item : sale.getItems()) {
+                    out.writeInt(item.getItemId());
+                }
+            }
+            for (Sale sale : sales) {
+                for (SaleItem item : sale.getItems()) {
+                    out.writeInt(item.getQuantity());
+                }
+            }
+            for (Sale sale : sales) {
+                for (SaleItem item : sale.getItems()) {
+                    out.writeLong(item.getPrice());
+                }
+            }
+            for (Sale sale : sales) {
+                for (SaleItem item : sale.getItems()) {
+                    out.writeInt(item.getTaxRate());
+                }
+            }
+            for (Sale sale : sales) {
+                for (SaleItem item : sale.getItems()) {
+                    out.writeLong(item.getTax());
+                }
+            }
+            for (Sale sale : sales) {
+                for (SaleItem item : sale.getItems()) {
+                    out.writeInt(code(item.getName(), dictionary, words));
+                }
+            }
+            for (Sale sale : sales) {
+                for (SaleItem item : sale.getItems()) {
+                    out.writeInt(code(item.getCategory(), dictionary, words));
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int code(String word, Map<String, Integer> dictionary, List<String> words) {
+        if (word == null) {
+            return -1;
+        }
+        Integer code = dictionary.get(word);
+        if (code == null) {
+            code = words.size();
+            dictionary.put(word, code);
+            words.add(word);
+        }
+        return code;
+    }
+
+    private static List<Sale> decode(LocalDate day, byte[] raw) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Archive of " + day + " has an unknown format");
+            }
+            int saleCount = in.readInt();
+            int lineCount = in.readInt();
+            String[] words = new String[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readUTF();
+            }
+
+            Sale[] sales = new Sale[saleCount];
+            int salesId = 0;
+            for (int i = 0; i < saleCount; i++) {
+                salesId += in.readInt();
+                sales[i] = new Sale();
+                sales[i].setSalesId(salesId);
+            }
+            LocalDateTime dayStart = day.atStartOfDay();
+            int second = 0;
+            for (Sale sale : sales) {
+                second += in.readInt();
+                sale.setSaleDate(dayStart.plusSeconds(second));
+            }
+            for (Sale sale : sales) {
+                sale.setTotal(in.readLong());
+            }
+            for (Sale sale : sales) {
+                sale.setTax(in.readLong());
+            }
+            for (Sale sale : sales) {
+                sale.setPayment(in.readLong());
+            }
+            for (Sale sale : sales) {
+                sale.setBalance(in.readLong());
+            }
+            for (Sale sale : sales) {
+                sale.setReceiptVersion(in.readShort());
+            }
+            int[] itemCounts = new int[saleCount];
+            for (int i = 0; i < saleCount; i++) {
+                itemCounts[i] = in.readInt();
+            }
+
+            SaleItem[] items = new SaleItem[lineCount];
+            int line = 0;
+            for (int i = 0; i < saleCount; i++) {
+                for (int j = 0; j < itemCounts[i]; j++) {
+                    items[line] = new SaleItem();
+                    items[line].setSalesId(sales[i].getSalesId());
+                    sales[i].getItems().add(items[line]);
+                    line++;
+                }
+            }
+            for (SaleItem item : items) {
+                item.setItemId(in.readInt());
+            }
+            for (SaleItem item : items) {
+                item.setQuantity(in.readInt());
+            }
+            for (SaleItem item : items) {
+                item.setPrice(in.readLong());
+            }
+            for (SaleItem item : items) {
+                item.setTaxRate(in.readInt());
+            }
+            for (SaleItem item : items) {
+                item.setTax(in.readLong());
+            }
+            for (SaleItem item : items) {
+                int code = in.readInt();
+                item.setName(code < 0 ? null : words[code]);
+            }
+            for (SaleItem item : items) {
+                int code = in.readInt();
+                item.setCategory(code < 0 ? null : words[code]);
+            }
+
+            List<Sale> result = new ArrayList<>(saleCount);
+            for (Sale sale : sales) {
+                result.add(sale);
+            }
+            return result;
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+            byte[] chunk = new byte[16 * 1024];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] stored, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, length, rawLength - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != rawLength) {
+                throw new IOException("Archive block is truncated");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Archive block is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Size and modification time of a month index when it was last read.
+     */
+    private static final class Stamp {
+        private final long size;
+        private final long modifiedMillis;
+
+        private Stamp(long size, long modifiedMillis) {
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Stamp && ((Stamp) other).size == size
+                    && ((Stamp) other).modifiedMillis == modifiedMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + Long.hashCode(modifiedMillis);
+        }
+    }
+
+    /**
+     * Index entry of one archived day.
+     */
+    private static final class Day {
+        private final LocalDate date;
+        private final long offset;
+        private final int length;
+        private final long crc;
+        private final int sales;
+        private final int lines;
+        private final int firstSaleId;
+        private final int lastSaleId;
+
+        private Day(LocalDate date, long offset, int length, long crc, int sales, int lines, int firstSaleId, int lastSaleId) {
+            this.date = date;
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+            this.sales = sales;
+            this.lines = lines;
+            this.firstSaleId = firstSaleId;
+            this.lastSaleId = lastSaleId;
+        }
+
+        private long end() {
+            return offset + length;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package services;
+
+import dao.SaleDAO;
+import model.Sale;
+import model.SaleItem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Service class moving closed days of sales out of the hot tables into the
+ * sales archive, and reading sales history from both.
+ *
+ * The archival job takes each day older than the retention period, streams
+ * its sales and lines out of MySQL, appends them to the archive, reads the
+ * block back to check it, and only then deletes the day from sales and
+ * saleitems in small chunks. A day found already archived (the previous run
+ * stopped before deleting) is only deleted. The job runs nightly on the
+ * machine started with -Distore.salesArchive.schedule=true.
+ *
+ * Readers use streamSaleLines and findSale, which serve archived days from
+ * the archive and the rest from the database, so reports do not need to
+ * know where a day lives. That only holds if every workstation reads the
+ * same archive, so days are only archived and deleted once
+ * istore.salesArchive points at storage shared by all of them and
+ * -Distore.salesArchive.shared=true says so; otherwise the job refuses to
+ * run rather than hide those days from every other machine.
+ */
+public class SalesArchiveService {
+    private static final Logger LOGGER = Logger.getLogger(SalesArchiveService.class.getName());
+
+    private static final int DELETE_CHUNK = 1000;
+    private static final int DEFAULT_KEEP_DAYS = 90;
+    private static final LocalTime RUN_AT = LocalTime.of(2, 30);
+
+    private static SalesArchiveService instance;
+
+    private final SaleDAO saleDAO;
+    private final SalesArchive archive;
+    private final int keepDays;
+    private final boolean shared;
+    private ScheduledExecutorService scheduler;
+
+    public SalesArchiveService(SalesArchive archive, int keepDays, boolean shared) {
+        if (keepDays < 1) {
+            throw new IllegalArgumentException("At least today must stay in the hot tables");
+        }
+        this.saleDAO = new SaleDAO();
+        this.archive = archive;
+        this.keepDays = keepDays;
+        this.shared = shared;
+    }
+
+    /**
+     * Returns the archive service of this application. The archive lives in
+     * the directory named by istore.salesArchive (default ~/istore/sales) and
+     * days older than istore.salesArchive.keepDays (default 90) are archived,
+     * provided istore.salesArchive.shared is true.
+     */
+    public static synchronized SalesArchiveService getInstance() throws IOException {
+        if (instance == null) {
+            String directory = System.getProperty("istore.salesArchive", System.getProperty("user.home") + "/istore/sales");
+            int keepDays = Integer.getInteger("istore.salesArchive.keepDays", DEFAULT_KEEP_DAYS);
+            instance = new SalesArchiveService(new SalesArchive(Path.of(directory)), keepDays,
+                    Boolean.getBoolean("istore.salesArchive.shared"));
+        }
+        return instance;
+    }
+
+    /**
+     * Starts the nightly archival job if this machine is configured to run
+     * it and the archive is shared; does nothing otherwise.
+     */
+    public synchronized void scheduleIfEnabled() {
+        if (scheduler != null || !Boolean.getBoolean("istore.salesArchive.schedule")) {
+            return;
+        }
+        if (!shared) {
+            LOGGER.warning("Sales archival is not scheduled: istore.salesArchive must name storage shared by all "
+                    + "workstations and istore.salesArchive.shared must be true");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sales-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(RUN_AT);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                int days = archiveClosedDays();
+                LOGGER.info("Archived " + days + " days of sales");
+            } catch (SQLException | IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Sales archival failed; it will be retried on the next run", e);
+            }
+        }, Duration.between(now, next).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Archives and deletes every day of sales older than the retention
+     * period, oldest first. Returns the number of days archived. Refuses
+     * with IllegalStateException unless the archive is shared.
+     */
+    public synchronized int archiveClosedDays() throws SQLException, IOException {
+        if (!shared) {
+            throw new IllegalStateException("The sales archive is not on shared storage; archived days would be "
+                    + "lost to every other workstation");
+        }
+        LocalDate cutoff = LocalDate.now().minusDays(keepDays - 1L);
+        int archived = 0;
+        Timestamp first = saleDAO.getFirstSaleDate(Timestamp.valueOf(LocalDate.of(1970, 1, 2).atStartOfDay()));
+        while (first != null) {
+            LocalDate day = first.toLocalDateTime().toLocalDate();
+            if (!day.isBefore(cutoff)) {
+                break;
+            }
+            Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+            Timestamp to = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+
+            if (!archive.contains(day)) {
+                List<Sale> sales = new ArrayList<>();
+                saleDAO.streamSales(from, to, sales::add);
+                archive.append(day, sales);
+                verify(day, sales);
+                archived++;
+            }
+            saleDAO.deleteSales(from, to, DELETE_CHUNK);
+            first = saleDAO.getFirstSaleDate(to);
+        }
+        return archived;
+    }
+
+    private void verify(LocalDate day, List<Sale> sales) throws IOException {
+        List<Sale> stored = archive.read(day);
+        if (stored.size() != sales.size()) {
+            throw new IOException("Archive of " + day + " holds " + stored.size() + " sales, expected " + sales.size());
+        }
+        for (int i = 0; i < sales.size(); i++) {
+            Sale expected = sales.get(i);
+            Sale actual = stored.get(i);
+            if (actual.getSalesId() != expected.getSalesId() || actual.getTotal() != expected.getTotal()
+                    || actual.getItems().size() != expected.getItems().size()) {
+                throw new IOException("Archive of " + day + " does not match sale #" + expected.getSalesId());
+            }
+        }
+    }
+
+    /**
+     * Streams every sale line sold in [from, to) to the handler, in sale
+     * order: archived days first, read from the archive, then the rest from
+     * the database. Returns the number of lines.
+     */
+    public int streamSaleLines(Timestamp from, Timestamp to, SaleDAO.SaleLineHandler handler)
+            throws SQLException, IOException {
+        LocalDateTime start = from.toLocalDateTime();
+        LocalDateTime end = to.toLocalDateTime();
+        int count = 0;
+        // one listing for both passes, so each day is served from exactly one place
+        List<LocalDate> days = archive.getDays();
+        Set<LocalDate> archivedDays = new HashSet<>(days);
+        for (LocalDate day : days) {
+            if (day.isBefore(start.toLocalDate()) || !day.atStartOfDay().isBefore(end)) {
+                continue;
+            }
+            for (Sale sale : archive.read(day)) {
+                if (sale.getSaleDate().isBefore(start) || !sale.getSaleDate().isBefore(end)) {
+                    continue;
+                }
+                Timestamp saleDate = Timestamp.valueOf(sale.getSaleDate());
+                for (SaleItem item : sale.getItems()) {
+                    handler.handle(sale.getSalesId(), saleDate, item);
+                    count++;
+                }
+            }
+        }
+
+        // a day still in the tables after it was archived is served from the archive
+        int[] fromDatabase = new int[1];
+        saleDAO.streamSaleLines(from, to, (salesId, saleDate, item) -> {
+            if (!archivedDays.contains(saleDate.toLocalDateTime().toLocalDate())) {
+                handler.handle(salesId, saleDate, item);
+                fromDatabase[0]++;
+            }
+        });
+        return count + fromDatabase[0];
+    }
+
+    /**
+     * Returns the archived days, oldest first.
+     */
+    public List<LocalDate> getArchivedDays() throws IOException {
+        return archive.getDays();
+    }
+
+    /**
+     * Retrieves an archived sale with its items; null if it is not archived.
+     */
+    public Sale findSale(int salesId) throws IOException {
+        return archive.findSale(salesId);
+    }
+}
@@ -0,0 +1,474 @@
+package services;
+
+import model.SalesSummary;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * In-memory column store of sale lines for ad-hoc sales breakdowns.
+ *
+ * Lines are loaded once from the database and kept in blocks of parallel
+ * primitive arrays, one array per column, in sale order (and so in time
+ * order). Items and categories are dictionary encoded, and the sale time is
+ * kept as local wall-clock minutes so hour and day come out with integer
+ * arithmetic. Each block knows its time range, so blocks outside a query's
+ * range are skipped without being read. Queries scan the blocks in parallel
+ * with fork-join, aggregating into dense arrays indexed by group, and merge
+ * the partial results.
+ *
+ * A sale never spans two blocks, and every line carries flags marking the
+ * first line of its sale and the first line of its category within the
+ * sale, so transaction counts need no distinct counting.
+ *
+ * The store is immutable once loaded and safe to query from many threads.
+ * It takes 26 bytes per line, about 1.3 GB for 50 million lines.
+ */
+public class SalesColumnStore {
+    static final int BLOCK_ROWS = 1 << 16;
+    static final int MAX_BASKET = 20;
+
+    private static final byte FIRST_IN_SALE = 1;
+    private static final byte FIRST_IN_CATEGORY = 2;
+
+    /**
+     * What a breakdown groups by. Hour and day are local time; basket size
+     * is the number of lines on the sale, with MAX_BASKET and above grouped
+     * together.
+     */
+    public enum Dimension {
+        ITEM, CATEGORY, HOUR, DAY, BASKET_SIZE
+    }
+
+    private final List<Block> blocks;
+    private final int[] itemIds;
+    private final String[] itemNames;
+    private final String[] categories;
+    private final Map<Integer, Integer> itemCodes;
+    private final Map<String, Integer> categoryCodes;
+    private final long rows;
+    private final int firstDay;
+    private final int lastDay;
+    private final ForkJoinPool pool;
+
+    private SalesColumnStore(Builder builder, ForkJoinPool pool) {
+        this.blocks = builder.blocks;
+        this.itemIds = builder.itemIds.stream().mapToInt(Integer::intValue).toArray();
+        this.itemNames = builder.itemNames.toArray(new String[0]);
+        this.categories = builder.categories.toArray(new String[0]);
+        this.itemCodes = builder.itemCodes;
+        this.categoryCodes = builder.categoryCodes;
+        this.rows = builder.rows;
+        int minMinute = Integer.MAX_VALUE;
+        int maxMinute = Integer.MIN_VALUE;
+        for (Block block : blocks) {
+            minMinute = Math.min(minMinute, block.minMinute);
+            maxMinute = Math.max(maxMinute, block.maxMinute);
+        }
+        this.firstDay = blocks.isEmpty() ? 0 : Math.floorDiv(minMinute, 1440);
+        this.lastDay = blocks.isEmpty() ? 0 : Math.floorDiv(maxMinute, 1440);
+        this.pool = pool;
+    }
+
+    /**
+     * Loads every sale line sold from first to last (inclusive, local
+     * dates), archived or not. Lines are streamed, so only the store itself
+     * is held in memory.
+     */
+    public static SalesColumnStore load(SalesArchiveService history, LocalDate first, LocalDate last)
+            throws SQLException, IOException {
+        Builder builder = new Builder();
+        history.streamSaleLines(Timestamp.valueOf(first.atStartOfDay()), Timestamp.valueOf(last.plusDays(1).atStartOfDay()),
+                (salesId, saleDate, item) -> builder.add(salesId, saleDate.toLocalDateTime(), item.getItemId(),
+                        item.getName(), item.getCategory(), item.getQuantity(), item.getPrice(), item.getTax()));
+        return builder.build(ForkJoinPool.commonPool());
+    }
+
+    public long getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Breaks down the lines sold in [from, to) by the dimension. A null
+     * bound is open; itemId 0 and a null category mean any. Item and
+     * category groups come highest revenue first, the others in order.
+     */
+    public List<SalesSummary> breakdown(Dimension dimension, LocalDateTime from, LocalDateTime to,
+            int itemId, String category) {
+        int fromMinute = from == null ? Integer.MIN_VALUE : toMinute(from);
+        int toMinute = to == null ? Integer.MAX_VALUE : toMinute(to);
+        int itemCode = -1;
+        if (itemId != 0) {
+            Integer code = itemCodes.get(itemId);
+            if (code == null) {
+                return new ArrayList<>();
+            }
+            itemCode = code;
+        }
+        int categoryCode = -1;
+        if (category != null) {
+            Integer code = categoryCodes.get(category);
+            if (code == null) {
+                return new ArrayList<>();
+            }
+            categoryCode = code;
+        }
+
+        // a transaction is counted once per sale, per category or per line,
+        // whichever is the finest level the query looks at
+        byte countFlag;
+        if (dimension == Dimension.ITEM || itemCode >= 0) {
+            countFlag = 0;
+        } else if (dimension == Dimension.CATEGORY || categoryCode >= 0) {
+            countFlag = FIRST_IN_CATEGORY;
+        } else {
+            countFlag = FIRST_IN_SALE;
+        }
+
+        Query query = new Query(dimension, groupCount(dimension), fromMinute, toMinute, itemCode, categoryCode, countFlag);
+        Totals totals = blocks.isEmpty() ? new Totals(query.groups) : pool.invoke(new Scan(query, 0, blocks.size()));
+        return toSummaries(dimension, totals);
+    }
+
+    private int groupCount(Dimension dimension) {
+        switch (dimension) {
+            case ITEM:
+                return itemIds.length;
+            case CATEGORY:
+                return categories.length;
+            case HOUR:
+                return 24;
+            case DAY:
+                return lastDay - firstDay + 1;
+            default:
+                return MAX_BASKET + 1;
+        }
+    }
+
+    private List<SalesSummary> toSummaries(Dimension dimension, Totals totals) {
+        List<SalesSummary> summaries = new ArrayList<>();
+        for (int group = 0; group < totals.units.length; group++) {
+            if (totals.lines[group] == 0) {
+                continue;
+            }
+            LocalDate day = null;
+            String label;
+            switch (dimension) {
+                case ITEM:
+                    label = itemIds[group] + " " + itemNames[group];
+                    break;
+                case CATEGORY:
+                    label = categories[group];
+                    break;
+                case HOUR:
+                    label = String.format("%02d:00", group);
+                    break;
+                case DAY:
+                    day = LocalDate.ofEpochDay(firstDay + group);
+                    label = day.toString();
+                    break;
+                default:
+                    label = group == MAX_BASKET ? MAX_BASKET + "+ lines" : group + (group == 1 ? " line" : " lines");
+                    break;
+            }
+            summaries.add(new SalesSummary(day, label, (int) totals.transactions[group], totals.units[group],
+                    totals.revenue[group], totals.tax[group]));
+        }
+        if (dimension == Dimension.ITEM || dimension == Dimension.CATEGORY) {
+            summaries.sort(Comparator.comparingLong(SalesSummary::getRevenue).reversed());
+        }
+        return summaries;
+    }
+
+    private static int toMinute(LocalDateTime time) {
+        return (int) Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    /**
+     * One block of lines; all arrays are indexed by row.
+     */
+    private static final class Block {
+        private final int[] minute;
+        private final int[] item;
+        private final int[] category;
+        private final int[] quantity;
+        private final int[] revenue;
+        private final int[] tax;
+        private final byte[] basket;
+        private final byte[] flags;
+        private int size;
+        private int minMinute = Integer.MAX_VALUE;
+        private int maxMinute = Integer.MIN_VALUE;
+
+        private Block(int capacity) {
+            minute = new int[capacity];
+            item = new int[capacity];
+            category = new int[capacity];
+            quantity = new int[capacity];
+            revenue = new int[capacity];
+            tax = new int[capacity];
+            basket = new byte[capacity];
+            flags = new byte[capacity];
+        }
+    }
+
+    private static final class Query {
+        private final Dimension dimension;
+        private final int groups;
+        private final int fromMinute;
+        private final int toMinute;
+        private final int itemCode;
+        private final int categoryCode;
+        private final byte countFlag;
+
+        private Query(Dimension dimension, int groups, int fromMinute, int toMinute, int itemCode, int categoryCode,
+                byte countFlag) {
+            this.dimension = dimension;
+            this.groups = groups;
+            this.fromMinute = fromMinute;
+            this.toMinute = toMinute;
+            this.itemCode = itemCode;
+            this.categoryCode = categoryCode;
+            this.countFlag = countFlag;
+        }
+    }
+
+    private static final class Totals {
+        private final long[] lines;
+        private final long[] transactions;
+        private final long[] units;
+        private final long[] revenue;
+        private final long[] tax;
+
+        private Totals(int groups) {
+            lines = new long[groups];
+            transactions = new long[groups];
+            units = new long[groups];
+            revenue = new long[groups];
+            tax = new long[groups];
+        }
+
+        private Totals add(Totals other) {
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] += other.lines[i];
+                transactions[i] += other.transactions[i];
+                units[i] += other.units[i];
+                revenue[i] += other.revenue[i];
+                tax[i] += other.tax[i];
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Scans a range of blocks, splitting down to one block per task.
+     */
+    private final class Scan extends RecursiveTask<Totals> {
+        private final Query query;
+        private final int from;
+        private final int to;
+
+        private Scan(Query query, int from, int to) {
+            this.query = query;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from == 1) {
+                Totals totals = new Totals(query.groups);
+                scan(blocks.get(from), totals);
+                return totals;
+            }
+            int middle = (from + to) >>> 1;
+            Scan right = new Scan(query, middle, to);
+            right.fork();
+            Totals left = new Scan(query, from, middle).compute();
+            return left.add(right.join());
+        }
+
+        private void scan(Block block, Totals totals) {
+            if (block.maxMinute < query.fromMinute || block.minMinute >= query.toMinute) {
+                return;
+            }
+            // the whole block is in range: skip the per-row time test
+            boolean allInRange = block.minMinute >= query.fromMinute && block.maxMinute < query.toMinute;
+            int[] minute = block.minute;
+            int[] item = block.item;
+            int[] category = block.category;
+            int[] quantity = block.quantity;
+            int[] revenue = block.revenue;
+            int[] tax = block.tax;
+            byte[] basket = block.basket;
+            byte[] flags = block.flags;
+            int itemCode = query.itemCode;
+            int categoryCode = query.categoryCode;
+            byte countFlag = query.countFlag;
+            Dimension dimension = query.dimension;
+
+            for (int row = 0; row < block.size; row++) {
+                if (!allInRange && (minute[row] < query.fromMinute || minute[row] >= query.toMinute)) {
+                    continue;
+                }
+                if (itemCode >= 0 && item[row] != itemCode) {
+                    continue;
+                }
+                if (categoryCode >= 0 && category[row] != categoryCode) {
+                    continue;
+                }
+                int group;
+                switch (dimension) {
+                    case ITEM:
+                        group = item[row];
+                        break;
+                    case CATEGORY:
+                        group = category[row];
+                        break;
+                    case HOUR:
+                        group = Math.floorMod(minute[row], 1440) / 60;
+                        break;
+                    case DAY:
+                        group = Math.floorDiv(minute[row], 1440) - firstDay;
+                        break;
+                    default:
+                        group = basket[row];
+                        break;
+                }
+                totals.lines[group]++;
+                if (countFlag == 0 || (flags[row] & countFlag) != 0) {
+                    totals.transactions[group]++;
+                }
+                totals.units[group] += quantity[row];
+                totals.revenue[group] += revenue[row];
+                totals.tax[group] += tax[row];
+            }
+        }
+    }
+
+    /**
+     * Appends lines to blocks. Lines must come grouped by sale; each sale
+     * is held back until its last line so it lands in a single block.
+     */
+    static final class Builder {
+        private final List<Block> blocks = new ArrayList<>();
+        private final List<Integer> itemIds = new ArrayList<>();
+        private final List<String> itemNames = new ArrayList<>();
+        private final List<String> categories = new ArrayList<>();
+        private final Map<Integer, Integer> itemCodes = new HashMap<>();
+        private final Map<String, Integer> categoryCodes = new HashMap<>();
+        private Block current;
+        private long rows;
+
+        // the sale being collected
+        private int saleId = -1;
+        private int saleMinute;
+        private int pending;
+        private int[] pendingItem = new int[16];
+        private int[] pendingCategory = new int[16];
+        private int[] pendingQuantity = new int[16];
+        private int[] pendingRevenue = new int[16];
+        private int[] pendingTax = new int[16];
+
+        void add(int salesId, LocalDateTime saleDate, int itemId, String name, String category,
+                int quantity, long price, long tax) {
+            if (salesId != saleId) {
+                flushSale();
+                saleId = salesId;
+                saleMinute = toMinute(saleDate);
+            }
+            if (pending == pendingItem.length) {
+                int capacity = pending * 2;
+                pendingItem = Arrays.copyOf(pendingItem, capacity);
+                pendingCategory = Arrays.copyOf(pendingCategory, capacity);
+                pendingQuantity = Arrays.copyOf(pendingQuantity, capacity);
+                pendingRevenue = Arrays.copyOf(pendingRevenue, capacity);
+                pendingTax = Arrays.copyOf(pendingTax, capacity);
+            }
+            pendingItem[pending] = itemCode(itemId, name);
+            pendingCategory[pending] = categoryCode(category);
+            pendingQuantity[pending] = quantity;
+            pendingRevenue[pending] = Math.toIntExact(price);
+            pendingTax[pending] = Math.toIntExact(tax);
+            pending++;
+        }
+
+        SalesColumnStore build(ForkJoinPool pool) {
+            flushSale();
+            return new SalesColumnStore(this, pool);
+        }
+
+        private int itemCode(int itemId, String name) {
+            Integer code = itemCodes.get(itemId);
+            if (code == null) {
+                code = itemIds.size();
+                itemCodes.put(itemId, code);
+                itemIds.add(itemId);
+                itemNames.add(name == null ? "(deleted)" : name);
+            }
+            return code;
+        }
+
+        private int categoryCode(String category) {
+            String key = category == null ? "" : category;
+            Integer code = categoryCodes.get(key);
+            if (code == null) {
+                code = categories.size();
+                categoryCodes.put(key, code);
+                categories.add(key);
+            }
+            return code;
+        }
+
+        private void flushSale() {
+            if (pending == 0) {
+                return;
+            }
+            if (current == null || current.size + pending > current.minute.length) {
+                current = new Block(Math.max(BLOCK_ROWS, pending));
+                blocks.add(current);
+            }
+            byte basket = (byte) Math.min(pending, MAX_BASKET);
+            for (int i = 0; i < pending; i++) {
+                int row = current.size++;
+                current.minute[row] = saleMinute;
+                current.item[row] = pendingItem[i];
+                current.category[row] = pendingCategory[i];
+                current.quantity[row] = pendingQuantity[i];
+                current.revenue[row] = pendingRevenue[i];
+                current.tax[row] = pendingTax[i];
+                current.basket[row] = basket;
+                byte flags = i == 0 ? FIRST_IN_SALE : 0;
+                if (isFirstOfCategory(i)) {
+                    flags |= FIRST_IN_CATEGORY;
+                }
+                current.flags[row] = flags;
+            }
+            current.minMinute = Math.min(current.minMinute, saleMinute);
+            current.maxMinute = Math.max(current.maxMinute, saleMinute);
+            rows += pending;
+            pending = 0;
+        }
+
+        private boolean isFirstOfCategory(int line) {
+            for (int i = 0; i < line; i++) {
+                if (pendingCategory[i] == pendingCategory[line]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package services;
+
+import dao.ProductDAO;
+import dao.StockLedgerDAO;
+import model.StockMovement;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Service class for the stock movement ledger.
+ *
+ * Sales and product edits record their movements themselves (see SaleDAO
+ * and ProductDAO); this class records goods received and returned, answers
+ * stock-as-of questions from the ledger, and runs the nightly snapshot that
+ * keeps those answers to a short tail of movements. The snapshot runs on
+ * the machine started with -Distore.stockSnapshots.schedule=true.
+ */
+public class StockLedgerService {
+    private static final Logger LOGGER = Logger.getLogger(StockLedgerService.class.getName());
+
+    private static final int SETTLE_SECONDS = (int) TimeUnit.MINUTES.toSeconds(5);
+    private static final LocalTime RUN_AT = LocalTime.of(1, 30);
+
+    private final StockLedgerDAO stockLedgerDAO;
+    private final ProductDAO productDAO;
+    private final LowStockTracker lowStock;
+    private final StockReservationService reservations;
+    private ScheduledExecutorService scheduler;
+
+    public StockLedgerService() {
+        this.stockLedgerDAO = new StockLedgerDAO();
+        this.productDAO = new ProductDAO();
+        this.lowStock = LowStockTracker.getInstance();
+        this.reservations = StockReservationService.getInstance();
+    }
+
+    /**
+     * Adds goods received from a supplier to stock.
+     */
+    public boolean receiveStock(int itemId, int quantity) throws SQLException {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity received must be positive");
+        }
+        return record(new StockMovement(itemId, StockMovement.Type.RECEIPT, quantity, 0));
+    }
+
+    /**
+     * Puts goods returned from a sale back into stock.
+     */
+    public boolean returnStock(int itemId, int quantity, int salesId) throws SQLException {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity returned must be positive");
+        }
+        return record(new StockMovement(itemId, StockMovement.Type.RETURN, quantity, salesId));
+    }
+
+    private boolean record(StockMovement movement) throws SQLException {
+        boolean recorded = stockLedgerDAO.recordMovements(List.of(movement));
+        if (recorded) {
+            lowStock.update(productDAO.getProductsByIds(List.of(movement.getItemId())));
+            reservations.refresh(movement.getItemId());
+        }
+        return recorded;
+    }
+
+    /**
+     * Retrieves an item's movements from first to last (inclusive).
+     */
+    public List<StockMovement> getMovements(int itemId, LocalDate first, LocalDate last) throws SQLException {
+        if (first == null || last == null || last.isBefore(first)) {
+            throw new IllegalArgumentException("Enter a valid date range");
+        }
+        return stockLedgerDAO.getMovements(itemId, Timestamp.valueOf(first.atStartOfDay()),
+                Timestamp.valueOf(last.plusDays(1).atStartOfDay()));
+    }
+
+    /**
+     * Returns an item's stock at the given time, from the ledger.
+     */
+    public int getStockAsOf(int itemId, LocalDateTime at) throws SQLException {
+        return stockLedgerDAO.getStockAsOf(itemId, Timestamp.valueOf(at));
+    }
+
+    /**
+     * Returns the stock of every item at the given time, from the ledger,
+     * keyed by item ID. Items that never moved are left out.
+     */
+    public Map<Integer, Integer> getStockAsOf(LocalDateTime at) throws SQLException {
+        return stockLedgerDAO.getStockAsOf(Timestamp.valueOf(at));
+    }
+
+    /**
+     * Snapshots every item that moved since the last run, up to movements
+     * a few minutes older than any transaction still open. Returns the
+     * number of items snapshotted.
+     */
+    public synchronized int takeSnapshot() throws SQLException {
+        return stockLedgerDAO.takeSnapshot(SETTLE_SECONDS);
+    }
+
+    /**
+     * Starts the nightly snapshot if this machine is configured to run it;
+     * does nothing otherwise.
+     */
+    public synchronized void scheduleIfEnabled() {
+        if (scheduler != null || !Boolean.getBoolean("istore.stockSnapshots.schedule")) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(RUN_AT);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                int items = takeSnapshot();
+                LOGGER.info("Snapshotted stock of " + items + " products");
+            } catch (SQLException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Stock snapshot failed; it will be retried on the next run", e);
+            }
+        }, Duration.between(now, next).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,365 @@
+package services;
+
+import com.itextpdf.layout.properties.TextAlignment;
+import dao.ProductDAO;
+import dao.StockLedgerDAO;
+import model.StockDiscrepancy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Service class checking products.Qty against the stock movement ledger.
+ *
+ * The item ID space is cut into chunks that are compared in parallel by a
+ * fixed pool of workers, one database connection each, so the job never
+ * holds more than istore.reconcile.connections (default 4) connections
+ * however large the catalogue. Each chunk is a single read-only statement
+ * that returns only the items that disagree, and tills keep selling while
+ * it runs (see StockLedgerDAO.findDiscrepancies).
+ *
+ * Corrections are optional. Only mismatches are corrected, each by the
+ * difference found, in batches through ProductDAO; products with stock but
+ * no ledger entries are reported and left alone, since their ledger most
+ * likely lacks an opening balance rather than the product being wrong.
+ * Corrections confirmed later, e.g. by the manager, are checked again
+ * chunk by chunk right before they are applied.
+ *
+ * Runs started from the manager screen go through checkInBackground and
+ * correctInBackground, one at a time on a background thread.
+ */
+public class StockReconciliationService {
+    private static final Logger LOGGER = Logger.getLogger(StockReconciliationService.class.getName());
+
+    static final int CHUNK_ITEMS = 20_000;
+    private static final int DEFAULT_CONNECTIONS = 4;
+    private static final int READ_BACK_BATCH = 1000;
+    private static final LocalTime RUN_AT = LocalTime.of(4, 0);
+    private static final ExecutorService BACKGROUND = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stock-reconciliation-run");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final String[] COLUMNS = {"Item ID", "Name", "Qty", "Ledger", "Difference", "Issue"};
+    private static final float[] WIDTHS = {10, 24, 10, 10, 12, 18};
+    private static final TextAlignment[] ALIGNMENT = {
+        TextAlignment.RIGHT, TextAlignment.LEFT, TextAlignment.RIGHT, TextAlignment.RIGHT, TextAlignment.RIGHT,
+        TextAlignment.LEFT
+    };
+
+    private final StockLedgerDAO stockLedgerDAO;
+    private final ProductDAO productDAO;
+    private final int connections;
+    private ScheduledExecutorService scheduler;
+
+    public StockReconciliationService() {
+        this(Integer.getInteger("istore.reconcile.connections", DEFAULT_CONNECTIONS));
+    }
+
+    public StockReconciliationService(int connections) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("At least one connection is needed");
+        }
+        this.stockLedgerDAO = new StockLedgerDAO();
+        this.productDAO = new ProductDAO();
+        this.connections = connections;
+    }
+
+    /**
+     * The outcome of a reconciliation run.
+     */
+    public static final class Result {
+        private final List<StockDiscrepancy> discrepancies;
+        private final int chunks;
+        private final int corrected;
+        private final long elapsedMillis;
+
+        private Result(List<StockDiscrepancy> discrepancies, int chunks, int corrected, long elapsedMillis) {
+            this.discrepancies = discrepancies;
+            this.chunks = chunks;
+            this.corrected = corrected;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * Returns the discrepancies found, in item ID order.
+         */
+        public List<StockDiscrepancy> getDiscrepancies() {
+            return discrepancies;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        public int getCorrected() {
+            return corrected;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    /**
+     * Compares every product with the ledger, correcting the mismatches if
+     * asked to.
+     */
+    public Result reconcile(boolean applyCorrections) throws SQLException {
+        long started = System.currentTimeMillis();
+        int[] range = stockLedgerDAO.getItemIdRange();
+        if (range == null) {
+            return new Result(new ArrayList<>(), 0, 0, System.currentTimeMillis() - started);
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(connections, runnable -> {
+            Thread thread = new Thread(runnable, "stock-reconciliation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Chunk>> futures = new ArrayList<>();
+            for (long from = range[0]; from <= range[1]; from += CHUNK_ITEMS) {
+                int fromId = (int) from;
+                int toId = (int) Math.min(from + CHUNK_ITEMS, range[1] + 1L);
+                futures.add(workers.submit(() -> check(fromId, toId, applyCorrections)));
+            }
+
+            List<StockDiscrepancy> discrepancies = new ArrayList<>();
+            int corrected = 0;
+            for (Future<Chunk> future : futures) {
+                Chunk chunk = await(future);
+                discrepancies.addAll(chunk.discrepancies);
+                corrected += chunk.corrected;
+            }
+            discrepancies.sort(Comparator.comparingInt(StockDiscrepancy::getItemId));
+            return new Result(discrepancies, futures.size(), corrected, System.currentTimeMillis() - started);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private Chunk check(int fromId, int toId, boolean applyCorrections) throws SQLException {
+        List<StockDiscrepancy> discrepancies = stockLedgerDAO.findDiscrepancies(fromId, toId);
+        int corrected = applyCorrections ? apply(mismatches(discrepancies, null)) : 0;
+        return new Chunk(discrepancies, corrected);
+    }
+
+    private static Chunk await(Future<Chunk> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Stock reconciliation was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Runs a check without corrections on the background thread and writes
+     * its report to the PDF if anything was found. The future completes
+     * with the result, or exceptionally if the check or the report failed.
+     */
+    public CompletableFuture<Result> checkInBackground(String pdfFilePath) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Result result = reconcile(false);
+                if (!result.getDiscrepancies().isEmpty()) {
+                    writeReport(result, pdfFilePath);
+                }
+                return result;
+            } catch (SQLException | IOException e) {
+                throw new CompletionException(e);
+            }
+        }, BACKGROUND);
+    }
+
+    /**
+     * Runs correct on the background thread. The future completes with the
+     * number of products corrected.
+     */
+    public CompletableFuture<Integer> correctInBackground(List<StockDiscrepancy> discrepancies) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return correct(discrepancies);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, BACKGROUND);
+    }
+
+    /**
+     * Corrects the mismatches among discrepancies found earlier, moving each
+     * product to the stock implied by the ledger. Each chunk of item IDs is
+     * compared again right before it is corrected, and only the products
+     * that still differ are corrected, by the difference found now; one
+     * corrected in the meantime, e.g. by the nightly run, is not corrected
+     * twice. Returns the products corrected.
+     */
+    public int correct(List<StockDiscrepancy> discrepancies) throws SQLException {
+        List<Integer> itemIds = new ArrayList<>();
+        for (StockDiscrepancy discrepancy : discrepancies) {
+            if (discrepancy.getKind() == StockDiscrepancy.Kind.MISMATCH) {
+                itemIds.add(discrepancy.getItemId());
+            }
+        }
+        itemIds.sort(null);
+
+        int corrected = 0;
+        int i = 0;
+        while (i < itemIds.size()) {
+            int fromId = itemIds.get(i);
+            int toId = (int) Math.min((long) fromId + CHUNK_ITEMS, Integer.MAX_VALUE);
+            Set<Integer> confirmed = new HashSet<>();
+            while (i < itemIds.size() && itemIds.get(i) < toId) {
+                confirmed.add(itemIds.get(i++));
+            }
+            corrected += apply(mismatches(stockLedgerDAO.findDiscrepancies(fromId, toId), confirmed));
+        }
+        return corrected;
+    }
+
+    /**
+     * Returns the mismatches among the discrepancies, limited to the given
+     * items unless itemIds is null.
+     */
+    private static List<StockDiscrepancy> mismatches(List<StockDiscrepancy> discrepancies, Set<Integer> itemIds) {
+        List<StockDiscrepancy> mismatches = new ArrayList<>();
+        for (StockDiscrepancy discrepancy : discrepancies) {
+            if (discrepancy.getKind() == StockDiscrepancy.Kind.MISMATCH
+                    && (itemIds == null || itemIds.contains(discrepancy.getItemId()))) {
+                mismatches.add(discrepancy);
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Corrects freshly found mismatches by their differences and passes the
+     * new quantities on to the stock trackers.
+     */
+    private int apply(List<StockDiscrepancy> mismatches) throws SQLException {
+        if (mismatches.isEmpty()) {
+            return 0;
+        }
+        List<Integer> itemIds = new ArrayList<>(mismatches.size());
+        for (StockDiscrepancy mismatch : mismatches) {
+            itemIds.add(mismatch.getItemId());
+        }
+        int corrected = productDAO.correctQuantities(mismatches);
+        for (int i = 0; i < itemIds.size(); i += READ_BACK_BATCH) {
+            List<Integer> batch = itemIds.subList(i, Math.min(i + READ_BACK_BATCH, itemIds.size()));
+            LowStockTracker.getInstance().update(productDAO.getProductsByIds(batch));
+        }
+        StockReservationService.getInstance().refresh(itemIds);
+        return corrected;
+    }
+
+    /**
+     * Writes the discrepancies of a run to a PDF report.
+     */
+    public void writeReport(Result result, String pdfFilePath) throws IOException {
+        try (ReportWriter writer = new ReportWriter(pdfFilePath, "Stock Reconciliation " + LocalDate.now(),
+                COLUMNS, WIDTHS, ALIGNMENT)) {
+            for (StockDiscrepancy discrepancy : result.getDiscrepancies()) {
+                writer.addRow(
+                    String.valueOf(discrepancy.getItemId()),
+                    discrepancy.getName() == null ? "" : discrepancy.getName(),
+                    String.valueOf(discrepancy.getRecordedQty()),
+                    String.valueOf(discrepancy.getLedgerQty()),
+                    String.valueOf(discrepancy.getRecordedQty() - discrepancy.getLedgerQty()),
+                    describe(discrepancy.getKind())
+                );
+            }
+            writer.setSummary(result.getDiscrepancies().size() + " discrepancies in " + result.getChunks()
+                    + " chunks, " + result.getCorrected() + " corrected");
+        }
+    }
+
+    /**
+     * Returns a short description of a kind of discrepancy for reports.
+     */
+    public static String describe(StockDiscrepancy.Kind kind) {
+        switch (kind) {
+            case MISMATCH:
+                return "Qty differs";
+            case NOT_IN_LEDGER:
+                return "No ledger entries";
+            default:
+                return "Not a product";
+        }
+    }
+
+    /**
+     * Starts the nightly reconciliation if this machine is configured for
+     * it with -Distore.reconcile.schedule=true. The report is written to the
+     * directory named by istore.reconcile.reports (default ~/istore); the
+     * mismatches are corrected only with -Distore.reconcile.apply=true.
+     */
+    public synchronized void scheduleIfEnabled() {
+        if (scheduler != null || !Boolean.getBoolean("istore.reconcile.schedule")) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-reconciliation-schedule");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(RUN_AT);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                Result result = reconcile(Boolean.getBoolean("istore.reconcile.apply"));
+                String directory = System.getProperty("istore.reconcile.reports", System.getProperty("user.home") + "/istore");
+                Files.createDirectories(Path.of(directory));
+                writeReport(result, directory + "/StockReconciliation-" + LocalDate.now() + ".pdf");
+                LOGGER.info("Stock reconciliation found " + result.getDiscrepancies().size()
+                        + " discrepancies and corrected " + result.getCorrected() + " in " + result.getElapsedMillis() + " ms");
+            } catch (SQLException | IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Stock reconciliation failed; it will be retried on the next run", e);
+            }
+        }, Duration.between(now, next).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The discrepancies of one chunk and how many were corrected.
+     */
+    private static final class Chunk {
+        private final List<StockDiscrepancy> discrepancies;
+        private final int corrected;
+
+        private Chunk(List<StockDiscrepancy> discrepancies, int corrected) {
+            this.discrepancies = discrepancies;
+            this.corrected = corrected;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package services;
+
+import dao.ProductDAO;
+import model.Product;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Service class for holding stock while items sit on an open invoice.
+ * All tills in this application share one instance, so a unit added to one
+ * invoice is no longer available to the others until it is sold, removed or
+ * the hold expires. Locks are striped by item ID so tills only contend when
+ * they touch the same items.
+ *
+ * On-hand quantities come from the database: every reserve re-reads the
+ * item (a primary-key lookup), so sales on other machines and restocking
+ * are seen at once; available() trusts a reading for a few seconds.
+ * Services that change stock in this process call refresh so its figures
+ * are current too. Holds are kept per JVM, so tills on two machines can
+ * both hold the last unit; SaleDAO only takes stock that is still there,
+ * and the second sale fails at payment as out of stock.
+ */
+public class StockReservationService {
+    private static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final int STRIPES = 64;
+    private static final long STALE_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final StockReservationService INSTANCE = new StockReservationService(DEFAULT_TTL_MILLIS);
+
+    private final ProductDAO productDAO;
+    private final long ttlMillis;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private final Map<Integer, ItemStock> stock = new ConcurrentHashMap<>();
+    private final Map<Object, Set<Integer>> itemsByOwner = new ConcurrentHashMap<>();
+
+    public StockReservationService(long ttlMillis) {
+        this.productDAO = new ProductDAO();
+        this.ttlMillis = ttlMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Returns the reservation service shared by all tills.
+     */
+    public static StockReservationService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Places (or extends) a hold on the given quantity for an owner, usually
+     * an open cart. Returns false if not enough unreserved stock is left.
+     */
+    public boolean reserve(Object owner, int itemId, int quantity) throws SQLException {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        ItemStock item = load(itemId, 0);
+        long now = System.currentTimeMillis();
+
+        ReentrantLock lock = lockFor(itemId);
+        lock.lock();
+        try {
+            item.purgeExpired(now);
+            if (quantity > item.onHand - item.reserved) {
+                return false;
+            }
+            Hold hold = item.holds.computeIfAbsent(owner, k -> new Hold());
+            hold.quantity += quantity;
+            hold.expiresAt = now + ttlMillis;
+            item.reserved += quantity;
+        } finally {
+            lock.unlock();
+        }
+        itemsByOwner.computeIfAbsent(owner, k -> ConcurrentHashMap.newKeySet()).add(itemId);
+        return true;
+    }
+
+    /**
+     * Releases the owner's hold on an item.
+     */
+    public void release(Object owner, int itemId) {
+        ItemStock item = stock.get(itemId);
+        if (item != null) {
+            ReentrantLock lock = lockFor(itemId);
+            lock.lock();
+            try {
+                item.removeHold(owner);
+            } finally {
+                lock.unlock();
+            }
+        }
+        Set<Integer> items = itemsByOwner.get(owner);
+        if (items != null) {
+            items.remove(itemId);
+        }
+    }
+
+    /**
+     * Releases every hold of the owner, e.g. when an invoice is cleared.
+     */
+    public void releaseAll(Object owner) {
+        Set<Integer> items = itemsByOwner.remove(owner);
+        if (items == null) {
+            return;
+        }
+        for (int itemId : items) {
+            release(owner, itemId);
+        }
+    }
+
+    /**
+     * Converts the owner's holds into a sale. Called after the sale and its
+     * stock decrements are committed; the on-hand figures are re-read from
+     * ProductDAO so the cache reconciles with the database.
+     */
+    public void commit(Object owner) throws SQLException {
+        Set<Integer> items = itemsByOwner.remove(owner);
+        if (items == null) {
+            return;
+        }
+        for (int itemId : items) {
+            release(owner, itemId);
+            refresh(itemId);
+        }
+    }
+
+    /**
+     * Returns the stock that is neither sold nor held by an open invoice.
+     */
+    public int available(int itemId) throws SQLException {
+        ItemStock item = load(itemId, STALE_MILLIS);
+        ReentrantLock lock = lockFor(itemId);
+        lock.lock();
+        try {
+            item.purgeExpired(System.currentTimeMillis());
+            return item.onHand - item.reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Re-reads the on-hand quantity of an item from the database after its
+     * stock changed. Items no invoice has touched are not cached and are
+     * left alone.
+     */
+    public void refresh(int itemId) throws SQLException {
+        ItemStock item = stock.get(itemId);
+        if (item != null) {
+            read(itemId, item);
+        }
+    }
+
+    /**
+     * Re-reads the on-hand quantity of each of the items; see refresh.
+     */
+    public void refresh(Collection<Integer> itemIds) throws SQLException {
+        for (int itemId : itemIds) {
+            refresh(itemId);
+        }
+    }
+
+    private ItemStock load(int itemId, long maxAgeMillis) throws SQLException {
+        ItemStock item = stock.computeIfAbsent(itemId, k -> new ItemStock());
+        if (System.currentTimeMillis() - item.loadedAt > maxAgeMillis) {
+            read(itemId, item);
+        }
+        return item;
+    }
+
+    private void read(int itemId, ItemStock item) throws SQLException {
+        Product product = productDAO.getProductById(itemId);
+        ReentrantLock lock = lockFor(itemId);
+        lock.lock();
+        try {
+            item.onHand = product == null ? 0 : product.getQuantity();
+            item.loadedAt = System.currentTimeMillis();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock lockFor(int itemId) {
+        return locks[(itemId * 0x9E3779B9 >>> 16) & (STRIPES - 1)];
+    }
+
+    /**
+     * Cached on-hand quantity of one item plus the holds against it.
+     * Guarded by the item's stripe lock.
+     */
+    private static final class ItemStock {
+        private volatile long loadedAt;
+        private int onHand;
+        private int reserved;
+        private final Map<Object, Hold> holds = new HashMap<>();
+
+        private void removeHold(Object owner) {
+            Hold hold = holds.remove(owner);
+            if (hold != null) {
+                reserved -= hold.quantity;
+            }
+        }
+
+        private void purgeExpired(long now) {
+            if (holds.isEmpty()) {
+                return;
+            }
+            holds.values().removeIf(hold -> {
+                if (hold.expiresAt <= now) {
+                    reserved -= hold.quantity;
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    private static final class Hold {
+        private int quantity;
+        private long expiresAt;
+    }
+}
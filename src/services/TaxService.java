@@ -0,0 +1,92 @@
+package services;
+
+import dao.TaxRateDAO;
+import model.Cart;
+import model.TaxRate;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Service class for sales tax.
+ * Category rates are loaded once into an in-memory table and looked up per
+ * cart line without touching the database. The table is reloaded only when
+ * the taxrates fingerprint changes.
+ */
+public class TaxService implements Cart.TaxPolicy {
+
+    /**
+     * Category name of the fallback rate applied to uncategorised products.
+     */
+    public static final String DEFAULT_CATEGORY = "*";
+
+    private final TaxRateDAO taxRateDAO;
+    private volatile RateTable table = new RateTable(Collections.emptyMap(), 0, "");
+
+    public TaxService() {
+        this.taxRateDAO = new TaxRateDAO();
+    }
+
+    /**
+     * Loads all tax rates from the database. A negative rate is rejected
+     * with IllegalArgumentException and the current table is kept.
+     */
+    public void reload() throws SQLException {
+        String version = taxRateDAO.getTaxRatesVersion();
+        Map<String, Integer> rates = new HashMap<>();
+        int defaultRate = 0;
+
+        for (TaxRate rate : taxRateDAO.getAllTaxRates()) {
+            if (rate.getRate() < 0) {
+                throw new IllegalArgumentException("Tax rate cannot be negative: " + rate.getCategory());
+            }
+            if (DEFAULT_CATEGORY.equals(rate.getCategory())) {
+                defaultRate = rate.getRate();
+            } else {
+                rates.put(rate.getCategory(), rate.getRate());
+            }
+        }
+
+        this.table = new RateTable(rates, defaultRate, version);
+    }
+
+    /**
+     * Reloads the rates if the taxrates table changed since the last load.
+     * Returns true if a reload happened.
+     */
+    public boolean refreshIfChanged() throws SQLException {
+        if (taxRateDAO.getTaxRatesVersion().equals(table.version)) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+
+    /**
+     * Returns the rate for a category in basis points, falling back to the
+     * default rate. Does not allocate.
+     */
+    @Override
+    public int rateFor(String category) {
+        RateTable current = table;
+        if (category == null) {
+            return current.defaultRate;
+        }
+        Integer rate = current.rates.get(category);
+        return rate == null ? current.defaultRate : rate;
+    }
+
+    private static final class RateTable {
+        private final Map<String, Integer> rates;
+        private final int defaultRate;
+        private final String version;
+
+        private RateTable(Map<String, Integer> rates, int defaultRate, String version) {
+            this.rates = rates;
+            this.defaultRate = defaultRate;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package services;
+
+import dao.SaleDAO;
+import model.SaleItem;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service class tracking the best sellers of the last hour and of today
+ * from the stream of completed sales, without querying saleitems.
+ *
+ * Each window is a fixed ring of time buckets: twelve five-minute buckets
+ * for the last hour, twenty-four one-hour buckets for today. A bucket holds
+ * a count-min sketch of units sold per item and a bounded min-heap of its
+ * heaviest items; when the ring wraps, the oldest bucket is cleared and
+ * reused. A query takes the candidates from the buckets in the window,
+ * estimates each candidate's units by summing the buckets' sketches and
+ * keeps the top K with a min-heap. Memory and query cost depend only on the
+ * bucket and heap sizes, never on sales volume.
+ *
+ * Counts are estimates: the sketch can only overcount, by at most a small
+ * fraction of the units sold in the window. The last hour moves in
+ * five-minute steps.
+ */
+public class TopSellersTracker {
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_BITS = 10;
+    private static final int SKETCH_WIDTH = 1 << SKETCH_BITS;
+    private static final int CANDIDATES_PER_BUCKET = 64;
+    private static final TopSellersTracker INSTANCE = new TopSellersTracker(ZoneId.systemDefault());
+
+    /**
+     * The windows best sellers can be asked for.
+     */
+    public enum Window {
+        LAST_HOUR(TimeUnit.MINUTES.toMillis(5), 12),
+        TODAY(TimeUnit.HOURS.toMillis(1), 24);
+
+        private final long bucketMillis;
+        private final int buckets;
+
+        Window(long bucketMillis, int buckets) {
+            this.bucketMillis = bucketMillis;
+            this.buckets = buckets;
+        }
+    }
+
+    /**
+     * An item and its estimated units sold in a window.
+     */
+    public static final class Seller {
+        private final int itemId;
+        private final String name;
+        private final long units;
+
+        private Seller(int itemId, String name, long units) {
+            this.itemId = itemId;
+            this.name = name;
+            this.units = units;
+        }
+
+        public int getItemId() {
+            return itemId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getUnits() {
+            return units;
+        }
+    }
+
+    private final ZoneId zone;
+    private final Map<Window, Bucket[]> rings = new HashMap<>();
+
+    public TopSellersTracker(ZoneId zone) {
+        this.zone = zone;
+        for (Window window : Window.values()) {
+            Bucket[] ring = new Bucket[window.buckets];
+            for (int i = 0; i < ring.length; i++) {
+                ring[i] = new Bucket();
+            }
+            rings.put(window, ring);
+        }
+    }
+
+    /**
+     * Returns the tracker fed by all tills in this application.
+     */
+    public static TopSellersTracker getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Counts the lines of a completed sale.
+     */
+    public synchronized void record(List<SaleItem> saleItems, long timeMillis) {
+        for (SaleItem item : saleItems) {
+            record(item.getItemId(), item.getName(), item.getQuantity(), timeMillis);
+        }
+    }
+
+    private void record(int itemId, String name, int units, long timeMillis) {
+        for (Window window : Window.values()) {
+            Bucket bucket = bucketFor(window, timeMillis);
+            if (bucket != null) {
+                bucket.add(itemId, name, units);
+            }
+        }
+    }
+
+    /**
+     * Forgets everything and counts today's sales again from the database,
+     * e.g. when a back-office view opens in a fresh application. Lines are
+     * streamed, so memory stays constant.
+     */
+    public synchronized void reload(SaleDAO saleDAO) throws SQLException {
+        for (Bucket[] ring : rings.values()) {
+            for (Bucket bucket : ring) {
+                bucket.clear(Long.MIN_VALUE);
+            }
+        }
+        LocalDate today = LocalDate.now(zone);
+        saleDAO.streamSaleLines(Timestamp.valueOf(today.atStartOfDay()), Timestamp.valueOf(today.plusDays(1).atStartOfDay()),
+                (salesId, saleDate, item) -> record(item.getItemId(), item.getName(), item.getQuantity(), saleDate.getTime()));
+    }
+
+    /**
+     * Returns up to k best sellers of the window, most units first.
+     */
+    public synchronized List<Seller> getTopSellers(Window window, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        long now = System.currentTimeMillis();
+        long windowStart = window == Window.TODAY
+                ? LocalDate.now(zone).atStartOfDay(zone).toInstant().toEpochMilli()
+                : now - window.bucketMillis * window.buckets;
+
+        List<Bucket> live = new ArrayList<>();
+        for (Bucket bucket : rings.get(window)) {
+            if (bucket.start != Long.MIN_VALUE && bucket.start + window.bucketMillis > windowStart && bucket.start <= now) {
+                live.add(bucket);
+            }
+        }
+
+        Map<Integer, String> candidates = new HashMap<>();
+        for (Bucket bucket : live) {
+            for (Candidate candidate : bucket.heap) {
+                candidates.putIfAbsent(candidate.itemId, candidate.name);
+            }
+        }
+
+        PriorityQueue<Seller> top = new PriorityQueue<>(k + 1, Comparator.comparingLong(Seller::getUnits));
+        for (Map.Entry<Integer, String> candidate : candidates.entrySet()) {
+            long units = 0;
+            for (Bucket bucket : live) {
+                units += bucket.estimate(candidate.getKey());
+            }
+            if (top.size() < k) {
+                top.add(new Seller(candidate.getKey(), candidate.getValue(), units));
+            } else if (units > top.peek().getUnits()) {
+                top.poll();
+                top.add(new Seller(candidate.getKey(), candidate.getValue(), units));
+            }
+        }
+
+        List<Seller> sellers = new ArrayList<>(top);
+        sellers.sort(Comparator.comparingLong(Seller::getUnits).reversed());
+        return sellers;
+    }
+
+    /**
+     * Returns the bucket a time falls in, clearing it if it last held an
+     * older period; null if the time is older than the ring.
+     */
+    private Bucket bucketFor(Window window, long timeMillis) {
+        long start = timeMillis - Math.floorMod(timeMillis, window.bucketMillis);
+        Bucket bucket = rings.get(window)[(int) Math.floorMod(start / window.bucketMillis, (long) window.buckets)];
+        if (bucket.start < start) {
+            bucket.clear(start);
+        } else if (bucket.start > start) {
+            return null;
+        }
+        return bucket;
+    }
+
+    private static final class Candidate {
+        private final int itemId;
+        private final String name;
+        private long units;
+
+        private Candidate(int itemId, String name) {
+            this.itemId = itemId;
+            this.name = name;
+        }
+    }
+
+    /**
+     * One time bucket: a count-min sketch and the heaviest items seen.
+     */
+    private static final class Bucket {
+        private final int[][] sketch = new int[SKETCH_DEPTH][SKETCH_WIDTH];
+        private final PriorityQueue<Candidate> heap =
+                new PriorityQueue<>(CANDIDATES_PER_BUCKET + 1, Comparator.comparingLong(c -> c.units));
+        private final Map<Integer, Candidate> inHeap = new HashMap<>();
+        private long start = Long.MIN_VALUE;
+
+        private void clear(long newStart) {
+            for (int[] row : sketch) {
+                Arrays.fill(row, 0);
+            }
+            heap.clear();
+            inHeap.clear();
+            start = newStart;
+        }
+
+        private void add(int itemId, String name, int units) {
+            int estimate = Integer.MAX_VALUE;
+            for (int row = 0; row < SKETCH_DEPTH; row++) {
+                int column = column(row, itemId);
+                sketch[row][column] += units;
+                estimate = Math.min(estimate, sketch[row][column]);
+            }
+
+            Candidate candidate = inHeap.get(itemId);
+            if (candidate != null) {
+                heap.remove(candidate); // re-insert with its new count
+            } else if (heap.size() < CANDIDATES_PER_BUCKET || estimate > heap.peek().units) {
+                if (heap.size() == CANDIDATES_PER_BUCKET) {
+                    inHeap.remove(heap.poll().itemId);
+                }
+                candidate = new Candidate(itemId, name == null ? "Item " + itemId : name);
+                inHeap.put(itemId, candidate);
+            } else {
+                return;
+            }
+            candidate.units = estimate;
+            heap.add(candidate);
+        }
+
+        private int estimate(int itemId) {
+            int estimate = Integer.MAX_VALUE;
+            for (int row = 0; row < SKETCH_DEPTH; row++) {
+                estimate = Math.min(estimate, sketch[row][column(row, itemId)]);
+            }
+            return estimate;
+        }
+
+        private static int column(int row, int itemId) {
+            // one multiply-shift hash per row
+            long hash = (itemId + 1L) * (0x9E3779B97F4A7C15L + 2L * row * 0x632BE59BD9B4E019L);
+            return (int) (hash >>> (64 - SKETCH_BITS));
+        }
+    }
+}
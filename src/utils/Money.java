@@ -0,0 +1,65 @@
+package utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Helpers for money amounts held as a primitive long number of cents.
+ * Conversion to and from text and DECIMAL columns happens only at the edges
+ * (forms, JDBC, receipts); all arithmetic in between is exact long math.
+ */
+public final class Money {
+
+    private Money() {
+    }
+
+    /**
+     * Parses a user-entered amount such as "12", "12.5" or "12.50" into cents.
+     * Throws NumberFormatException for anything that is not a number.
+     */
+    public static long parse(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            throw new NumberFormatException("Amount is empty");
+        }
+        return fromDecimal(new BigDecimal(text.trim()));
+    }
+
+    /**
+     * Formats cents as a plain decimal string, e.g. 1250 -> "12.50".
+     */
+    public static String format(long cents) {
+        return BigDecimal.valueOf(cents, 2).toPlainString();
+    }
+
+    /**
+     * Applies a rate given in basis points (1/100 of a percent) to an amount,
+     * rounding half up, e.g. applyRate(1000, 825) -> 83. Pure long math.
+     */
+    public static long applyRate(long cents, int basisPoints) {
+        return (cents * basisPoints + 5000) / 10000;
+    }
+
+    /**
+     * Formats a rate given in basis points as a percentage, e.g. 825 -> "8.25%".
+     */
+    public static String formatRate(int basisPoints) {
+        return BigDecimal.valueOf(basisPoints, 2).stripTrailingZeros().toPlainString() + "%";
+    }
+
+    /**
+     * Converts a DECIMAL column value into cents, rounding half up.
+     */
+    public static long fromDecimal(BigDecimal amount) {
+        if (amount == null) {
+            return 0;
+        }
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts cents into a DECIMAL value for JDBC.
+     */
+    public static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+}
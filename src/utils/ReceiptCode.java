@@ -0,0 +1,75 @@
+package utils;
+
+/**
+ * Utility class for the code printed as the receipt barcode: the letter R,
+ * the sale ID and a Luhn check digit, e.g. sale 123 -> "R1230".
+ * Scanning it back gives the sale ID without any search.
+ */
+public final class ReceiptCode {
+
+    public static final char PREFIX = 'R';
+
+    private ReceiptCode() {
+    }
+
+    /**
+     * Returns the receipt code for a sale ID.
+     */
+    public static String encode(int salesId) {
+        if (salesId <= 0) {
+            throw new IllegalArgumentException("Sale ID must be positive");
+        }
+        String digits = Integer.toString(salesId);
+        return PREFIX + digits + checkDigit(digits);
+    }
+
+    /**
+     * Returns true if the text is a well-formed receipt code with a matching
+     * check digit. Anything else (e.g. a product name) is not one.
+     */
+    public static boolean isReceiptCode(String text) {
+        if (text == null || text.length() < 3 || text.length() > 12 || Character.toUpperCase(text.charAt(0)) != PREFIX) {
+            return false;
+        }
+        for (int i = 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        String digits = text.substring(1, text.length() - 1);
+        return text.charAt(text.length() - 1) - '0' == checkDigit(digits)
+                && Long.parseLong(digits) <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the sale ID of a scanned receipt code.
+     */
+    public static int decode(String code) {
+        String text = code == null ? "" : code.trim();
+        if (!isReceiptCode(text)) {
+            throw new IllegalArgumentException("Not a valid receipt barcode: " + code);
+        }
+        return Integer.parseInt(text.substring(1, text.length() - 1));
+    }
+
+    /**
+     * Luhn (mod 10) check digit: doubles every second digit from the right.
+     */
+    private static int checkDigit(String digits) {
+        int sum = 0;
+        boolean doubled = true;
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int digit = digits.charAt(i) - '0';
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return (10 - sum % 10) % 10;
+    }
+}